@@ -0,0 +1,202 @@
+package collisionphysics.benchmark;
+
+import collisionphysics.CollisionPhysics;
+import collisionphysics.CollisionResponse;
+import collisionphysics.CollisionScratch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per public detection method of CollisionPhysics.
+ * <p>
+ * Each invocation runs one detection on the next of CASES random inputs,
+ * about one in four of which collides within the time limit, so that
+ * neither the inputs nor the branches can be folded away.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CollisionPhysicsBenchmark {
+  private static final int CASES = 1024;  // A power of 2
+  private static final float TIME_LIMIT = 1.0f;
+
+  // Moving point p1, and second point p2 (also used as segment end points)
+  private final float[] x1 = new float[CASES];
+  private final float[] y1 = new float[CASES];
+  private final float[] speedX1 = new float[CASES];
+  private final float[] speedY1 = new float[CASES];
+  private final float[] radius1 = new float[CASES];
+  private final float[] x2 = new float[CASES];
+  private final float[] y2 = new float[CASES];
+  private final float[] speedX2 = new float[CASES];
+  private final float[] speedY2 = new float[CASES];
+  private final float[] radius2 = new float[CASES];
+
+  // A container centered at (CENTER, CENTER), and a hexagon around it
+  private static final float CENTER = 500;
+  private static final float CONTAINER_RADIUS = 450;
+  private final int[] polygonXs = new int[6];
+  private final int[] polygonYs = new int[6];
+
+  private final CollisionResponse response1 = new CollisionResponse();
+  private final CollisionResponse response2 = new CollisionResponse();
+  private final CollisionScratch scratch = new CollisionScratch();
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    for (int k = 0; k < CASES; k++) {
+      // Points inside the container, moving by up to 20 per step
+      radius1[k] = 5 + random.nextFloat() * 20;
+      double angle = random.nextDouble() * 2 * Math.PI;
+      double distance = random.nextDouble() * (CONTAINER_RADIUS - 2 * radius1[k]);
+      x1[k] = (float) (CENTER + distance * Math.cos(angle));
+      y1[k] = (float) (CENTER + distance * Math.sin(angle));
+      speedX1[k] = random.nextFloat() * 40 - 20;
+      speedY1[k] = random.nextFloat() * 40 - 20;
+      // A second point close by, not overlapping the first
+      radius2[k] = 5 + random.nextFloat() * 20;
+      double gap = radius1[k] + radius2[k] + random.nextFloat() * 40;
+      double direction = random.nextDouble() * 2 * Math.PI;
+      x2[k] = (float) (x1[k] + gap * Math.cos(direction));
+      y2[k] = (float) (y1[k] + gap * Math.sin(direction));
+      speedX2[k] = random.nextFloat() * 40 - 20;
+      speedY2[k] = random.nextFloat() * 40 - 20;
+    }
+    for (int v = 0; v < 6; v++) {
+      polygonXs[v] = (int) (CENTER + CONTAINER_RADIUS * Math.cos(v * Math.PI / 3));
+      polygonYs[v] = (int) (CENTER + CONTAINER_RADIUS * Math.sin(v * Math.PI / 3));
+    }
+  }
+
+  private int nextCase() {
+    next = (next + 1) & (CASES - 1);
+    return next;
+  }
+
+  @Benchmark
+  public float pointIntersectsMovingPoint() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsMovingPoint(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], speedX2[k], speedY2[k], radius2[k],
+        TIME_LIMIT, response1, response2, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsMovingPointTime() {
+    int k = nextCase();
+    return CollisionPhysics.pointIntersectsMovingPointTime(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], speedX2[k], speedY2[k], radius2[k],
+        TIME_LIMIT);
+  }
+
+  @Benchmark
+  public float pointIntersectsPoint() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsPoint(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], radius2[k],
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsCircleOuter() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsCircleOuter(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        CENTER, CENTER, CONTAINER_RADIUS,
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsRectangleOuter() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsRectangleOuter(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        CENTER - CONTAINER_RADIUS, CENTER - CONTAINER_RADIUS,
+        CENTER + CONTAINER_RADIUS, CENTER + CONTAINER_RADIUS,
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsLineVertical() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsLineVertical(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], TIME_LIMIT, response1);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsLineHorizontal() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsLineHorizontal(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        y2[k], TIME_LIMIT, response1);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsLine() {
+    int k = nextCase();
+    int l = (k + 1) & (CASES - 1);
+    CollisionPhysics.pointIntersectsLine(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], x2[l], y2[l],
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsLineSegmentNoEndPoints() {
+    int k = nextCase();
+    int l = (k + 1) & (CASES - 1);
+    CollisionPhysics.pointIntersectsLineSegmentNoEndPoints(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], x2[l], y2[l],
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsLineSegment() {
+    int k = nextCase();
+    int l = (k + 1) & (CASES - 1);
+    CollisionPhysics.pointIntersectsLineSegment(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        x2[k], y2[k], x2[l], y2[l],
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+
+  @Benchmark
+  public float pointIntersectsPolygon() {
+    int k = nextCase();
+    CollisionPhysics.pointIntersectsPolygon(
+        x1[k], y1[k], speedX1[k], speedY1[k], radius1[k],
+        polygonXs, polygonYs, polygonXs.length,
+        TIME_LIMIT, response1, scratch);
+    return response1.t;
+  }
+}
@@ -0,0 +1,146 @@
+package collisionphysics.benchmark;
+
+import collisionphysics.AabbTreeBroadPhase;
+import collisionphysics.Simulation;
+import collisionphysics.SpatialHashBroadPhase;
+import collisionphysics.SweepAndPruneBroadPhase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One time-step of the simulation, i.e. the game update of BallWorld
+ * without the display (BallWorld itself is in the unnamed package, which a
+ * benchmark cannot import).
+ * <p>
+ * The balls are placed at random without overlap in a container sized for
+ * the given density, the fraction of the container area covered by the
+ * balls: sparse scenes have few collisions per step, dense ones many. The
+ * balls are placed on a lattice of cells of the max diameter, which they
+ * cover to about a third: the container grows until the lattice has a
+ * cell inside it for every ball, so the dense scenes are as packed as the
+ * lattice allows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SimulationBenchmark {
+  private static final float MIN_RADIUS = 4;
+  private static final float MAX_RADIUS = 12;
+  private static final float MAX_SPEED = 5;
+
+  @Param({"10", "100", "1000", "10000"})
+  public int numBalls;
+
+  @Param({"sparse", "dense"})
+  public String density;
+
+  @Param({"spatialHash", "sweepAndPrune", "aabbTree", "eventDriven"})
+  public String engine;
+
+  private Simulation simulation;
+
+  @Setup
+  public void setUp() {
+    float coveredFraction = density.equals("dense") ? 0.4f : 0.05f;
+    float meanRadius = (MIN_RADIUS + MAX_RADIUS) / 2;
+    float containerRadius = (float) Math.sqrt(numBalls * meanRadius * meanRadius / coveredFraction)
+        + MAX_RADIUS;
+    while (countInnerCells(containerRadius) < numBalls) {
+      containerRadius += MAX_RADIUS;
+    }
+    simulation = new Simulation(numBalls, 0, 0, containerRadius);
+    switch (engine) {
+      case "sweepAndPrune":
+        simulation.setBroadPhase(new SweepAndPruneBroadPhase());
+        break;
+      case "aabbTree":
+        simulation.setBroadPhase(new AabbTreeBroadPhase());
+        break;
+      case "eventDriven":
+        simulation.setEventDriven(true);
+        break;
+      default:
+        simulation.setBroadPhase(new SpatialHashBroadPhase());
+        break;
+    }
+
+    // Place the balls without overlap, on a grid of cells of the max diameter
+    // shuffled at random, jittered inside their cell
+    Random random = new Random(42);
+    float cell = 2 * MAX_RADIUS;
+    int side = latticeSide(containerRadius);
+    int[] cells = new int[side * side];
+    for (int c = 0; c < cells.length; c++) {
+      cells[c] = c;
+    }
+    for (int c = cells.length - 1; c > 0; c--) {
+      int other = random.nextInt(c + 1);
+      int swap = cells[c];
+      cells[c] = cells[other];
+      cells[other] = swap;
+    }
+    float origin = -side * cell / 2;
+    for (int c = 0; simulation.getBalls().size() < numBalls && c < cells.length; c++) {
+      float radius = MIN_RADIUS + random.nextFloat() * (MAX_RADIUS - MIN_RADIUS);
+      float slack = MAX_RADIUS - radius;
+      float x = origin + (cells[c] % side + 0.5f) * cell + (random.nextFloat() * 2 - 1) * slack;
+      float y = origin + (cells[c] / side + 0.5f) * cell + (random.nextFloat() * 2 - 1) * slack;
+      if (Math.hypot(x, y) + radius < containerRadius) {
+        simulation.addBall(x, y, radius, random.nextFloat() * MAX_SPEED,
+            random.nextFloat() * 360, 0);
+      }
+    }
+    if (simulation.getBalls().size() < numBalls) {
+      throw new IllegalStateException("Placed " + simulation.getBalls().size() + " of "
+          + numBalls + " balls");
+    }
+  }
+
+  /**
+   * Return the number of cells of the lattice along a side.
+   */
+  private static int latticeSide(float containerRadius) {
+    return (int) (2 * (containerRadius - MAX_RADIUS) / (2 * MAX_RADIUS));
+  }
+
+  /**
+   * Return the number of lattice cells wholly inside the container, where
+   * a ball always fits.
+   */
+  private static int countInnerCells(float containerRadius) {
+    float cell = 2 * MAX_RADIUS;
+    int side = latticeSide(containerRadius);
+    float origin = -side * cell / 2;
+    double halfDiagonal = cell * Math.sqrt(2) / 2;
+    int count = 0;
+    for (int c = 0; c < side * side; c++) {
+      float x = origin + (c % side + 0.5f) * cell;
+      float y = origin + (c / side + 0.5f) * cell;
+      if (Math.hypot(x, y) + halfDiagonal < containerRadius) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public Simulation step() {
+    simulation.step(1.0f);
+    return simulation;
+  }
+}
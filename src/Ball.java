@@ -1,3 +1,4 @@
+import collisionphysics.BallStore;
 import collisionphysics.CollisionPhysics;
 import collisionphysics.CollisionResponse;
 
@@ -36,6 +37,24 @@ public class Ball extends DefaultMovable implements Movable {
     this(x, y, radius, speed, angleInDegree, DEFAULT_COLOR);
   }
 
+  /**
+   * Make this ball a view on row i of the given store, so that existing
+   * callers (drawing, description) can work on the structure-of-arrays
+   * storage. A single instance can be re-used for every row.
+   *
+   * @param store : the ball storage.
+   * @param i     : the row to view.
+   * @param color : the color of the row, from the palette of its colorIndex.
+   */
+  public void load(BallStore store, int i, Color color) {
+    this.x = store.x[i];
+    this.y = store.y[i];
+    this.speedX = store.speedX[i];
+    this.speedY = store.speedY[i];
+    this.radius = store.radius[i];
+    this.color = color;
+  }
+
   /**
    * Draw itself using the given graphics context.
    */
@@ -45,6 +64,15 @@ public class Ball extends DefaultMovable implements Movable {
         (int) (2 * radius));
   }
 
+  /**
+   * Draw itself as a pre-rendered sprite of the given cache, which is much
+   * cheaper than rasterizing the oval on every frame.
+   */
+  public void draw(Graphics g, SpriteCache sprites, GraphicsConfiguration config) {
+    g.drawImage(sprites.get((int) (2 * radius), color, config),
+        (int) (x - radius), (int) (y - radius), null);
+  }
+
   /**
    * Return the magnitude of speed.
    */
@@ -1,31 +1,94 @@
+import collisionphysics.BallStore;
+import collisionphysics.BroadPhase;
+import collisionphysics.ObstacleField;
+import collisionphysics.Simulation;
+import collisionphysics.SnapshotBuffer;
+import collisionphysics.WorldHost;
+
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The control logic and main display panel for game.
+ * The physics run in a headless Simulation, stepped by a WorldHost shared by
+ * all the BallWorlds of the JVM; this panel draws its latest snapshot.
+ * The game thread and the event dispatch thread never share mutable state:
+ * the frames go through a lock-free SnapshotBuffer, and the inputs of the
+ * control panel (resize, speed, launch) and the settings of the simulation
+ * are queued for the game thread.
  *
  * @author Hock-Chuan Chua
  * @version October 2010
  */
 public class BallWorld extends JPanel {
-  private static final int UPDATE_RATE = 120;    // Frames per second (fps)
-  private static final float EPSILON_TIME = 1e-2f;  // Threshold for zero time
+  private static final int UPDATE_RATE = 120;    // Physics ticks per second
+  private static final int DEFAULT_REFRESH_RATE = 60;  // Frames per second, if unknown
+
+  // Steps the simulations of all the BallWorlds, on a shared pool of threads
+  private static final WorldHost HOST = new WorldHost();
+  private static final AtomicInteger NUM_WORLDS = new AtomicInteger();  // To name the metrics
+  private WorldHost.HostedWorld hostedWorld;  // null when not started
+  private Timer repaintTimer;
+  private boolean paused;  // Kept across a close() and a new gameStart()
+  private final String metricsName = "BallWorld-" + NUM_WORLDS.incrementAndGet();
 
   // Balls
-  private static final int MAX_BALLS = 1028; // Max number allowed
-  private int currentNumBalls;             // Number currently active
-  private Ball[] balls = new Ball[MAX_BALLS];
+  private static final int INITIAL_CAPACITY = 64; // Of the simulation, which grows as needed
+  private Simulation simulation;
+  private SnapshotBuffer frames;  // Latest states, from the game thread to the EDT
+
+  // Colors of the balls, indexed by BallStore.colorIndex
+  private static final Color[] PALETTE = {
+      Color.YELLOW
+      , Color.GREEN
+      , Color.PINK
+      , Color.ORANGE
+      , Color.BLUE
+      , Color.CYAN
+      , Color.MAGENTA
+      , Color.RED
+  };
+
+  // Inputs of the event dispatch thread, applied on the game thread
+  private static final int NO_CHANGE = -1;
+  private final AtomicInteger pendingLaunches = new AtomicInteger();
+  private final AtomicInteger pendingRetires = new AtomicInteger();
+  private final AtomicInteger pendingSpeedPercentage = new AtomicInteger(NO_CHANGE);
+  private final AtomicReference<float[]> pendingContainer = new AtomicReference<>();
+  private final AtomicReference<ObstacleField> pendingObstacles = new AtomicReference<>();
+  private final AtomicReference<BroadPhase> pendingBroadPhase = new AtomicReference<>();
+  private final AtomicReference<Boolean> pendingEventDriven = new AtomicReference<>();
+  private final AtomicReference<Boolean> pendingParallel = new AtomicReference<>();
+  private final Random generator;  // Of the launched balls, used on the game thread
+  private float[] savedSpeedXs;  // Speeds at 100%, used on the game thread
+  private float[] savedSpeedYs;
+
+  // Flyweight view on one row of the snapshot, for drawing
+  private Ball ballView = new Ball(0, 0, 0, 0, 0);
+  // Pre-rendered balls. The launched balls have 60 sizes and the palette
+  // has 8 colors, so the key space is bounded by a few hundred sprites.
+  private static final int MAX_SPRITES = 1024;
+  private SpriteCache sprites = new SpriteCache(MAX_SPRITES);
+  // Balls' information, refreshed a few times per second
+  private static final int HUD_REFRESH_RATE = 4;
+  private Hud hud = new Hud(HUD_REFRESH_RATE);
+  // Runtime metrics of the simulation, optionally drawn over the canvas
+  private MetricsOverlay metricsOverlay = new MetricsOverlay(HUD_REFRESH_RATE);
+  private boolean showMetrics;  // Used on the event dispatch thread
 
   private ContainerCircle container;  // The circular container
+  private volatile ObstacleField obstacles;  // Built, so immutable; null for none
+  private static final Color OBSTACLE_COLOR = Color.LIGHT_GRAY;
   private int canvasWidth;
   private int canvasHeight;
   private int canvasShorterSide;
 
-  private boolean paused = false;  // Flag for pause/resume control
-
   /**
    * Constructor to create the UI components and init the game objects.
    * Set the drawing canvas to fill the screen (given its width and height).
@@ -34,6 +97,22 @@ public class BallWorld extends JPanel {
    * @param height : screen height
    */
   public BallWorld(int width, int height) {
+    this(width, height, new Random());
+  }
+
+  /**
+   * @see BallWorld(int, int). Same, in deterministic mode: the launched balls
+   * are drawn from a generator with the given seed, so that the same inputs
+   * give the same world, whatever the broad-phase or parallel settings.
+   *
+   * @param seed : seed of the generator of the launched balls.
+   */
+  public BallWorld(int width, int height, long seed) {
+    this(width, height, new Random(seed));
+  }
+
+  private BallWorld(int width, int height, Random generator) {
+    this.generator = generator;
     final int controlHeight = 30;
     canvasWidth = width;
     canvasHeight = height - controlHeight;  // Leave space for the control panel
@@ -42,62 +121,43 @@ public class BallWorld extends JPanel {
     // Init the Container Box
     container = new ContainerCircle(canvasWidth / 2, canvasHeight / 2, canvasShorterSide / 2 - 10,
         Color.BLACK, Color.WHITE);
+    simulation = new Simulation(INITIAL_CAPACITY, container.centerX, container.centerY, container.radius);
 
-    currentNumBalls = 1;
-    balls[0] = new Ball(canvasWidth / 2, canvasHeight / 2, 150, 8, 30, Color.YELLOW);
+//      simulation.addBall(canvasWidth / 2, canvasHeight / 2, 150, 8, 30, paletteIndex(Color.YELLOW));
 
-//      currentNumBalls = 2;
-//      balls[0] = new Ball(300, 100, 25, 5, 90, Color.YELLOW);
-//      balls[1] = new Ball(300, 300, 100, 6, -90, Color.YELLOW);
+//      simulation.addBall(300, 100, 25, 5, 90, paletteIndex(Color.YELLOW));
+//      simulation.addBall(300, 300, 100, 6, -90, paletteIndex(Color.YELLOW));
 
-//      currentNumBalls = 5;  // 2 vertical balls
-//      balls[0] = new Ball(300, 100, 25, -5, 90, Color.GREEN);
-//      balls[1] = new Ball(300, 200, 25, 6, 90, Color.YELLOW);
-//      balls[2] = new Ball(300, 370, 25, -1, 90, Color.CYAN);
-//      balls[3] = new Ball(300, 370, 25, 4, 90, Color.PINK);
-//      balls[4] = new Ball(300, 450, 25, -3, 90, Color.MAGENTA);
+//      // 2 vertical balls
+//      simulation.addBall(300, 100, 25, -5, 90, paletteIndex(Color.GREEN));
+//      simulation.addBall(300, 200, 25, 6, 90, paletteIndex(Color.YELLOW));
+//      simulation.addBall(300, 370, 25, -1, 90, paletteIndex(Color.CYAN));
+//      simulation.addBall(300, 370, 25, 4, 90, paletteIndex(Color.PINK));
+//      simulation.addBall(300, 450, 25, -3, 90, paletteIndex(Color.MAGENTA));
 
     // Error here, balls run across each other, need to write log to check the program.
-//        currentNumBalls = 5;  // horizontal balls
-//        balls[0] = new Ball(100, 300, 25, -5, 0, Color.GREEN);
-//        balls[1] = new Ball(200, 300, 25, 6, 0, Color.YELLOW);
-//        balls[2] = new Ball(330, 300, 25, -1, 0, Color.CYAN);
-//        balls[3] = new Ball(400, 300, 25, 4, 0, Color.PINK);
-//        balls[4] = new Ball(550, 300, 25, -3, 0, Color.MAGENTA);
-
-    currentNumBalls = 11;
-    balls[0] = new Ball(100, 410, 25, 3, 34, Color.YELLOW);
-    balls[1] = new Ball(180, 350, 25, 2, -114, Color.YELLOW);
-    balls[2] = new Ball(330, 400, 30, 3, 14, Color.GREEN);
-    balls[3] = new Ball(400, 400, 30, 3, 14, Color.GREEN);
-    balls[4] = new Ball(400, 250, 35, 1, -47, Color.PINK);
-    balls[5] = new Ball(280, 320, 35, 4, 47, Color.PINK);
-    balls[6] = new Ball(280, 150, 40, 1, -114, Color.ORANGE);
-    balls[7] = new Ball(100, 240, 40, 2, 60, Color.ORANGE);
-    balls[8] = new Ball(250, 300, 50, 3, -42, Color.BLUE);
-    balls[9] = new Ball(200, 180, 70, 6, -84, Color.CYAN);
-    balls[10] = new Ball(300, 170, 90, 6, -42, Color.MAGENTA);
-
-    Color[] colors = {
-        Color.YELLOW
-        , Color.GREEN
-        , Color.PINK
-        , Color.ORANGE
-        , Color.BLUE
-        , Color.CYAN
-        , Color.MAGENTA
-        , Color.RED
-    };
-    Random generator = new Random();
-
-    // public Ball(float x, float y, float radius, float speed, float angleInDegree, Color color) {
-    // The rest of the balls, that can be launched using the launch button
-    // Allocate the balls, but position later before the launch
-    for (int i = currentNumBalls; i < MAX_BALLS; i++) {
-      Color which = colors[generator.nextInt(colors.length)];
-      int size = generator.nextInt(60) + 1;
-      balls[i] = new Ball(0, 0, size, 5, 45, which);
-    }
+//        // horizontal balls
+//        simulation.addBall(100, 300, 25, -5, 0, paletteIndex(Color.GREEN));
+//        simulation.addBall(200, 300, 25, 6, 0, paletteIndex(Color.YELLOW));
+//        simulation.addBall(330, 300, 25, -1, 0, paletteIndex(Color.CYAN));
+//        simulation.addBall(400, 300, 25, 4, 0, paletteIndex(Color.PINK));
+//        simulation.addBall(550, 300, 25, -3, 0, paletteIndex(Color.MAGENTA));
+
+    simulation.addBall(100, 410, 25, 3, 34, paletteIndex(Color.YELLOW));
+    simulation.addBall(180, 350, 25, 2, -114, paletteIndex(Color.YELLOW));
+    simulation.addBall(330, 400, 30, 3, 14, paletteIndex(Color.GREEN));
+    simulation.addBall(400, 400, 30, 3, 14, paletteIndex(Color.GREEN));
+    simulation.addBall(400, 250, 35, 1, -47, paletteIndex(Color.PINK));
+    simulation.addBall(280, 320, 35, 4, 47, paletteIndex(Color.PINK));
+    simulation.addBall(280, 150, 40, 1, -114, paletteIndex(Color.ORANGE));
+    simulation.addBall(100, 240, 40, 2, 60, paletteIndex(Color.ORANGE));
+    simulation.addBall(250, 300, 50, 3, -42, paletteIndex(Color.BLUE));
+    simulation.addBall(200, 180, 70, 6, -84, paletteIndex(Color.CYAN));
+    simulation.addBall(300, 170, 90, 6, -42, paletteIndex(Color.MAGENTA));
+
+    savedSpeedXs = simulation.getBalls().speedX.clone();
+    savedSpeedYs = simulation.getBalls().speedY.clone();
+    frames = new SnapshotBuffer(simulation);
 
     // Init the custom drawing panel for the box/ball
     DrawCanvas canvas = new DrawCanvas();
@@ -121,7 +181,9 @@ public class BallWorld extends JPanel {
         canvasWidth = dim.width;
         canvasHeight = dim.height - controlHeight; // Leave space for control panel
         canvasShorterSide = (canvasWidth < canvasHeight) ? canvasWidth : canvasHeight;
-        container.set(canvasWidth / 2, canvasHeight / 2, canvasShorterSide / 2 - 10);
+        // The game thread resizes the container before its next step
+        pendingContainer.set(new float[]{canvasWidth / 2, canvasHeight / 2,
+            canvasShorterSide / 2 - 10});
       }
     });
 
@@ -130,78 +192,167 @@ public class BallWorld extends JPanel {
   }
 
   /**
-   * Start the ball bouncing.
+   * Start the ball bouncing, again after a close(). Does nothing if the
+   * world is already running.
    */
   public void gameStart() {
-    // Run the game logic in its own thread.
-    Thread gameThread = new Thread() {
-      public void run() {
-        while (true) {
-          long beginTimeMillis, timeTakenMillis, timeLeftMillis;
-          beginTimeMillis = System.currentTimeMillis();
-
-          if (!paused) {
-            // Execute one game step
-            gameUpdate();
-            // Refresh the display
-            repaint();
-          }
+    if (hostedWorld != null) {
+      return;
+    }
+    // Expose the metrics through JMX, e.g. to jconsole
+    simulation.getMetrics().register(metricsName);
+    // Run the game logic on the shared host, at a fixed tick rate
+    hostedWorld = HOST.host(simulation, UPDATE_RATE, this::gameUpdate);
+    hostedWorld.setPaused(paused);
+
+    // Refresh the display at the display rate, independently of the ticks
+    int refreshRate = DEFAULT_REFRESH_RATE;
+    if (!GraphicsEnvironment.isHeadless()) {
+      int displayRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+          .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+      if (displayRate != DisplayMode.REFRESH_RATE_UNKNOWN) {
+        refreshRate = displayRate;
+      }
+    }
+    repaintTimer = new Timer(1000 / refreshRate, e -> repaint());
+    repaintTimer.start();
+  }
+
+  /**
+   * Stop the world: its ticks, its display refresh, and its metrics in JMX.
+   * To be called by the owner of the panel when it is done with the world
+   * (e.g. when its window closes), and not tied to the panel leaving its
+   * window, which also happens when the window is hidden or re-laid out.
+   * gameStart() runs the world again.
+   */
+  public void close() {
+    if (hostedWorld == null) {
+      return;
+    }
+    hostedWorld.cancel();
+    hostedWorld = null;
+    repaintTimer.stop();
+    repaintTimer = null;
+    simulation.getMetrics().unregister();
+  }
 
-          // Provide the necessary delay to meet the target rate
-          timeTakenMillis = System.currentTimeMillis() - beginTimeMillis;
-          timeLeftMillis = 1000L / UPDATE_RATE - timeTakenMillis;
-          if (timeLeftMillis < 5) timeLeftMillis = 5; // Set a minimum
+  /**
+   * Return the simulation displayed by this panel.
+   */
+  public Simulation getSimulation() {
+    return simulation;
+  }
 
-          // Delay and give other thread a chance
-          try {
-            Thread.sleep(timeLeftMillis);
-          } catch (InterruptedException ignored) {
-          }
-        }
-      }
-    };
-    gameThread.start();  // Invoke GaemThread.run()
+  /**
+   * Select the broad-phase collision filter, from the next step.
+   *
+   * @see Simulation#setBroadPhase(BroadPhase)
+   */
+  public void setBroadPhase(BroadPhase broadPhase) {
+    // The game thread sets it before its next step
+    pendingBroadPhase.set(broadPhase);
   }
 
   /**
-   * One game time-step.
-   * Update the game objects, with proper collision detection and response.
+   * Switch between the sub-step loop and the event-driven engine, from the
+   * next step.
+   *
+   * @see Simulation#setEventDriven(boolean)
    */
-  public void gameUpdate() {
-    float timeLeft = 1.0f;  // One time-step to begin with
-
-    // Repeat until the one time-step is up
-    do {
-      // Find the earliest collision up to timeLeft among all objects
-      float tMin = timeLeft;
-
-      // Check collision between two balls
-      for (int i = 0; i < currentNumBalls; i++) {
-        for (int j = 0; j < currentNumBalls; j++) {
-          if (i < j) {
-            balls[i].intersect(balls[j], tMin);
-            if (balls[i].earliestCollisionResponse.t < tMin) {
-              tMin = balls[i].earliestCollisionResponse.t;
-            }
-          }
-        }
+  public void setEventDriven(boolean eventDriven) {
+    pendingEventDriven.set(eventDriven);
+  }
+
+  /**
+   * Enable or disable the multi-core prediction of the per-pair collision
+   * times at the start of each step, from the next step.
+   *
+   * @see Simulation#setParallel(boolean)
+   */
+  public void setParallel(boolean parallel) {
+    pendingParallel.set(parallel);
+  }
+
+  /**
+   * Set the static obstacles (walls and pegs) inside the container, from
+   * the next step.
+   *
+   * @param obstacles : the obstacles, built here if needed.
+   * @see Simulation#setObstacles(ObstacleField)
+   */
+  public void setObstacles(ObstacleField obstacles) {
+    obstacles.build();
+    this.obstacles = obstacles;
+    // The game thread sets them before its next step
+    pendingObstacles.set(obstacles);
+  }
+
+  /**
+   * Called on the host thread after each step of the simulation.
+   * Publish its snapshot, stamped with the time of the tick, and apply the
+   * inputs of the control panel for the next step.
+   */
+  private void gameUpdate(WorldHost.HostedWorld world) {
+    frames.publish(simulation, world.getLastTickNanos(), world.getPeriodNanos());
+
+    float[] newContainer = pendingContainer.getAndSet(null);
+    if (newContainer != null) {
+      simulation.setContainer(newContainer[0], newContainer[1], newContainer[2]);
+    }
+    ObstacleField newObstacles = pendingObstacles.getAndSet(null);
+    if (newObstacles != null) {
+      simulation.setObstacles(newObstacles);
+    }
+    BroadPhase newBroadPhase = pendingBroadPhase.getAndSet(null);
+    if (newBroadPhase != null) {
+      simulation.setBroadPhase(newBroadPhase);
+    }
+    Boolean eventDriven = pendingEventDriven.getAndSet(null);
+    if (eventDriven != null) {
+      simulation.setEventDriven(eventDriven);
+    }
+    Boolean parallel = pendingParallel.getAndSet(null);
+    if (parallel != null) {
+      simulation.setParallel(parallel);
+    }
+    int percentage = pendingSpeedPercentage.getAndSet(NO_CHANGE);
+    if (percentage != NO_CHANGE) {
+      BallStore balls = simulation.getBalls();
+      for (int i = 0; i < balls.size(); i++) {
+        balls.speedX[i] = savedSpeedXs[i] * percentage / 100.0f;
+        balls.speedY[i] = savedSpeedYs[i] * percentage / 100.0f;
+        simulation.ballChanged(i);
       }
-      // Check collision between the balls and the container
-      for (int i = 0; i < currentNumBalls; i++) {
-        balls[i].intersect(container, tMin);
-        if (balls[i].earliestCollisionResponse.t < tMin) {
-          tMin = balls[i].earliestCollisionResponse.t;
-        }
+    }
+    for (int n = pendingLaunches.getAndSet(0); n > 0; n--) {
+      // Position the new ball at the center (in case of window resize)
+      int which = generator.nextInt(PALETTE.length);
+      int size = generator.nextInt(60) + 1;
+      int i = simulation.addBall(simulation.getContainerCenterX(),
+          simulation.getContainerCenterY(), size, 5, 45, which);
+      if (i == savedSpeedXs.length) {
+        savedSpeedXs = Arrays.copyOf(savedSpeedXs, simulation.getCapacity());
+        savedSpeedYs = Arrays.copyOf(savedSpeedYs, simulation.getCapacity());
       }
+      savedSpeedXs[i] = simulation.getBalls().speedX[i];
+      savedSpeedYs[i] = simulation.getBalls().speedY[i];
+    }
+    for (int n = pendingRetires.getAndSet(0); n > 0 && simulation.getBalls().size() > 0; n--) {
+      // Retire the latest ball, so that no other ball changes index
+      simulation.removeBall(simulation.getBalls().size() - 1);
+    }
+  }
 
-      // Update all the balls up to the detected earliest collision time tMin,
-      // or timeLeft if there is no collision.
-      for (int i = 0; i < currentNumBalls; i++) {
-        balls[i].update(tMin);
+  /**
+   * Return the index of the given color in the palette.
+   */
+  private static int paletteIndex(Color color) {
+    for (int i = 0; i < PALETTE.length; i++) {
+      if (PALETTE[i].equals(color)) {
+        return i;
       }
-
-      timeLeft -= tMin;                // Subtract the time consumed and repeat
-    } while (timeLeft > EPSILON_TIME);  // Ignore remaining time less than threshold
+    }
+    throw new IllegalArgumentException("Color not in palette: " + color);
   }
 
   /**
@@ -213,17 +364,47 @@ public class BallWorld extends JPanel {
      */
     @Override
     public void paintComponent(Graphics g) {
+      long startNanos = System.nanoTime();
       super.paintComponent(g);    // Paint background
-      // Draw the balls and container
+      // Draw the balls and container of the latest frame
+      Simulation.Snapshot frame = frames.read();
+      container.set((int) frame.containerCenterX, (int) frame.containerCenterY,
+          (int) frame.containerRadius);
       container.draw(g);
-      for (int i = 0; i < currentNumBalls; i++) {
-        balls[i].draw(g);
+      ObstacleField field = obstacles;
+      if (field != null) {
+        drawObstacles(g, field);
+      }
+      // Interpolate between the start and the end of the tick of the frame
+      BallStore balls = frame.balls;
+      float alpha = frame.getInterpolationAlpha(System.nanoTime());
+      for (int i = 0; i < balls.size(); i++) {
+        ballView.load(balls, i, PALETTE[balls.colorIndex[i]]);
+        ballView.x = frame.previousX[i] + (balls.x[i] - frame.previousX[i]) * alpha;
+        ballView.y = frame.previousY[i] + (balls.y[i] - frame.previousY[i]) * alpha;
+        ballView.draw(g, sprites, getGraphicsConfiguration());
       }
       // Display balls' information
-      g.setColor(Color.BLUE);
-      g.setFont(new Font("Courier New", Font.PLAIN, 12));
-      for (int i = 0; i < currentNumBalls; i++) {
-        g.drawString("Ball " + (i + 1) + " " + balls[i].toString(), 20, 30 + i * 20);
+      hud.draw(g, frame, getHeight());
+      if (showMetrics) {
+        metricsOverlay.draw(g, simulation.getMetrics(), getWidth());
+      }
+      simulation.getMetrics().recordPaint(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Draw the walls as lines and the pegs as discs.
+     */
+    private void drawObstacles(Graphics g, ObstacleField field) {
+      g.setColor(OBSTACLE_COLOR);
+      for (int k = 0; k < field.getNumSegments(); k++) {
+        g.drawLine((int) field.getSegmentX1(k), (int) field.getSegmentY1(k),
+            (int) field.getSegmentX2(k), (int) field.getSegmentY2(k));
+      }
+      for (int k = 0; k < field.getNumPegs(); k++) {
+        int radius = Math.max(1, Math.round(field.getPegRadius(k)));
+        g.fillOval(Math.round(field.getPegX(k)) - radius, Math.round(field.getPegY(k)) - radius,
+            2 * radius, 2 * radius);
       }
     }
 
@@ -240,6 +421,7 @@ public class BallWorld extends JPanel {
    * The control panel (inner class).
    */
   class ControlPanel extends JPanel {
+    private int numBalls;  // Number of balls, including the pending launches and retires
 
     /**
      * Constructor to initialize UI components
@@ -250,17 +432,23 @@ public class BallWorld extends JPanel {
       this.add(new JLabel("Pause"));
       this.add(pauseControl);
       pauseControl.addItemListener(e -> {
-        paused = !paused;  // Toggle pause/resume flag
+        paused = pauseControl.isSelected();
+        if (hostedWorld != null) {
+          hostedWorld.setPaused(paused);  // Pause/resume the ticks
+        }
+        transferFocusUpCycle();  // To handle key events
+      });
+
+      // A checkbox to show/hide the runtime metrics
+      JCheckBox metricsControl = new JCheckBox();
+      this.add(new JLabel("Metrics"));
+      this.add(metricsControl);
+      metricsControl.addItemListener(e -> {
+        showMetrics = metricsControl.isSelected();
         transferFocusUpCycle();  // To handle key events
       });
 
       // A slider for adjusting the speed of all the balls by a factor
-      final float[] ballSavedSpeedXs = new float[MAX_BALLS];
-      final float[] ballSavedSpeedYs = new float[MAX_BALLS];
-      for (int i = 0; i < currentNumBalls; i++) {
-        ballSavedSpeedXs[i] = balls[i].speedX;
-        ballSavedSpeedYs[i] = balls[i].speedY;
-      }
       int minFactor = 5;    // percent
       int maxFactor = 200;  // percent
       JSlider speedControl = new JSlider(JSlider.HORIZONTAL, minFactor, maxFactor, 100);
@@ -269,27 +457,33 @@ public class BallWorld extends JPanel {
       speedControl.addChangeListener(e -> {
         JSlider source = (JSlider) e.getSource();
         if (!source.getValueIsAdjusting()) {
-          int percentage = source.getValue();
-          for (int i = 0; i < currentNumBalls; i++) {
-            balls[i].speedX = ballSavedSpeedXs[i] * percentage / 100.0f;
-            balls[i].speedY = ballSavedSpeedYs[i] * percentage / 100.0f;
-          }
+          // The game thread scales the speeds before its next step
+          pendingSpeedPercentage.set(source.getValue());
         }
         transferFocusUpCycle();  // To handle key events
       });
 
-      // A button for launching the remaining balls
+      // Buttons for launching a new ball, and retiring the latest one
       final JButton launchControl = new JButton("Launch New Ball");
+      final JButton retireControl = new JButton("Retire Ball");
       this.add(launchControl);
+      this.add(retireControl);
+      numBalls = simulation.getBalls().size();
       launchControl.addActionListener(e -> {
-        if (currentNumBalls < MAX_BALLS) {
-          // Position the location of the ball (in case window resize)
-          balls[currentNumBalls].x = canvasWidth / 2;
-          balls[currentNumBalls].y = canvasHeight / 2;
-          currentNumBalls++;
-          if (currentNumBalls == MAX_BALLS) {
+        // The game thread adds the ball before its next step
+        pendingLaunches.incrementAndGet();
+        numBalls++;
+        retireControl.setEnabled(true);
+        transferFocusUpCycle();  // To handle key events
+      });
+      retireControl.addActionListener(e -> {
+        if (numBalls > 0) {
+          // The game thread removes the ball before its next step
+          pendingRetires.incrementAndGet();
+          numBalls--;
+          if (numBalls == 0) {
             // Disable the button, as there is no more ball
-            launchControl.setEnabled(false);
+            retireControl.setEnabled(false);
           }
         }
         transferFocusUpCycle();  // To handle key events
@@ -0,0 +1,183 @@
+import collisionphysics.BallStore;
+import collisionphysics.Simulation;
+
+import java.awt.*;
+
+/**
+ * The heads-up display of the balls' information: an aggregate line (number
+ * of balls, total kinetic energy, average speed) followed by one line per
+ * ball, in the format of Ball.toString().
+ * <p>
+ * The text is only refreshed at a low rate (a few times per second, which
+ * is as fast as anyone can read it), and formatted by hand into re-used
+ * char buffers, without Formatter, boxing or String concatenation. Only the
+ * lines that fit on the canvas are formatted and drawn.
+ * <p>
+ * Not thread-safe: use it from the event dispatch thread only.
+ */
+public class Hud {
+  private static final int LEFT = 20;         // x of the text
+  private static final int TOP = 30;          // Baseline of the first line
+  private static final int LINE_HEIGHT = 20;  // Between two baselines
+  private static final int LINE_LENGTH = 80;  // Max chars per line
+
+  private final Font font = new Font("Courier New", Font.PLAIN, 12);
+  private final long refreshNanos;
+  private long lastRefreshNanos;
+  private boolean refreshed;  // At least once
+
+  // Line 0 is the aggregate line, line k > 0 is ball k
+  private char[][] lines = new char[0][];
+  private int[] lineLengths = new int[0];
+  private int numLines;
+
+  /**
+   * Constructor.
+   *
+   * @param refreshRate : number of text refreshes per second.
+   */
+  public Hud(int refreshRate) {
+    this.refreshNanos = 1_000_000_000L / refreshRate;
+  }
+
+  /**
+   * Draw the display, refreshing its text from the given frame if the
+   * refresh period has elapsed.
+   *
+   * @param g      : the graphics context.
+   * @param frame  : the latest state of the simulation.
+   * @param height : height of the canvas, to skip the lines that do not fit.
+   */
+  public void draw(Graphics g, Simulation.Snapshot frame, int height) {
+    long now = System.nanoTime();
+    if (!refreshed || now - lastRefreshNanos >= refreshNanos) {
+      refresh(frame, Math.max(1, (height - TOP) / LINE_HEIGHT + 1));
+      lastRefreshNanos = now;
+      refreshed = true;
+    }
+    g.setColor(Color.BLUE);
+    g.setFont(font);
+    for (int k = 0; k < numLines; k++) {
+      g.drawChars(lines[k], 0, lineLengths[k], LEFT, TOP + k * LINE_HEIGHT);
+    }
+  }
+
+  /**
+   * Format the aggregate line, and the lines of the balls that fit in
+   * maxLines.
+   */
+  private void refresh(Simulation.Snapshot frame, int maxLines) {
+    BallStore balls = frame.balls;
+    int count = balls.size();
+    numLines = Math.min(maxLines, count + 1);
+    ensureLines(numLines);
+
+    // Aggregates, over all the balls
+    double totalEnergy = 0;
+    double totalSpeed = 0;
+    for (int i = 0; i < count; i++) {
+      totalEnergy += balls.getKineticEnergy(i);
+      totalSpeed += balls.getSpeed(i);
+    }
+    char[] line = lines[0];
+    int pos = appendText(line, 0, "Balls ");
+    pos = appendFixed(line, pos, count, 4, 0);
+    pos = appendText(line, pos, "  KE=");
+    pos = appendFixed(line, pos, totalEnergy, 7, 0);
+    pos = appendText(line, pos, "  avg S=");
+    pos = appendFixed(line, pos, (count > 0) ? totalSpeed / count : 0, 4, 1);
+    lineLengths[0] = pos;
+
+    // Same format as Ball.toString()
+    for (int k = 1; k < numLines; k++) {
+      int i = k - 1;
+      float speedX = balls.speedX[i];
+      float speedY = balls.speedY[i];
+      line = lines[k];
+      pos = appendText(line, 0, "Ball ");
+      pos = appendFixed(line, pos, k, 0, 0);
+      pos = appendText(line, pos, " @(");
+      pos = appendFixed(line, pos, balls.x[i], 3, 0);
+      line[pos++] = ',';
+      pos = appendFixed(line, pos, balls.y[i], 3, 0);
+      pos = appendText(line, pos, ") r=");
+      pos = appendFixed(line, pos, balls.radius[i], 3, 0);
+      pos = appendText(line, pos, " V=(");
+      pos = appendFixed(line, pos, speedX, 3, 0);
+      line[pos++] = ',';
+      pos = appendFixed(line, pos, speedY, 3, 0);
+      pos = appendText(line, pos, ") S=");
+      pos = appendFixed(line, pos, balls.getSpeed(i), 4, 1);
+      pos = appendText(line, pos, " \u0398=");  // \u0398 is theta
+      pos = appendFixed(line, pos, Math.toDegrees(Math.atan2(-speedY, speedX)), 4, 0);
+      pos = appendText(line, pos, " KE=");
+      pos = appendFixed(line, pos, balls.getKineticEnergy(i), 3, 0);
+      lineLengths[k] = pos;
+    }
+  }
+
+  private void ensureLines(int n) {
+    if (lines.length < n) {
+      char[][] newLines = new char[n][];
+      System.arraycopy(lines, 0, newLines, 0, lines.length);
+      for (int k = lines.length; k < n; k++) {
+        newLines[k] = new char[LINE_LENGTH];
+      }
+      lines = newLines;
+      lineLengths = new int[n];
+    }
+  }
+
+  /**
+   * Append the given text at pos, and return the position after it.
+   */
+  static int appendText(char[] line, int pos, String text) {
+    int length = Math.min(text.length(), line.length - pos);
+    text.getChars(0, length, line, pos);
+    return pos + length;
+  }
+
+  /**
+   * Append the given value at pos, as Formatter's %{width}.{decimals}f
+   * would (right-aligned, rounded half up), and return the position after it.
+   */
+  static int appendFixed(char[] line, int pos, double value, int width, int decimals) {
+    long scale = 1;
+    for (int d = 0; d < decimals; d++) {
+      scale *= 10;
+    }
+    long scaled = (long) Math.floor(Math.abs(value) * scale + 0.5);
+    boolean negative = Double.doubleToRawLongBits(value) < 0;  // As Formatter, "-0" too
+
+    // Number of chars: sign, integer digits, point and decimals
+    int intDigits = 1;
+    for (long intPart = scaled / scale; intPart >= 10; intPart /= 10) {
+      intDigits++;
+    }
+    int length = (negative ? 1 : 0) + intDigits + (decimals > 0 ? decimals + 1 : 0);
+    if (pos + Math.max(width, length) > line.length) {
+      return pos;  // No room left on the line
+    }
+    for (int pad = length; pad < width; pad++) {
+      line[pos++] = ' ';
+    }
+    if (negative) {
+      line[pos++] = '-';
+    }
+    // Write the digits from the right
+    int end = pos + length - (negative ? 1 : 0);
+    int p = end;
+    for (int d = 0; d < decimals; d++) {
+      line[--p] = (char) ('0' + scaled % 10);
+      scaled /= 10;
+    }
+    if (decimals > 0) {
+      line[--p] = '.';
+    }
+    do {
+      line[--p] = (char) ('0' + scaled % 10);
+      scaled /= 10;
+    } while (p > pos);
+    return end;
+  }
+}
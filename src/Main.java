@@ -1,17 +1,59 @@
+import collisionphysics.ObstacleField;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.JFrame;
 
 public class Main {
-   // Entry main program
+   // Entry main program. Run with -Dballz.seed=<seed> for a deterministic world,
+   // and with -Dballz.pegs=true for a field of pegs in the lower half.
    public static void main(String[] args) {
+      final Long seed = Long.getLong("ballz.seed");
+      final boolean pegs = Boolean.getBoolean("ballz.pegs");
       // Run UI in the Event Dispatcher Thread (EDT), instead of Main thread
       javax.swing.SwingUtilities.invokeLater(new Runnable() {
          public void run() {
             JFrame frame = new JFrame("A World of Balls");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setContentPane(new BallWorld(1024, 768)); // BallWorld is a JPanel
+            BallWorld world = (seed == null) ? new BallWorld(1024, 768)
+                  : new BallWorld(1024, 768, seed);
+            if (pegs) {
+               world.setObstacles(pegField(1024, 768 - 30));
+            }
+            frame.setContentPane(world); // BallWorld is a JPanel
+            frame.addWindowListener(new WindowAdapter() {
+               // Stop the world and free its metrics before the exit
+               @Override
+               public void windowClosing(WindowEvent e) {
+                  world.close();
+               }
+            });
             frame.pack();            // Preferred size of BallWorld
             frame.setVisible(true);  // Show it
          }
       });
    }
+
+   // A staggered lattice of pegs in the lower half of the container of a
+   // canvas of the given size, like a pachinko.
+   private static ObstacleField pegField(int width, int height) {
+      final float spacing = 24;
+      final float pegRadius = 3;
+      float centerX = width / 2;
+      float centerY = height / 2;
+      float radius = Math.min(width, height) / 2 - 10;
+      ObstacleField field = new ObstacleField();
+      int row = 0;
+      for (float y = centerY + 60; y < centerY + 0.8f * radius; y += spacing, row++) {
+         float offset = (row % 2 == 0) ? 0 : spacing / 2;
+         for (float x = centerX - radius + offset; x < centerX + radius; x += spacing) {
+            float dx = x - centerX;
+            float dy = y - centerY;
+            if (dx * dx + dy * dy < (0.85f * radius) * (0.85f * radius)) {
+               field.addPeg(x, y, pegRadius);
+            }
+         }
+      }
+      return field;
+   }
 }
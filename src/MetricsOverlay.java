@@ -0,0 +1,106 @@
+import collisionphysics.LatencyHistogram;
+import collisionphysics.SimulationMetrics;
+
+import java.awt.*;
+
+/**
+ * An on-screen overlay of the runtime metrics of the simulation, in the top
+ * right corner of the canvas: the counts of the last step, the physics and
+ * paint time percentiles, the late ticks and the steps over budget.
+ * <p>
+ * As the Hud, the text is refreshed at a low rate and formatted into
+ * re-used char buffers, so drawing the overlay does not allocate.
+ * <p>
+ * Not thread-safe: use it from the event dispatch thread only.
+ */
+public class MetricsOverlay {
+  private static final int RIGHT = 20;        // Margin from the right edge
+  private static final int TOP = 30;          // Baseline of the first line
+  private static final int LINE_HEIGHT = 20;  // Between two baselines
+  private static final int LINE_LENGTH = 40;  // Max chars per line
+  private static final int NUM_LINES = 6;
+
+  private final Font font = new Font("Courier New", Font.PLAIN, 12);
+  private final long refreshNanos;
+  private long lastRefreshNanos;
+  private boolean refreshed;  // At least once
+
+  private final char[][] lines = new char[NUM_LINES][LINE_LENGTH];
+  private final int[] lineLengths = new int[NUM_LINES];
+
+  /**
+   * Constructor.
+   *
+   * @param refreshRate : number of text refreshes per second.
+   */
+  public MetricsOverlay(int refreshRate) {
+    this.refreshNanos = 1_000_000_000L / refreshRate;
+  }
+
+  /**
+   * Draw the overlay, refreshing its text from the given metrics if the
+   * refresh period has elapsed.
+   *
+   * @param g       : the graphics context.
+   * @param metrics : the metrics of the simulation.
+   * @param width   : width of the canvas, to align the text on the right.
+   */
+  public void draw(Graphics g, SimulationMetrics metrics, int width) {
+    long now = System.nanoTime();
+    if (!refreshed || now - lastRefreshNanos >= refreshNanos) {
+      refresh(metrics);
+      lastRefreshNanos = now;
+      refreshed = true;
+    }
+    g.setColor(Color.RED);
+    g.setFont(font);
+    int left = width - RIGHT - g.getFontMetrics().charWidth('0') * LINE_LENGTH;
+    for (int k = 0; k < NUM_LINES; k++) {
+      g.drawChars(lines[k], 0, lineLengths[k], left, TOP + k * LINE_HEIGHT);
+    }
+  }
+
+  private void refresh(SimulationMetrics metrics) {
+    char[] line = lines[0];
+    int pos = Hud.appendText(line, 0, "Sub-steps  ");
+    pos = Hud.appendFixed(line, pos, metrics.getLastSubSteps(), 6, 0);
+    pos = Hud.appendText(line, pos, "  max ");
+    pos = Hud.appendFixed(line, pos, metrics.getMaxSubSteps(), 6, 0);
+    lineLengths[0] = pos;
+
+    line = lines[1];
+    pos = Hud.appendText(line, 0, "Pairs      ");
+    pos = Hud.appendFixed(line, pos, metrics.getLastCandidatePairs(), 6, 0);
+    pos = Hud.appendText(line, pos, "  tests ");
+    pos = Hud.appendFixed(line, pos, metrics.getLastPairTests(), 8, 0);
+    lineLengths[1] = pos;
+
+    line = lines[2];
+    pos = Hud.appendText(line, 0, "Collisions ");
+    pos = Hud.appendFixed(line, pos, metrics.getLastCollisions(), 6, 0);
+    lineLengths[2] = pos;
+
+    lineLengths[3] = appendTimes(lines[3], "Physics ms ", metrics.getPhysicsTimes());
+    lineLengths[4] = appendTimes(lines[4], "Paint ms   ", metrics.getPaintTimes());
+
+    line = lines[5];
+    pos = Hud.appendText(line, 0, "Late ticks ");
+    pos = Hud.appendFixed(line, pos, metrics.getLateTicks(), 6, 0);
+    pos = Hud.appendText(line, pos, "  over budget ");
+    pos = Hud.appendFixed(line, pos, metrics.getOverBudgetSteps(), 6, 0);
+    lineLengths[5] = pos;
+  }
+
+  /**
+   * Format the label, then the median, 99th percentile and max of the
+   * histogram in milliseconds, and return the length of the line.
+   */
+  private static int appendTimes(char[] line, String label, LatencyHistogram times) {
+    int pos = Hud.appendText(line, 0, label);
+    pos = Hud.appendFixed(line, pos, times.getPercentileNanos(50) / 1e6, 6, 2);
+    pos = Hud.appendText(line, pos, " p99");
+    pos = Hud.appendFixed(line, pos, times.getPercentileNanos(99) / 1e6, 7, 2);
+    pos = Hud.appendText(line, pos, " max");
+    return Hud.appendFixed(line, pos, times.getMaxNanos() / 1e6, 7, 2);
+  }
+}
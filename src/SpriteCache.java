@@ -0,0 +1,169 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A cache of pre-rendered ball sprites, keyed by (diameter, color).
+ * <p>
+ * Rasterizing an oval on every frame is expensive with software Java2D;
+ * copying a pre-rendered image is not. Each sprite is an antialiased
+ * circle drawn once into an image compatible with the screen (a managed
+ * image, which Java2D may also cache in video memory), and re-used for
+ * every ball of the same size and color. The least recently used sprites
+ * are evicted beyond the max size of the cache.
+ * <p>
+ * The sprites are kept in an open-addressed table keyed by a primitive
+ * long, so that a lookup (one per ball per frame) allocates nothing: no
+ * boxed key, no map entry. Evicting scans the table for the least recently
+ * used sprite, which only happens on a miss with a full cache.
+ * <p>
+ * Not thread-safe: use it from the event dispatch thread only.
+ *
+ * @see Ball#draw(Graphics, SpriteCache, GraphicsConfiguration)
+ */
+public class SpriteCache {
+  private static final long EMPTY = -1;  // Key of a free slot, not a valid (diameter, color)
+  private final int maxSprites;
+  private final long[] keys;  // (diameter << 32) | ARGB, or EMPTY
+  private final BufferedImage[] images;
+  private final long[] lastUsed;  // Value of clock at the last lookup of each slot
+  private final int mask;  // Number of slots - 1, a power of two
+  private int size;
+  private long clock;
+  private GraphicsConfiguration config;  // The configuration of the cached images
+  private long hits, misses;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSprites : max number of sprites kept.
+   */
+  public SpriteCache(int maxSprites) {
+    if (maxSprites < 1) {
+      throw new IllegalArgumentException("Max sprites must be positive: " + maxSprites);
+    }
+    this.maxSprites = maxSprites;
+    // At most half full, so that the probes stay short
+    int numSlots = Integer.highestOneBit(2 * maxSprites - 1) << 1;
+    keys = new long[numSlots];
+    images = new BufferedImage[numSlots];
+    lastUsed = new long[numSlots];
+    mask = numSlots - 1;
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Return the sprite of a ball of the given diameter and color, rendering
+   * it if not cached.
+   *
+   * @param diameter : diameter of the ball, in pixels.
+   * @param color    : color of the ball.
+   * @param config   : configuration of the destination, e.g. of the component.
+   * @return an image of diameter x diameter pixels, transparent outside the ball.
+   */
+  public BufferedImage get(int diameter, Color color, GraphicsConfiguration config) {
+    if (config != this.config) {
+      clear();  // Moved to another screen, the images are not compatible
+      this.config = config;
+    }
+    long key = ((long) diameter << 32) | (color.getRGB() & 0xffffffffL);
+    int slot = find(key);
+    if (keys[slot] == key) {
+      hits++;
+      lastUsed[slot] = ++clock;
+      return images[slot];
+    }
+    misses++;
+    BufferedImage sprite = render(Math.max(diameter, 1), color);
+    if (size == maxSprites) {
+      evictLeastRecentlyUsed();
+      slot = find(key);  // The eviction may have moved the free slot
+    }
+    keys[slot] = key;
+    images[slot] = sprite;
+    lastUsed[slot] = ++clock;
+    size++;
+    return sprite;
+  }
+
+  /**
+   * Return the number of sprites cached.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Return the number of lookups served from the cache.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * Return the number of lookups that had to render a sprite.
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Return the slot of the given key, or the free slot where it would go.
+   */
+  private int find(long key) {
+    int slot = hash(key);
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int hash(long key) {
+    long mixed = key * 0x9E3779B97F4A7C15L;  // Fibonacci hashing
+    return (int) (mixed ^ (mixed >>> 32)) & mask;
+  }
+
+  /**
+   * Remove the least recently used sprite, and shift back the entries of
+   * its probe sequence into the hole (linear probing has no tombstones).
+   */
+  private void evictLeastRecentlyUsed() {
+    int hole = -1;
+    for (int slot = 0; slot <= mask; slot++) {
+      if (keys[slot] != EMPTY && (hole < 0 || lastUsed[slot] < lastUsed[hole])) {
+        hole = slot;
+      }
+    }
+    size--;
+    for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+      // Move the entry into the hole if the hole lies between its home and its slot
+      int home = hash(keys[slot]);
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        images[hole] = images[slot];
+        lastUsed[hole] = lastUsed[slot];
+        hole = slot;
+      }
+    }
+    keys[hole] = EMPTY;
+    images[hole] = null;
+  }
+
+  private void clear() {
+    Arrays.fill(keys, EMPTY);
+    Arrays.fill(images, null);
+    size = 0;
+  }
+
+  private BufferedImage render(int diameter, Color color) {
+    BufferedImage sprite = (config != null)
+        ? config.createCompatibleImage(diameter, diameter, Transparency.TRANSLUCENT)
+        : new BufferedImage(diameter, diameter, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = sprite.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g.setColor(color);
+    g.fillOval(0, 0, diameter, diameter);
+    g.dispose();
+    return sprite;
+  }
+}
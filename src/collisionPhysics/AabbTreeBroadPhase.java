@@ -0,0 +1,391 @@
+package collisionphysics;
+
+/**
+ * A dynamic bounding-volume tree broad-phase.
+ * <p>
+ * Each ball owns a leaf holding a fattened copy of its swept box. The tree
+ * adapts to the size of each ball, so a mix of small and large radii does
+ * not overflow any bucket, as it would with a single grid cell size. A leaf
+ * is removed and reinserted only when the ball's swept box leaves its fat
+ * box, which for slow balls happens once every many sub-steps.
+ * <p>
+ * Insertion picks the sibling with the least perimeter growth, and the tree
+ * is kept balanced by rotations along the path to the root (as in Box2D's
+ * b2DynamicTree). The nodes are kept in parallel arrays with a free list, to
+ * avoid repeatedly allocating objects.
+ */
+public class AabbTreeBroadPhase implements BroadPhase {
+  // Fixed fattening of the swept box, plus extra room along the velocity
+  private static final float FAT_MARGIN = 4f;
+  private static final float FAT_SPEED_FACTOR = 2f;
+
+  private static final int NULL_NODE = -1;
+
+  // Tree nodes
+  private float[] nodeMinX = new float[0];
+  private float[] nodeMinY = new float[0];
+  private float[] nodeMaxX = new float[0];
+  private float[] nodeMaxY = new float[0];
+  private int[] nodeParent = new int[0];  // Doubles as "next" in the free list
+  private int[] nodeChild1 = new int[0];
+  private int[] nodeChild2 = new int[0];
+  private int[] nodeHeight = new int[0];  // Leaf is 0, free node is -1
+  private int[] nodeBall = new int[0];
+  private int root = NULL_NODE;
+  private int freeList = NULL_NODE;
+
+  // Leaf of each ball, and the tight swept box of each ball
+  private int[] leafOfBall = new int[0];
+  private int numBalls;
+  private float[] boxMinX = new float[0];
+  private float[] boxMinY = new float[0];
+  private float[] boxMaxX = new float[0];
+  private float[] boxMaxY = new float[0];
+
+  // Traversal stack for queries
+  private int[] stack = new int[64];
+
+  @Override
+  public void findPairs(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                        int count, float timeLimit, PairList pairs) {
+    pairs.clear();
+    ensureBallCapacity(count);
+
+    // Balls removed from the end of the array
+    while (numBalls > count) {
+      numBalls--;
+      removeLeaf(leafOfBall[numBalls]);
+      freeNode(leafOfBall[numBalls]);
+    }
+
+    for (int i = 0; i < count; i++) {
+      boxMinX[i] = SweptBox.min(x[i], speedX[i], radius[i], timeLimit);
+      boxMinY[i] = SweptBox.min(y[i], speedY[i], radius[i], timeLimit);
+      boxMaxX[i] = SweptBox.max(x[i], speedX[i], radius[i], timeLimit);
+      boxMaxY[i] = SweptBox.max(y[i], speedY[i], radius[i], timeLimit);
+
+      int leaf;
+      if (i >= numBalls) {
+        leaf = allocateNode();
+        nodeBall[leaf] = i;
+        nodeHeight[leaf] = 0;
+        leafOfBall[i] = leaf;
+      } else {
+        leaf = leafOfBall[i];
+        if (nodeMinX[leaf] <= boxMinX[i] && nodeMinY[leaf] <= boxMinY[i]
+            && nodeMaxX[leaf] >= boxMaxX[i] && nodeMaxY[leaf] >= boxMaxY[i]) {
+          continue;  // Still inside its fat box, nothing to do
+        }
+        removeLeaf(leaf);
+      }
+      // Fatten the swept box, with extra room along the direction of motion
+      float extraX = FAT_SPEED_FACTOR * speedX[i] * timeLimit;
+      float extraY = FAT_SPEED_FACTOR * speedY[i] * timeLimit;
+      nodeMinX[leaf] = boxMinX[i] - FAT_MARGIN + (extraX < 0 ? extraX : 0);
+      nodeMinY[leaf] = boxMinY[i] - FAT_MARGIN + (extraY < 0 ? extraY : 0);
+      nodeMaxX[leaf] = boxMaxX[i] + FAT_MARGIN + (extraX > 0 ? extraX : 0);
+      nodeMaxY[leaf] = boxMaxY[i] + FAT_MARGIN + (extraY > 0 ? extraY : 0);
+      insertLeaf(leaf);
+    }
+    numBalls = count;
+
+    // Query the tree with the tight swept box of each ball
+    for (int i = 0; i < count; i++) {
+      int top = 0;
+      stack[top++] = root;
+      while (top > 0) {
+        int node = stack[--top];
+        if (node == NULL_NODE
+            || nodeMinX[node] > boxMaxX[i] || boxMinX[i] > nodeMaxX[node]
+            || nodeMinY[node] > boxMaxY[i] || boxMinY[i] > nodeMaxY[node]) {
+          continue;
+        }
+        if (nodeHeight[node] == 0) {
+          int j = nodeBall[node];
+          // Report each pair once, from its smaller index, on the tight boxes
+          if (j > i && boxMinX[j] <= boxMaxX[i] && boxMinX[i] <= boxMaxX[j]
+              && boxMinY[j] <= boxMaxY[i] && boxMinY[i] <= boxMaxY[j]) {
+            pairs.add(i, j);
+          }
+        } else {
+          if (top + 2 > stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, top);
+            stack = newStack;
+          }
+          stack[top++] = nodeChild1[node];
+          stack[top++] = nodeChild2[node];
+        }
+      }
+    }
+    pairs.sort();
+  }
+
+  @Override
+  public int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result) {
+    int numOverlaps = 0;
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      int node = stack[--top];
+      if (node == NULL_NODE
+          || nodeMinX[node] > maxX || minX > nodeMaxX[node]
+          || nodeMinY[node] > maxY || minY > nodeMaxY[node]) {
+        continue;
+      }
+      if (nodeHeight[node] == 0) {
+        int i = nodeBall[node];
+        if (boxMinX[i] <= maxX && minX <= boxMaxX[i] && boxMinY[i] <= maxY && minY <= boxMaxY[i]) {
+          result[numOverlaps++] = i;
+        }
+      } else {
+        if (top + 2 > stack.length) {
+          int[] newStack = new int[stack.length * 2];
+          System.arraycopy(stack, 0, newStack, 0, top);
+          stack = newStack;
+        }
+        stack[top++] = nodeChild1[node];
+        stack[top++] = nodeChild2[node];
+      }
+    }
+    return numOverlaps;
+  }
+
+  private void insertLeaf(int leaf) {
+    if (root == NULL_NODE) {
+      root = leaf;
+      nodeParent[root] = NULL_NODE;
+      return;
+    }
+
+    // Find the best sibling, descending by the least perimeter cost
+    float leafMinX = nodeMinX[leaf];
+    float leafMinY = nodeMinY[leaf];
+    float leafMaxX = nodeMaxX[leaf];
+    float leafMaxY = nodeMaxY[leaf];
+    int index = root;
+    while (nodeHeight[index] > 0) {
+      int child1 = nodeChild1[index];
+      int child2 = nodeChild2[index];
+
+      float perimeter = perimeter(nodeMinX[index], nodeMinY[index], nodeMaxX[index], nodeMaxY[index]);
+      float combinedPerimeter = perimeter(
+          Math.min(nodeMinX[index], leafMinX), Math.min(nodeMinY[index], leafMinY),
+          Math.max(nodeMaxX[index], leafMaxX), Math.max(nodeMaxY[index], leafMaxY));
+      // Cost of creating a new parent for this node and the new leaf
+      float cost = 2 * combinedPerimeter;
+      // Minimum cost of pushing the leaf further down the tree
+      float inheritanceCost = 2 * (combinedPerimeter - perimeter);
+
+      float cost1 = descendCost(child1, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+      float cost2 = descendCost(child2, leafMinX, leafMinY, leafMaxX, leafMaxY) + inheritanceCost;
+      if (cost < cost1 && cost < cost2) {
+        break;
+      }
+      index = (cost1 < cost2) ? child1 : child2;
+    }
+    int sibling = index;
+
+    // Create a new parent for the sibling and the leaf
+    int oldParent = nodeParent[sibling];
+    int newParent = allocateNode();
+    nodeParent[newParent] = oldParent;
+    nodeBall[newParent] = -1;
+    nodeHeight[newParent] = nodeHeight[sibling] + 1;
+    nodeChild1[newParent] = sibling;
+    nodeChild2[newParent] = leaf;
+    nodeParent[sibling] = newParent;
+    nodeParent[leaf] = newParent;
+    if (oldParent == NULL_NODE) {
+      root = newParent;
+    } else if (nodeChild1[oldParent] == sibling) {
+      nodeChild1[oldParent] = newParent;
+    } else {
+      nodeChild2[oldParent] = newParent;
+    }
+
+    refitUpward(newParent);
+  }
+
+  private float descendCost(int child, float leafMinX, float leafMinY, float leafMaxX, float leafMaxY) {
+    float combined = perimeter(
+        Math.min(nodeMinX[child], leafMinX), Math.min(nodeMinY[child], leafMinY),
+        Math.max(nodeMaxX[child], leafMaxX), Math.max(nodeMaxY[child], leafMaxY));
+    if (nodeHeight[child] == 0) {
+      return combined;
+    }
+    return combined - perimeter(nodeMinX[child], nodeMinY[child], nodeMaxX[child], nodeMaxY[child]);
+  }
+
+  private void removeLeaf(int leaf) {
+    if (leaf == root) {
+      root = NULL_NODE;
+      return;
+    }
+    int parent = nodeParent[leaf];
+    int grandParent = nodeParent[parent];
+    int sibling = (nodeChild1[parent] == leaf) ? nodeChild2[parent] : nodeChild1[parent];
+
+    if (grandParent == NULL_NODE) {
+      root = sibling;
+      nodeParent[sibling] = NULL_NODE;
+      freeNode(parent);
+      return;
+    }
+    // Destroy the parent and connect the sibling to the grand parent
+    if (nodeChild1[grandParent] == parent) {
+      nodeChild1[grandParent] = sibling;
+    } else {
+      nodeChild2[grandParent] = sibling;
+    }
+    nodeParent[sibling] = grandParent;
+    freeNode(parent);
+    refitUpward(grandParent);
+  }
+
+  /**
+   * Balance, then recompute the boxes and heights from the given node to the root.
+   */
+  private void refitUpward(int index) {
+    while (index != NULL_NODE) {
+      index = balance(index);
+      int child1 = nodeChild1[index];
+      int child2 = nodeChild2[index];
+      nodeHeight[index] = 1 + Math.max(nodeHeight[child1], nodeHeight[child2]);
+      setUnion(index, child1, child2);
+      index = nodeParent[index];
+    }
+  }
+
+  /**
+   * Perform a left or right rotation if node a is imbalanced.
+   * Return the new root of the sub-tree.
+   */
+  private int balance(int a) {
+    if (nodeHeight[a] < 2) {
+      return a;
+    }
+    int b = nodeChild1[a];
+    int c = nodeChild2[a];
+    int diff = nodeHeight[c] - nodeHeight[b];
+    if (diff > 1) {
+      return rotate(a, c, b, true);
+    }
+    if (diff < -1) {
+      return rotate(a, b, c, false);
+    }
+    return a;
+  }
+
+  /**
+   * Promote the child "up" of node a, whose other child is "keep".
+   * upIsChild2 tells which slot of a the promoted child occupied.
+   */
+  private int rotate(int a, int up, int keep, boolean upIsChild2) {
+    int f = nodeChild1[up];
+    int g = nodeChild2[up];
+
+    // Swap a and up
+    nodeChild1[up] = a;
+    nodeParent[up] = nodeParent[a];
+    nodeParent[a] = up;
+    int upParent = nodeParent[up];
+    if (upParent == NULL_NODE) {
+      root = up;
+    } else if (nodeChild1[upParent] == a) {
+      nodeChild1[upParent] = up;
+    } else {
+      nodeChild2[upParent] = up;
+    }
+
+    // Keep the taller grandchild under up, move the other one under a
+    int tall = (nodeHeight[f] > nodeHeight[g]) ? f : g;
+    int small = (tall == f) ? g : f;
+    nodeChild2[up] = tall;
+    if (upIsChild2) {
+      nodeChild2[a] = small;
+    } else {
+      nodeChild1[a] = small;
+    }
+    nodeParent[small] = a;
+    setUnion(a, keep, small);
+    setUnion(up, a, tall);
+    nodeHeight[a] = 1 + Math.max(nodeHeight[keep], nodeHeight[small]);
+    nodeHeight[up] = 1 + Math.max(nodeHeight[a], nodeHeight[tall]);
+    return up;
+  }
+
+  private void setUnion(int node, int child1, int child2) {
+    nodeMinX[node] = Math.min(nodeMinX[child1], nodeMinX[child2]);
+    nodeMinY[node] = Math.min(nodeMinY[child1], nodeMinY[child2]);
+    nodeMaxX[node] = Math.max(nodeMaxX[child1], nodeMaxX[child2]);
+    nodeMaxY[node] = Math.max(nodeMaxY[child1], nodeMaxY[child2]);
+  }
+
+  private static float perimeter(float minX, float minY, float maxX, float maxY) {
+    return 2 * ((maxX - minX) + (maxY - minY));
+  }
+
+  private int allocateNode() {
+    if (freeList == NULL_NODE) {
+      growNodes();
+    }
+    int node = freeList;
+    freeList = nodeParent[node];
+    nodeParent[node] = NULL_NODE;
+    nodeChild1[node] = NULL_NODE;
+    nodeChild2[node] = NULL_NODE;
+    nodeHeight[node] = 0;
+    return node;
+  }
+
+  private void freeNode(int node) {
+    nodeParent[node] = freeList;
+    nodeHeight[node] = -1;
+    freeList = node;
+  }
+
+  private void growNodes() {
+    int oldCapacity = nodeMinX.length;
+    int capacity = Math.max(16, oldCapacity * 2);
+    nodeMinX = grow(nodeMinX, capacity);
+    nodeMinY = grow(nodeMinY, capacity);
+    nodeMaxX = grow(nodeMaxX, capacity);
+    nodeMaxY = grow(nodeMaxY, capacity);
+    nodeParent = grow(nodeParent, capacity);
+    nodeChild1 = grow(nodeChild1, capacity);
+    nodeChild2 = grow(nodeChild2, capacity);
+    nodeHeight = grow(nodeHeight, capacity);
+    nodeBall = grow(nodeBall, capacity);
+    // Chain the new nodes into the free list
+    for (int node = capacity - 1; node >= oldCapacity; node--) {
+      nodeParent[node] = freeList;
+      nodeHeight[node] = -1;
+      freeList = node;
+    }
+  }
+
+  private void ensureBallCapacity(int count) {
+    if (leafOfBall.length >= count) {
+      return;
+    }
+    int capacity = Math.max(count, leafOfBall.length * 2);
+    leafOfBall = grow(leafOfBall, capacity);
+    boxMinX = new float[capacity];
+    boxMinY = new float[capacity];
+    boxMaxX = new float[capacity];
+    boxMaxY = new float[capacity];
+  }
+
+  private static float[] grow(float[] array, int capacity) {
+    float[] newArray = new float[capacity];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    int[] newArray = new int[capacity];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+}
@@ -0,0 +1,183 @@
+package collisionphysics;
+
+import java.util.Random;
+
+/**
+ * Spawns and retires the balls of a Simulation in bulk, e.g. a fountain or
+ * a burst of particles.
+ * <p>
+ * Each ball is spawned within a disc around the emitter's position, with a
+ * speed, direction, radius and palette index drawn uniformly from their
+ * ranges. The balls are retired latest first, so a retire moves no other
+ * ball (see Simulation.removeBall()). With rates, update() spawns and
+ * retires the whole number of balls due over the time elapsed, carrying the
+ * fractions over to the next update. The spawn disc is not checked for free
+ * room: as a launched ball, a spawned ball may overlap the balls there.
+ * <p>
+ * The balls live in the columns of the simulation, so the emitter
+ * allocates nothing per ball: once the simulation has room for the peak
+ * number of balls (see Simulation.ensureCapacity()), spawning and retiring
+ * do not allocate at all. The generator is seeded, so that a deterministic
+ * simulation stays deterministic.
+ * <p>
+ * Not thread-safe: use it on the thread stepping its simulation, between
+ * steps.
+ */
+public class BallEmitter {
+  private final Simulation simulation;
+  private final Random generator;
+
+  private float x, y;     // Center of the spawn disc
+  private float spread;   // Radius of the spawn disc
+  private float minSpeed = 1, maxSpeed = 1;
+  private float minAngle = 0, maxAngle = 360;  // In degrees, counter-clockwise
+  private float minRadius = 5, maxRadius = 5;
+  private int firstColorIndex = 0, numColors = 1;
+
+  private float spawnRate, retireRate;  // Balls per unit of simulation time
+  private float spawnDue, retireDue;    // Fractions of ball carried over
+
+  /**
+   * Constructor of an emitter at the origin, spawning 5-radius balls at
+   * speed 1 in any direction, with no rates.
+   *
+   * @param simulation : the simulation to spawn the balls into.
+   * @param seed       : seed of the random generator.
+   */
+  public BallEmitter(Simulation simulation, long seed) {
+    this.simulation = simulation;
+    this.generator = new Random(seed);
+  }
+
+  /**
+   * Set the spawn disc.
+   *
+   * @param x      : center x-position.
+   * @param y      : center y-position.
+   * @param spread : radius of the disc, 0 to spawn every ball at the center.
+   */
+  public void setPosition(float x, float y, float spread) {
+    if (spread < 0) {
+      throw new IllegalArgumentException("Spread must not be negative: " + spread);
+    }
+    this.x = x;
+    this.y = y;
+    this.spread = spread;
+  }
+
+  /**
+   * Set the range of the speeds, per step.
+   */
+  public void setSpeed(float min, float max) {
+    checkRange(min, max);
+    minSpeed = min;
+    maxSpeed = max;
+  }
+
+  /**
+   * Set the range of the directions of movement, in degrees
+   * counter-clockwise (e.g. 60 to 120 for a fountain upwards).
+   */
+  public void setAngle(float min, float max) {
+    checkRange(min, max);
+    minAngle = min;
+    maxAngle = max;
+  }
+
+  /**
+   * Set the range of the radii.
+   */
+  public void setRadius(float min, float max) {
+    checkRange(min, max);
+    if (!(min > 0)) {
+      throw new IllegalArgumentException("Radius must be positive: " + min);
+    }
+    minRadius = min;
+    maxRadius = max;
+  }
+
+  /**
+   * Set the palette indices of the colors, from firstColorIndex to
+   * firstColorIndex + numColors - 1.
+   */
+  public void setColors(int firstColorIndex, int numColors) {
+    if (numColors < 1) {
+      throw new IllegalArgumentException("Number of colors must be positive: " + numColors);
+    }
+    this.firstColorIndex = firstColorIndex;
+    this.numColors = numColors;
+  }
+
+  /**
+   * Set the rates of update().
+   *
+   * @param spawnRate  : balls spawned per unit of simulation time.
+   * @param retireRate : balls retired per unit of simulation time.
+   */
+  public void setRates(float spawnRate, float retireRate) {
+    if (!(spawnRate >= 0) || !(retireRate >= 0)) {
+      throw new IllegalArgumentException("Rates must not be negative: " + spawnRate
+          + ", " + retireRate);
+    }
+    this.spawnRate = spawnRate;
+    this.retireRate = retireRate;
+  }
+
+  /**
+   * Spawn the given number of balls.
+   *
+   * @return the index of the first ball spawned; the others follow it.
+   */
+  public int spawn(int count) {
+    int first = simulation.getBalls().size();
+    simulation.ensureCapacity(first + count);
+    for (int n = 0; n < count; n++) {
+      // Uniform in the disc
+      double theta = 2 * Math.PI * generator.nextFloat();
+      float distance = spread * (float) Math.sqrt(generator.nextFloat());
+      simulation.addBall(x + distance * (float) Math.cos(theta),
+          y + distance * (float) Math.sin(theta),
+          uniform(minRadius, maxRadius), uniform(minSpeed, maxSpeed),
+          uniform(minAngle, maxAngle), firstColorIndex + generator.nextInt(numColors));
+    }
+    return first;
+  }
+
+  /**
+   * Retire up to the given number of balls, the latest first.
+   *
+   * @return the number of balls retired.
+   */
+  public int retire(int count) {
+    int retired = Math.min(count, simulation.getBalls().size());
+    for (int n = 0; n < retired; n++) {
+      simulation.removeBall(simulation.getBalls().size() - 1);
+    }
+    return retired;
+  }
+
+  /**
+   * Spawn and retire the balls due at the rates over the given time.
+   * Call it between steps, e.g. with the time-step of the last step.
+   */
+  public void update(float dt) {
+    spawnDue += spawnRate * dt;
+    int spawns = (int) spawnDue;
+    spawnDue -= spawns;
+    retireDue += retireRate * dt;
+    int retires = (int) retireDue;
+    retireDue -= retires;
+    retire(retires);
+    spawn(spawns);
+  }
+
+  private float uniform(float min, float max) {
+    return min + (max - min) * generator.nextFloat();
+  }
+
+  private static void checkRange(float min, float max) {
+    if (!(min <= max)) {
+      throw new IllegalArgumentException("Empty range: " + min + " to " + max);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the balls.
+ * <p>
+ * Each property of the balls is kept in its own primitive column, indexed by
+ * ball, so that the engine loops run over contiguous memory instead of
+ * chasing one heap object (and its working CollisionResponse instances) per
+ * ball. The columns are public (like the fields of CollisionResponse) so
+ * that the hot loops can read them directly.
+ * <p>
+ * The color is stored as an index into a palette owned by the view, which
+ * keeps this class free of any AWT dependency.
+ * <p>
+ * The columns grow by doubling when full, so adding a ball is amortized
+ * O(1), and remove() moves the last row into the hole, so removing a ball
+ * is O(1) too. The columns may be replaced when they grow: do not keep a
+ * reference to them across an add().
+ */
+public class BallStore {
+  /** Center x-positions */
+  public float[] x;
+  /** Center y-positions */
+  public float[] y;
+  /** Speeds per step in x-direction */
+  public float[] speedX;
+  /** Speeds per step in y-direction */
+  public float[] speedY;
+  /** Radii */
+  public float[] radius;
+  /** Palette indices of the colors */
+  public int[] colorIndex;
+
+  private int size;  // Number of rows in use
+
+  /**
+   * Constructor with an initial capacity.
+   *
+   * @param capacity : number of balls to reserve room for.
+   */
+  public BallStore(int capacity) {
+    x = new float[capacity];
+    y = new float[capacity];
+    speedX = new float[capacity];
+    speedY = new float[capacity];
+    radius = new float[capacity];
+    colorIndex = new int[capacity];
+  }
+
+  /**
+   * Make room for at least the given number of balls, growing the columns
+   * to that or to twice their capacity, whichever is larger.
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity <= x.length) {
+      return;
+    }
+    capacity = Math.max(capacity, 2 * x.length);
+    x = Arrays.copyOf(x, capacity);
+    y = Arrays.copyOf(y, capacity);
+    speedX = Arrays.copyOf(speedX, capacity);
+    speedY = Arrays.copyOf(speedY, capacity);
+    radius = Arrays.copyOf(radius, capacity);
+    colorIndex = Arrays.copyOf(colorIndex, capacity);
+  }
+
+  /**
+   * Append a ball. For user friendliness, the velocity is given in speed and
+   * moveAngle in usual Cartesian coordinates, as for the Ball constructor.
+   *
+   * @param x             : center x-position.
+   * @param y             : center y-position.
+   * @param radius        : radius.
+   * @param speed         : magnitude of speed.
+   * @param angleInDegree : direction of movement, counter-clockwise.
+   * @param colorIndex    : palette index of the color.
+   * @return the index of the new ball.
+   */
+  public int add(float x, float y, float radius, float speed, float angleInDegree, int colorIndex) {
+    if (size == this.x.length) {
+      ensureCapacity(Math.max(16, size + 1));
+    }
+    int i = size++;
+    this.x[i] = x;
+    this.y[i] = y;
+    // Convert (speed, angle) to (x, y), with y-axis inverted
+    this.speedX[i] = (float) (speed * Math.cos(Math.toRadians(angleInDegree)));
+    this.speedY[i] = -speed * (float) Math.sin(Math.toRadians(angleInDegree));
+    this.radius[i] = radius;
+    this.colorIndex[i] = colorIndex;
+    return i;
+  }
+
+  /**
+   * Remove ball i, moving the last ball into its row (so the last ball
+   * takes index i, and the other balls keep theirs).
+   */
+  public void remove(int i) {
+    if (i < 0 || i >= size) {
+      throw new IllegalArgumentException("Ball " + i + " out of " + size);
+    }
+    int last = --size;
+    x[i] = x[last];
+    y[i] = y[last];
+    speedX[i] = speedX[last];
+    speedY[i] = speedY[last];
+    radius[i] = radius[last];
+    colorIndex[i] = colorIndex[last];
+  }
+
+  /**
+   * Replace the rows of this store with a copy of the rows of the given store.
+   *
+   * This store grows if it is smaller than the source.
+   *
+   * @param source : the store to copy.
+   */
+  public void copyFrom(BallStore source) {
+    int count = source.size;
+    ensureCapacity(count);
+    System.arraycopy(source.x, 0, x, 0, count);
+    System.arraycopy(source.y, 0, y, 0, count);
+    System.arraycopy(source.speedX, 0, speedX, 0, count);
+    System.arraycopy(source.speedY, 0, speedY, 0, count);
+    System.arraycopy(source.radius, 0, radius, 0, count);
+    System.arraycopy(source.colorIndex, 0, colorIndex, 0, count);
+    size = count;
+  }
+
+  /**
+   * Set the number of rows in use, e.g. after writing the columns in bulk.
+   */
+  void setSize(int size) {
+    if (size < 0 || size > x.length) {
+      throw new IllegalArgumentException("Size " + size + " out of capacity " + x.length);
+    }
+    this.size = size;
+  }
+
+  /**
+   * Return the number of balls stored.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Return the capacity of the columns.
+   */
+  public int capacity() {
+    return x.length;
+  }
+
+  /**
+   * Return the magnitude of speed of ball i.
+   */
+  public float getSpeed(int i) {
+    return (float) Math.sqrt(speedX[i] * speedX[i] + speedY[i] * speedY[i]);
+  }
+
+  /**
+   * Return the kinetic energy (0.5mv^2) of ball i, its mass being
+   * radius^3 / 1000 (as Ball.getMass()).
+   */
+  public float getKineticEnergy(int i) {
+    float mass = radius[i] * radius[i] * radius[i] / 1000f;
+    return 0.5f * mass * (speedX[i] * speedX[i] + speedY[i] * speedY[i]);
+  }
+}
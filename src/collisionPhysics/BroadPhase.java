@@ -0,0 +1,51 @@
+package collisionphysics;
+
+/**
+ * A broad-phase collision filter.
+ * <p>
+ * Given the state of all the balls, a broad-phase produces the candidate
+ * pairs whose swept circles may overlap within the given time limit. Only
+ * these pairs need to go through the (expensive) narrow phase, e.g.
+ * CollisionPhysics.pointIntersectsMovingPoint().
+ * <p>
+ * Implementations must be conservative: every pair that the narrow phase
+ * would report as colliding within timeLimit must be in the result. The
+ * pairs are returned with i < j, sorted in ascending (i, j) order, so that
+ * the narrow phase visits them in the same order as the brute-force loop
+ * and produces identical results.
+ * <p>
+ * The swept boxes of the last findPairs() call are kept, so that the balls
+ * whose paths change in the middle of a time-step can be queried against
+ * the others with findOverlaps().
+ */
+public interface BroadPhase {
+
+  /**
+   * Collect the candidate pairs among the first count balls.
+   *
+   * @param x         : x-positions of the balls.
+   * @param y         : y-positions of the balls.
+   * @param speedX    : speeds in x-direction.
+   * @param speedY    : speeds in y-direction.
+   * @param radius    : radii of the balls.
+   * @param count     : number of active balls.
+   * @param timeLimit : max time to detect collision, in (0, 1] range.
+   * @param pairs     : cleared, then filled with the sorted candidate pairs.
+   */
+  void findPairs(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                 int count, float timeLimit, PairList pairs);
+
+  /**
+   * Collect the balls whose swept box, as of the last findPairs() call,
+   * overlaps the given box. Like the pairs, the result is conservative.
+   *
+   * @param minX   : smaller x-bound of the box.
+   * @param minY   : smaller y-bound of the box.
+   * @param maxX   : larger x-bound of the box.
+   * @param maxY   : larger y-bound of the box.
+   * @param result : filled with the balls, in no particular order; must
+   *                 have room for all the balls of the last call.
+   * @return the number of balls in result.
+   */
+  int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result);
+}
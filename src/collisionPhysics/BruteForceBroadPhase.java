@@ -0,0 +1,30 @@
+package collisionphysics;
+
+/**
+ * The reference broad-phase: every pair (i, j), i < j, is a candidate, and
+ * every ball overlaps any box.
+ * Cost is O(n^2), use for small numbers of balls or for verification.
+ */
+public class BruteForceBroadPhase implements BroadPhase {
+  private int numBalls;  // Of the last call
+
+  @Override
+  public void findPairs(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                        int count, float timeLimit, PairList pairs) {
+    pairs.clear();
+    numBalls = count;
+    for (int i = 0; i < count; i++) {
+      for (int j = i + 1; j < count; j++) {
+        pairs.add(i, j);
+      }
+    }
+  }
+
+  @Override
+  public int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result) {
+    for (int i = 0; i < numBalls; i++) {
+      result[i] = i;
+    }
+    return numBalls;
+  }
+}
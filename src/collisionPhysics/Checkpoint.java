@@ -0,0 +1,269 @@
+package collisionphysics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary checkpoints of the full state of a Simulation: the balls (position,
+ * speed, radius and palette index of the color), the container geometry
+ * and the clock. A checkpoint restores a running world later or on another
+ * machine, or warm-starts a pre-settled arena without simulating its
+ * warm-up.
+ * <p>
+ * The format is versioned, little-endian and column-oriented, so each
+ * column goes through a direct buffer in bulk (about 24 bytes per ball):
+ * <pre>
+ *   int    magic "BALZ"
+ *   int    version
+ *   int    number of balls (n)
+ *   int    reserved, 0
+ *   double simulation time
+ *   long   step count
+ *   float  container center x, center y, radius
+ *   int    reserved, 0
+ *   float  x[n], y[n], speedX[n], speedY[n], radius[n]
+ *   int    colorIndex[n]
+ * </pre>
+ * The obstacles are not saved (they are set up with the arena). The caches of
+ * predictions are not saved: a restored simulation predicts again on its
+ * next step, so it continues as the saved one would have.
+ */
+public final class Checkpoint {
+  private static final int MAGIC = 0x42414C5A;  // "BALZ"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 48;
+  private static final int BYTES_PER_BALL = 6 * 4;  // 5 float and 1 int columns
+  private static final int CHUNK_BYTES = 1 << 20;  // Of the transfer buffer
+
+  private Checkpoint() {
+  }
+
+  /**
+   * Write the state of the given simulation to a file, replacing it if it
+   * exists. Call it on the thread stepping the simulation, between steps.
+   *
+   * @param simulation : the simulation to save.
+   * @param file       : the checkpoint file.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(Simulation simulation, Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      write(simulation, channel, newBuffer());
+    }
+  }
+
+  /**
+   * Read a checkpoint into a new simulation.
+   *
+   * @param file     : the checkpoint file.
+   * @param capacity : initial capacity of the new simulation, raised to the
+   *                   number of balls saved if lower.
+   * @return the restored simulation, with the default settings (broad-phase, etc.).
+   * @throws IOException if the file cannot be read, or is not a valid checkpoint.
+   */
+  public static Simulation read(Path file, int capacity) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = readHeader(channel);
+      checkSize(channel, header);
+      Simulation simulation = new Simulation(Math.max(capacity, getCount(header)), 0, 0, 0);
+      readState(channel, header, newBuffer(), simulation);
+      return simulation;
+    }
+  }
+
+  /**
+   * @see read(). Same, into an existing simulation, whose balls, container
+   * and clock are replaced; its settings are kept. Call it on the thread
+   * stepping the simulation, between steps. The simulation grows if it is
+   * smaller than the saved balls.
+   */
+  public static void read(Path file, Simulation simulation) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = readHeader(channel);
+      checkSize(channel, header);
+      readState(channel, header, newBuffer(), simulation);
+    }
+  }
+
+  /**
+   * Return a transfer buffer for write() and readState().
+   */
+  static ByteBuffer newBuffer() {
+    return ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Return the size of a checkpoint of count balls, in bytes.
+   */
+  static long getSize(int count) {
+    return HEADER_BYTES + (long) BYTES_PER_BALL * count;
+  }
+
+  /**
+   * Write a checkpoint of the simulation at the current position of the
+   * channel (e.g. within a longer file, as the keyframes of a CollisionLog).
+   *
+   * @param simulation : the simulation to save.
+   * @param channel    : the channel to write to.
+   * @param buffer     : transfer buffer, from newBuffer().
+   */
+  static void write(Simulation simulation, FileChannel channel, ByteBuffer buffer)
+      throws IOException {
+    BallStore balls = simulation.getBalls();
+    int count = balls.size();
+    buffer.clear();
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+    buffer.putDouble(simulation.getTime()).putLong(simulation.getStepCount());
+    buffer.putFloat(simulation.getContainerCenterX()).putFloat(simulation.getContainerCenterY())
+        .putFloat(simulation.getContainerRadius()).putInt(0);
+    buffer.flip();
+    writeFully(channel, buffer);
+    writeColumn(channel, buffer, balls.x, count);
+    writeColumn(channel, buffer, balls.y, count);
+    writeColumn(channel, buffer, balls.speedX, count);
+    writeColumn(channel, buffer, balls.speedY, count);
+    writeColumn(channel, buffer, balls.radius, count);
+    writeColumn(channel, buffer, balls.colorIndex, count);
+  }
+
+  /**
+   * Read and check the header of a checkpoint at the current position of
+   * the channel.
+   */
+  static ByteBuffer readHeader(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, header);
+    if (header.getInt(0) != MAGIC) {
+      throw new IOException("Not a checkpoint");
+    }
+    int version = header.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+    if (getCount(header) < 0) {
+      throw new IOException("Checkpoint is corrupt");
+    }
+    return header;
+  }
+
+  /**
+   * Return the number of balls of the checkpoint of the given header.
+   */
+  static int getCount(ByteBuffer header) {
+    return header.getInt(8);
+  }
+
+  /**
+   * Return the simulation time of the checkpoint of the given header.
+   */
+  static double getTime(ByteBuffer header) {
+    return header.getDouble(16);
+  }
+
+  /**
+   * Check that the file holds exactly the checkpoint of the given header.
+   */
+  private static void checkSize(FileChannel channel, ByteBuffer header) throws IOException {
+    if (channel.size() != getSize(getCount(header))) {
+      throw new IOException("Checkpoint is truncated or corrupt");
+    }
+  }
+
+  /**
+   * Read the balls of the checkpoint of the given header, which was just
+   * read from the channel, into the simulation, and restore its container
+   * and clock, growing the simulation as needed.
+   */
+  static void readState(FileChannel channel, ByteBuffer header, ByteBuffer buffer,
+                        Simulation simulation) throws IOException {
+    int count = getCount(header);
+    simulation.ensureCapacity(count);
+    BallStore balls = simulation.getBalls();
+    readColumn(channel, buffer, balls.x, count);
+    readColumn(channel, buffer, balls.y, count);
+    readColumn(channel, buffer, balls.speedX, count);
+    readColumn(channel, buffer, balls.speedY, count);
+    readColumn(channel, buffer, balls.radius, count);
+    readColumn(channel, buffer, balls.colorIndex, count);
+    balls.setSize(count);
+    simulation.restore(header.getFloat(32), header.getFloat(36), header.getFloat(40),
+        getTime(header), header.getLong(24));
+  }
+
+  private static void writeColumn(FileChannel channel, ByteBuffer buffer, float[] column, int count)
+      throws IOException {
+    int chunk = CHUNK_BYTES / 4;
+    for (int from = 0; from < count; from += chunk) {
+      int length = Math.min(chunk, count - from);
+      buffer.clear();
+      buffer.asFloatBuffer().put(column, from, length);
+      buffer.limit(4 * length);
+      writeFully(channel, buffer);
+    }
+  }
+
+  private static void writeColumn(FileChannel channel, ByteBuffer buffer, int[] column, int count)
+      throws IOException {
+    int chunk = CHUNK_BYTES / 4;
+    for (int from = 0; from < count; from += chunk) {
+      int length = Math.min(chunk, count - from);
+      buffer.clear();
+      buffer.asIntBuffer().put(column, from, length);
+      buffer.limit(4 * length);
+      writeFully(channel, buffer);
+    }
+  }
+
+  private static void readColumn(FileChannel channel, ByteBuffer buffer, float[] column, int count)
+      throws IOException {
+    int chunk = CHUNK_BYTES / 4;
+    for (int from = 0; from < count; from += chunk) {
+      int length = Math.min(chunk, count - from);
+      buffer.clear().limit(4 * length);
+      readFully(channel, buffer);
+      FloatBuffer floats = buffer.asFloatBuffer();
+      floats.get(column, from, length);
+    }
+  }
+
+  private static void readColumn(FileChannel channel, ByteBuffer buffer, int[] column, int count)
+      throws IOException {
+    int chunk = CHUNK_BYTES / 4;
+    for (int from = 0; from < count; from += chunk) {
+      int length = Math.min(chunk, count - from);
+      buffer.clear().limit(4 * length);
+      readFully(channel, buffer);
+      IntBuffer ints = buffer.asIntBuffer();
+      ints.get(column, from, length);
+    }
+  }
+
+  /**
+   * Write the buffer from its position to its limit.
+   */
+  static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Fill the buffer from its position to its limit, and rewind it.
+   */
+  static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Checkpoint is truncated");
+      }
+    }
+    buffer.flip();
+  }
+}
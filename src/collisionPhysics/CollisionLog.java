@@ -0,0 +1,196 @@
+package collisionphysics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of the collisions of a Simulation, from which
+ * CollisionReplay rebuilds the state at any time.
+ * <p>
+ * The balls move in straight lines between collisions, so the history only
+ * needs a keyframe (a Checkpoint of the full state) from time to time, and
+ * one event per ball and collision: the time, the ball, its partner (the
+ * other ball, CONTAINER or OBSTACLE) and its position and new speed. That is 32
+ * bytes per ball and collision, instead of 8 bytes per ball and frame for
+ * a dump of the positions.
+ * <p>
+ * The log is a directory of two files. The events are appended to
+ * "events.bin" through a direct buffer, written to the file when full, so
+ * an append is a handful of stores. The keyframes are appended to
+ * "keyframes.bin", each one after the index of the first event that
+ * follows it. A keyframe is also written when the balls change
+ * outside of the collisions (e.g. a ball is added or removed, or a step
+ * runs out of sub-steps), so the events always start from an exact state.
+ * <p>
+ * Not thread-safe: it is written by the thread stepping its simulation.
+ *
+ * @see Simulation.setCollisionLog()
+ */
+public final class CollisionLog implements Closeable {
+  /** Partner of a ball-container collision */
+  public static final int CONTAINER = -1;
+  /** Partner of a ball-obstacle collision */
+  public static final int OBSTACLE = -2;
+
+  static final String EVENTS_FILE = "events.bin";
+  static final String KEYFRAMES_FILE = "keyframes.bin";
+  static final int EVENTS_MAGIC = 0x42414C45;     // "BALE"
+  static final int KEYFRAMES_MAGIC = 0x42414C4B;  // "BALK"
+  static final int VERSION = 1;
+  static final int HEADER_BYTES = 32;  // Of each file, a multiple of EVENT_BYTES
+  static final int EVENT_BYTES = 32;
+  static final int NUM_EVENTS_OFFSET = 8;  // Of the event count in the header
+  static final int END_TIME_OFFSET = 16;   // Of the time covered by the events
+
+  private final FileChannel events;
+  private final FileChannel keyframes;
+  private final double keyframeInterval;
+  private final ByteBuffer buffer = Checkpoint.newBuffer();
+  private final ByteBuffer pending = Checkpoint.newBuffer();  // Events not yet written
+  private long numEvents;
+  private int numKeyframes;
+  private double lastKeyframeTime;
+  private double endTime;  // Of the last step logged
+
+  /**
+   * Constructor, creating the log files in the given directory and
+   * replacing any previous log.
+   *
+   * @param directory        : the directory of the log, created if needed.
+   * @param keyframeInterval : simulation time between two keyframes, which
+   *                           bounds the events replayed by a seek.
+   * @throws IOException if the files cannot be created.
+   */
+  public CollisionLog(Path directory, double keyframeInterval) throws IOException {
+    if (!(keyframeInterval > 0)) {
+      throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+    }
+    this.keyframeInterval = keyframeInterval;
+    Files.createDirectories(directory);
+    events = FileChannel.open(directory.resolve(EVENTS_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    keyframes = FileChannel.open(directory.resolve(KEYFRAMES_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    writeHeader(keyframes, KEYFRAMES_MAGIC);
+    writeHeader(events, EVENTS_MAGIC);
+  }
+
+  /**
+   * Return the number of events appended.
+   */
+  public long getNumEvents() {
+    return numEvents;
+  }
+
+  /**
+   * Return the number of keyframes written.
+   */
+  public int getNumKeyframes() {
+    return numKeyframes;
+  }
+
+  /**
+   * Called at the start of each step: write a keyframe of the simulation if
+   * one is due by the interval, or forced.
+   *
+   * @throws UncheckedIOException if the keyframe cannot be written.
+   */
+  void beginStep(Simulation simulation, boolean force) {
+    double time = simulation.getTime();
+    if (!force && numKeyframes > 0 && time - lastKeyframeTime < keyframeInterval) {
+      return;
+    }
+    try {
+      buffer.clear();
+      buffer.putLong(numEvents).flip();
+      Checkpoint.writeFully(keyframes, buffer);
+      Checkpoint.write(simulation, keyframes, buffer);
+      // Publish the events so far, in case the log is not closed
+      endTime = time;
+      flush();
+      writeCounts();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot write a keyframe", e);
+    }
+    numKeyframes++;
+    lastKeyframeTime = time;
+  }
+
+  /**
+   * Called at the end of each step, with the time reached.
+   */
+  void endStep(double time) {
+    endTime = time;
+  }
+
+  /**
+   * Append the collision of a ball, after its response.
+   *
+   * @param time    : absolute simulation time of the collision.
+   * @param ball    : the ball.
+   * @param partner : the other ball, CONTAINER or OBSTACLE.
+   * @param x       : x-position of the ball at the collision.
+   * @param y       : y-position of the ball at the collision.
+   * @param speedX  : new speed of the ball in x-direction.
+   * @param speedY  : new speed of the ball in y-direction.
+   * @throws UncheckedIOException if the full buffer cannot be written.
+   */
+  void append(double time, int ball, int partner, float x, float y, float speedX, float speedY) {
+    if (pending.remaining() < EVENT_BYTES) {
+      try {
+        flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write the collision log", e);
+      }
+    }
+    pending.putDouble(time).putInt(ball).putInt(partner)
+        .putFloat(x).putFloat(y).putFloat(speedX).putFloat(speedY);
+    numEvents++;
+  }
+
+  /**
+   * Write the pending events, then publish the event count and the time
+   * covered.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+      writeCounts();
+    } finally {
+      events.close();
+      keyframes.close();
+    }
+  }
+
+  /**
+   * Append the pending events to the events file.
+   */
+  private void flush() throws IOException {
+    pending.flip();
+    Checkpoint.writeFully(events, pending);
+    pending.clear();
+  }
+
+  private void writeCounts() throws IOException {
+    ByteBuffer counts = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    counts.putLong(numEvents).putDouble(endTime).flip();
+    while (counts.hasRemaining()) {
+      events.write(counts, NUM_EVENTS_OFFSET + counts.position());
+    }
+  }
+
+  private static void writeHeader(FileChannel channel, int magic) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(magic).putInt(VERSION).putLong(0).flip();
+    header.limit(HEADER_BYTES);
+    Checkpoint.writeFully(channel, header);
+  }
+}
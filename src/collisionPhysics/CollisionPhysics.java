@@ -23,9 +23,14 @@ package collisionphysics;
   */
 public class CollisionPhysics {
 
-  // Working copy for computing response in intersect(ContainerBox box),
-  // to avoid repeatedly allocating objects.
-  private static CollisionResponse tempResponse = new CollisionResponse();
+  // The responses of moving points are computed along the normalized line of
+  // collision, with dot products and one sqrt. The original derivation, which
+  // goes through the angle of that line and rotate(), is kept as the
+  // reference, selected with -Dcollisionphysics.trigonometricResponse=true.
+  // Both agree up to rounding (relative error below 1e-7, checked by
+  // CollisionPhysicsTest against the *RotatedResponse() methods).
+  private static final boolean TRIGONOMETRIC_RESPONSE =
+      Boolean.getBoolean("collisionphysics.trigonometricResponse");
 
   /**
    * Detect collision for a moving point bouncing inside a rectangular container,
@@ -34,6 +39,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX    : x-position of the center of the point.
    * @param pointY    : y-position of the center of the point.
@@ -52,6 +58,23 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       float rectX1, float rectY1, float rectX2, float rectY2,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsRectangleOuter(
+        pointX, pointY, speedX, speedY, radius, rectX1, rectY1, rectX2, rectY2, timeLimit, response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsRectangleOuter().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsRectangleOuter(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float rectX1, float rectY1, float rectX2, float rectY2,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (rectX1 < rectX2) && (rectY1 < rectY2) : "Malformed rectangle!";
@@ -68,27 +91,27 @@ public class CollisionPhysics {
 
     // Right border
     pointIntersectsLineVertical(pointX, pointY, speedX, speedY, radius,
-        rectX2, timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);  // Copy into resultant response
+        rectX2, timeLimit, scratch.tempResponse);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);  // Copy into resultant response
     }
     // Left border
     pointIntersectsLineVertical(pointX, pointY, speedX, speedY, radius,
-        rectX1, timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);  // Copy into resultant response
+        rectX1, timeLimit, scratch.tempResponse);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);  // Copy into resultant response
     }
     // Top border
     pointIntersectsLineHorizontal(pointX, pointY, speedX, speedY, radius,
-        rectY1, timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);  // Copy into resultant response
+        rectY1, timeLimit, scratch.tempResponse);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);  // Copy into resultant response
     }
     // Bottom border
     pointIntersectsLineHorizontal(pointX, pointY, speedX, speedY, radius,
-        rectY2, timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);  // Copy into resultant response
+        rectY2, timeLimit, scratch.tempResponse);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);  // Copy into resultant response
     }
 
     // FIXME: What if two collisions at the same time??
@@ -191,6 +214,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX       : x-position of the center of the point.
    * @param pointY       : y-position of the center of the point.
@@ -208,6 +232,24 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       float outerCenterX, float outerCenterY, float outerRadius,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsCircleOuter(
+        pointX, pointY, speedX, speedY, radius, outerCenterX, outerCenterY, outerRadius, timeLimit,
+        response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsCircleOuter().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsCircleOuter(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float outerCenterX, float outerCenterY, float outerRadius,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (radius >= 0 && outerRadius >= 0) : "Negative radius!";
@@ -232,7 +274,7 @@ public class CollisionPhysics {
       pointIntersectsLineNormalResponse(
           pointX, pointY, speedX, speedY,
           outerCenterX, outerCenterY, impactX, impactY,
-          response, t);
+          response, t, scratch);
     }
   }
 
@@ -250,7 +292,7 @@ public class CollisionPhysics {
    * @param outerRadius  : radius of the circular container.
    * @return : detected collision time or infinity if no collision detected.
    */
-  private static float pointIntersectsCircleOuterDetection(
+  static float pointIntersectsCircleOuterDetection(
       float pointX, float pointY, float speedX, float speedY, float radius,
       float outerCenterX, float outerCenterY, float outerRadius) {
 
@@ -301,18 +343,19 @@ public class CollisionPhysics {
    * @param lineNormalY2 : y2 of the normal to the collision line.
    * @param response     : updated the collision time and response.
    * @param t            : the given detected collision time.
+   * @param scratch      : working copies, owned by the calling thread.
    */
   private static void pointIntersectsLineNormalResponse(
       float pointX, float pointY, float speedX, float speedY,
       float lineNormalX1, float lineNormalY1, float lineNormalX2, float lineNormalY2,
-      CollisionResponse response, float t) {
+      CollisionResponse response, float t, CollisionScratch scratch) {
 
     response.t = t;
 
     // Direction along the line normal is N, perpendicular is P.
     // Project velocity from (x, y) to (n, p)
     double lineAngle = Math.atan2(lineNormalY2 - lineNormalY1, lineNormalX2 - lineNormalX1);
-    double[] result = rotate(speedX, speedY, lineAngle);
+    double[] result = rotate(speedX, speedY, lineAngle, scratch.rotateResult);
     double speedN = result[0];
     double speedP = result[1];
 
@@ -321,7 +364,7 @@ public class CollisionPhysics {
     double speedPAfter = speedP;
 
     // Project back from (n, p) to (x, y)
-    result = rotate(speedNAfter, speedPAfter, -lineAngle);
+    result = rotate(speedNAfter, speedPAfter, -lineAngle, scratch.rotateResult);
     response.newSpeedX = (float) result[0];
     response.newSpeedY = (float) result[1];
   }
@@ -333,6 +376,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX    : x-position of the center of the point.
    * @param pointY    : y-position of the center of the point.
@@ -350,6 +394,24 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       int[] polygonXs, int[] polygonYs, int numPoints,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsPolygon(
+        pointX, pointY, speedX, speedY, radius, polygonXs, polygonYs, numPoints, timeLimit,
+        response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsPolygon().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsPolygon(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      int[] polygonXs, int[] polygonYs, int numPoints,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (radius >= 0) : "Negative radius!";
@@ -362,16 +424,18 @@ public class CollisionPhysics {
     // Update the earliest collision.
     int lineX1, lineX2, lineY1, lineY2;
     for (int segment = 0; segment < numPoints; segment++) {
+      // The last segment closes the polygon (a compare, no modulo per segment)
+      int next = (segment + 1 == numPoints) ? 0 : segment + 1;
       lineX1 = polygonXs[segment];
       lineY1 = polygonYs[segment];
-      lineX2 = polygonXs[(segment + 1) % numPoints];
-      lineY2 = polygonYs[(segment + 1) % numPoints];
+      lineX2 = polygonXs[next];
+      lineY2 = polygonYs[next];
       CollisionPhysics.pointIntersectsLineSegmentNoEndPoints(
           pointX, pointY, speedX, speedY, radius,
           lineX1, lineY1, lineX2, lineY2,
-          timeLimit, tempResponse);
-      if (tempResponse.t < response.t) {
-        response.copy(tempResponse);
+          timeLimit, scratch.tempResponse, scratch);
+      if (scratch.tempResponse.t < response.t) {
+        response.copy(scratch.tempResponse);
       }
     }
     // Check each of the points that made up the polygon.
@@ -379,9 +443,9 @@ public class CollisionPhysics {
       CollisionPhysics.pointIntersectsPoint(
           pointX, pointY, speedX, speedY, radius,
           polygonXs[i], polygonYs[i], 0,
-          timeLimit, tempResponse);
-      if (tempResponse.t < response.t) {
-        response.copy(tempResponse);
+          timeLimit, scratch.tempResponse, scratch);
+      if (scratch.tempResponse.t < response.t) {
+        response.copy(scratch.tempResponse);
       }
     }
   }
@@ -393,6 +457,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX    : x-position of the center of the point.
    * @param pointY    : y-position of the center of the point.
@@ -411,6 +476,23 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       float lineX1, float lineY1, float lineX2, float lineY2,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsLine(
+        pointX, pointY, speedX, speedY, radius, lineX1, lineY1, lineX2, lineY2, timeLimit, response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsLine().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsLine(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float lineX1, float lineY1, float lineX2, float lineY2,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (radius >= 0) : "Negative radius!";
@@ -433,20 +515,16 @@ public class CollisionPhysics {
     // Call helper method to compute the collision time.
     float t = pointIntersectsLineDetection(
         pointX, pointY, speedX, speedY, radius,
-        lineX1, lineY1, lineX2, lineY2)[0];
+        lineX1, lineY1, lineX2, lineY2, scratch)[0];
     // Accept 0 < t <= timeLimit
     if (t > 0 && t <= timeLimit) {
       // Call helper method to compute the response in Response object
       pointIntersectsLineResponse(
           pointX, pointY, speedX, speedY,
-          lineX1, lineY1, lineX2, lineY2, response, t);
+          lineX1, lineY1, lineX2, lineY2, response, t, scratch);
     }
   }
 
-  // The solution for colliding to a line has tow parts: t and lambda.
-  // Re-use this to avoid repeatedly allocating new instances.
-  private static float[] pointLineResult = new float[2];
-
   /**
    * Helper method to compute the collision time (t) and point of impact
    * on the line (lambda), for a moving point and a line.
@@ -460,13 +538,14 @@ public class CollisionPhysics {
    * @param lineY1 : line's beginning point y value.
    * @param lineX2 : line's ending point x value.
    * @param lineY2 : line's ending point y value.
+   * @param scratch: working copies, owned by the calling thread.
    * @return an float[2], where
    * First element is t, or infinity if no collision detected.
    * Second element is lambda, point of impact on the line.
    */
   private static float[] pointIntersectsLineDetection(
       float pointX, float pointY, float speedX, float speedY, float radius,
-      float lineX1, float lineY1, float lineX2, float lineY2) {
+      float lineX1, float lineY1, float lineX2, float lineY2, CollisionScratch scratch) {
 
     double lineVectorX = lineX2 - lineX1;
     double lineVectorY = lineY2 - lineY1;
@@ -479,7 +558,8 @@ public class CollisionPhysics {
     if (radius > 0) {
       // Check which side of the line the point is. Offset reduces the distance
       double lineAngle = Math.atan2(lineVectorY, lineVectorX);
-      double rotatedY = rotate(pointX - lineX1, pointY - lineY1, lineAngle)[1];
+      double rotatedY = rotate(pointX - lineX1, pointY - lineY1, lineAngle,
+          scratch.rotateResult)[1];
       if (rotatedY > 0) {
         lineX1Offset -= radius * Math.sin(lineAngle);
         lineY1Offset += radius * Math.cos(lineAngle);
@@ -504,9 +584,9 @@ public class CollisionPhysics {
     t = (-lineVectorY * xDiff + lineVectorX * yDiff) / det;
     lambda = (-speedY * xDiff + speedX * yDiff) / det;
 
-    pointLineResult[0] = (float) t;
-    pointLineResult[1] = (float) lambda;
-    return pointLineResult;
+    scratch.pointLineResult[0] = (float) t;
+    scratch.pointLineResult[1] = (float) lambda;
+    return scratch.pointLineResult;
   }
 
   /**
@@ -524,18 +604,19 @@ public class CollisionPhysics {
    * @param lineY2   : line's ending point y value.
    * @param response : update collision time and response.
    * @param t        : the given detected collision time
+   * @param scratch  : working copies, owned by the calling thread.
    */
   private static void pointIntersectsLineResponse(
       float pointX, float pointY, float speedX, float speedY,
       float lineX1, float lineY1, float lineX2, float lineY2,
-      CollisionResponse response, float t) {
+      CollisionResponse response, float t, CollisionScratch scratch) {
 
     response.t = t;
 
     // Direction along the line of collision is P, normal is N.
     // Project velocity from (x, y) to (p, n)
     double lineAngle = Math.atan2(lineY2 - lineY1, lineX2 - lineX1);
-    double[] result = rotate(speedX, speedY, lineAngle);
+    double[] result = rotate(speedX, speedY, lineAngle, scratch.rotateResult);
     double speedP = result[0];
     double speedN = result[1];
 
@@ -544,7 +625,7 @@ public class CollisionPhysics {
     double speedQAfter = -speedN;
 
     // Project back from (p, n) to (x, y)
-    result = rotate(speedPAfter, speedQAfter, -lineAngle);
+    result = rotate(speedPAfter, speedQAfter, -lineAngle, scratch.rotateResult);
     response.newSpeedX = (float) result[0];
     response.newSpeedY = (float) result[1];
   }
@@ -556,6 +637,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX    : x-position of the center of the point.
    * @param pointY    : y-position of the center of the point.
@@ -574,6 +656,23 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       float lineX1, float lineY1, float lineX2, float lineY2,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsLineSegmentNoEndPoints(
+        pointX, pointY, speedX, speedY, radius, lineX1, lineY1, lineX2, lineY2, timeLimit, response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsLineSegmentNoEndPoints().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsLineSegmentNoEndPoints(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float lineX1, float lineY1, float lineX2, float lineY2,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (radius >= 0) : "Negative radius!";
@@ -606,7 +705,7 @@ public class CollisionPhysics {
     // Call helper method to compute the collision time.
     float[] result = pointIntersectsLineDetection(
         pointX, pointY, speedX, speedY, radius,
-        lineX1, lineY1, lineX2, lineY2);
+        lineX1, lineY1, lineX2, lineY2, scratch);
     float t = result[0];
     float lambda = result[1];
 
@@ -614,7 +713,7 @@ public class CollisionPhysics {
     if (t > 0 && t <= timeLimit && lambda >= 0 && lambda <= 1) {
       // Call helper method to compute response.
       pointIntersectsLineResponse(pointX, pointY, speedX, speedY,
-          lineX1, lineY1, lineX2, lineY2, response, t);
+          lineX1, lineY1, lineX2, lineY2, response, t, scratch);
     }
   }
 
@@ -625,6 +724,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param pointX    : x-position of the center of the point.
    * @param pointY    : y-position of the center of the point.
@@ -643,6 +743,23 @@ public class CollisionPhysics {
       float pointX, float pointY, float speedX, float speedY, float radius,
       float lineX1, float lineY1, float lineX2, float lineY2,
       float timeLimit, CollisionResponse response) {
+    pointIntersectsLineSegment(
+        pointX, pointY, speedX, speedY, radius, lineX1, lineY1, lineX2, lineY2, timeLimit, response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsLineSegment().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsLineSegment(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float lineX1, float lineY1, float lineX2, float lineY2,
+      float timeLimit, CollisionResponse response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (radius >= 0) : "Negative radius!";
@@ -655,24 +772,24 @@ public class CollisionPhysics {
     CollisionPhysics.pointIntersectsLineSegmentNoEndPoints(
         pointX, pointY, speedX, speedY, radius,
         lineX1, lineY1, lineX2, lineY2,
-        timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);
+        timeLimit, scratch.tempResponse, scratch);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);
     }
     // Check the two end points (with radius = 0) for probable collision
     CollisionPhysics.pointIntersectsPoint(
         pointX, pointY, speedX, speedY, radius,
         lineX1, lineY1, 0,
-        timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);
+        timeLimit, scratch.tempResponse, scratch);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);
     }
     CollisionPhysics.pointIntersectsPoint(
         pointX, pointY, speedX, speedY, radius,
         lineX2, lineY2, 0,
-        timeLimit, tempResponse);
-    if (tempResponse.t < response.t) {
-      response.copy(tempResponse);
+        timeLimit, scratch.tempResponse, scratch);
+    if (scratch.tempResponse.t < response.t) {
+      response.copy(scratch.tempResponse);
     }
   }
 
@@ -683,6 +800,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param p1X        : x-position of the center of point p1.
    * @param p1Y        : y-position of the center of point p1.
@@ -704,6 +822,24 @@ public class CollisionPhysics {
       float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
       float p2X, float p2Y, float p2SpeedX, float p2SpeedY, float p2Radius,
       float timeLimit, CollisionResponse p1Response, CollisionResponse p2Response) {
+    pointIntersectsMovingPoint(
+        p1X, p1Y, p1SpeedX, p1SpeedY, p1Radius, p2X, p2Y, p2SpeedX, p2SpeedY, p2Radius, timeLimit,
+        p1Response, p2Response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsMovingPoint().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsMovingPoint(
+      float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
+      float p2X, float p2Y, float p2SpeedX, float p2SpeedY, float p2Radius,
+      float timeLimit, CollisionResponse p1Response, CollisionResponse p2Response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (p1Radius >= 0) && (p2Radius >= 0) : "Negative radius!";
@@ -723,10 +859,74 @@ public class CollisionPhysics {
       pointIntersectsMovingPointResponse(
           p1X, p1Y, p1SpeedX, p1SpeedY, p1Radius,
           p2X, p2Y, p2SpeedX, p2SpeedY, p2Radius,
-          p1Response, p2Response, t);
+          p1Response, p2Response, t, scratch);
     }
   }
 
+  /**
+   * Return the collision time that pointIntersectsMovingPoint() would report
+   * for the two moving points, without computing the responses.
+   * Unlike the other methods, this one uses no shared working copies, so it
+   * can be called from several threads at once.
+   *
+   * @param p1X       : x-position of the center of point p1.
+   * @param p1Y       : y-position of the center of point p1.
+   * @param p1SpeedX  : p1's speed in x-direction.
+   * @param p1SpeedY  : p1's speed in y-direction.
+   * @param p1Radius  : p1's radius. Zero for a true point.
+   * @param p2X       : x-position of the center of point p2.
+   * @param p2Y       : y-position of the center of point p2.
+   * @param p2SpeedX  : p2's speed in x-direction.
+   * @param p2SpeedY  : p2's speed in y-direction.
+   * @param p2Radius  : p2's radius. Zero for a true point.
+   * @param timeLimit : max time to detect collision, in (0, 1] range.
+   * @return collision time, or infinity if no collision is detected within timeLimit.
+   */
+  public static float pointIntersectsMovingPointTime(
+      float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
+      float p2X, float p2Y, float p2SpeedX, float p2SpeedY, float p2Radius,
+      float timeLimit) {
+
+    // Assumptions:
+    assert (p1Radius >= 0) && (p2Radius >= 0) : "Negative radius!";
+    assert timeLimit > 0 : "Non-positive time!";
+
+    float t = pointIntersectsMovingPointDetection(
+        p1X, p1Y, p1SpeedX, p1SpeedY, p1Radius,
+        p2X, p2Y, p2SpeedX, p2SpeedY, p2Radius);
+    // Accept 0 < t <= timeLimit
+    if (!(t > 0 && t <= timeLimit)) {
+      return Float.MAX_VALUE;
+    }
+
+    // Same test as in pointIntersectsMovingPointResponse(), with the same
+    // arithmetic, so that both always agree:
+    // collision possible only if p1SpeedP - p2SpeedP > 0
+    double p1ImpactX = p1X + p1SpeedX * t;
+    double p1ImpactY = p1Y + p1SpeedY * t;
+    double p2ImpactX = p2X + p2SpeedX * t;
+    double p2ImpactY = p2Y + p2SpeedY * t;
+    if (!TRIGONOMETRIC_RESPONSE) {
+      double lineX = p2ImpactX - p1ImpactX;
+      double lineY = p2ImpactY - p1ImpactY;
+      double length = Math.sqrt(lineX * lineX + lineY * lineY);
+      double normalX = (length > 0) ? lineX / length : 1.0;
+      double normalY = (length > 0) ? lineY / length : 0.0;
+      double p1SpeedP = p1SpeedX * normalX + p1SpeedY * normalY;
+      double p2SpeedP = p2SpeedX * normalX + p2SpeedY * normalY;
+      return (p1SpeedP - p2SpeedP <= 0) ? Float.MAX_VALUE : t;
+    }
+    double lineAngle = Math.atan2(p2ImpactY - p1ImpactY, p2ImpactX - p1ImpactX);
+    double sinTheta = Math.sin(lineAngle);
+    double cosTheta = Math.cos(lineAngle);
+    double p1SpeedP = p1SpeedX * cosTheta + p1SpeedY * sinTheta;
+    double p2SpeedP = p2SpeedX * cosTheta + p2SpeedY * sinTheta;
+    if (p1SpeedP - p2SpeedP <= 0) {
+      return Float.MAX_VALUE;
+    }
+    return t;
+  }
+
   /**
    * Helper method to detect the collision time (t) for two moving points.
    *
@@ -742,7 +942,7 @@ public class CollisionPhysics {
    * @param p2Radius : p2's radius. Zero for a true point.
    * @return smaller positive t, or infinity if collision is not possible.
    */
-  private static float pointIntersectsMovingPointDetection(
+  static float pointIntersectsMovingPointDetection(
       float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
       float p2X, float p2Y, float p2SpeedX, float p2SpeedY, float p2Radius) {
 
@@ -804,11 +1004,13 @@ public class CollisionPhysics {
    * @param p2Response : To update the collision time and response for p2.
    *                   Reset time to infinity if error is detected.
    * @param t          : the given detected collision time.
+   * @param scratch    : working copies, owned by the calling thread.
    */
   private static void pointIntersectsMovingPointResponse(
       float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
       float p2X, float p2Y, float p2SpeedX, float p2SpeedY, float p2Radius,
-      CollisionResponse p1Response, CollisionResponse p2Response, float t) {
+      CollisionResponse p1Response, CollisionResponse p2Response, float t,
+      CollisionScratch scratch) {
 
     // Update the detected collision time in CollisionResponse.
     p1Response.t = t;
@@ -820,15 +1022,53 @@ public class CollisionPhysics {
     double p2ImpactX = p2Response.getImpactX(p2X, p2SpeedX);
     double p2ImpactY = p2Response.getImpactY(p2Y, p2SpeedY);
 
+    if (TRIGONOMETRIC_RESPONSE) {
+      pointIntersectsMovingPointRotatedResponse(p1SpeedX, p1SpeedY, p1Radius,
+          p2SpeedX, p2SpeedY, p2Radius,
+          p2ImpactX - p1ImpactX, p2ImpactY - p1ImpactY, p1Response, p2Response, scratch);
+    } else {
+      pointIntersectsMovingPointNormalResponse(p1SpeedX, p1SpeedY, p1Radius,
+          p2SpeedX, p2SpeedY, p2Radius,
+          p2ImpactX - p1ImpactX, p2ImpactY - p1ImpactY, p1Response, p2Response);
+    }
+  }
+
+  /**
+   * The original response of pointIntersectsMovingPointResponse(), with
+   * trigonometry: the velocities are rotated into the frame of the line of
+   * collision (lineX, lineY) and back. The reference of
+   * pointIntersectsMovingPointNormalResponse().
+   *
+   * @param p1SpeedX   : p1's speed in x-direction.
+   * @param p1SpeedY   : p1's speed in y-direction.
+   * @param p1Radius   : p1's radius. Zero for a true point.
+   * @param p2SpeedX   : p2's speed in x-direction.
+   * @param p2SpeedY   : p2's speed in y-direction.
+   * @param p2Radius   : p2's radius. Zero for a true point.
+   * @param lineX      : x-component of the line of collision, from p1 to p2.
+   * @param lineY      : y-component of the line of collision, from p1 to p2.
+   * @param p1Response : To update the response for p1.
+   *                   Reset time to infinity if the points cannot collide.
+   * @param p2Response : To update the response for p2.
+   *                   Reset time to infinity if the points cannot collide.
+   * @param scratch    : working copies, owned by the calling thread.
+   */
+  static void pointIntersectsMovingPointRotatedResponse(
+      float p1SpeedX, float p1SpeedY, float p1Radius,
+      float p2SpeedX, float p2SpeedY, float p2Radius,
+      double lineX, double lineY,
+      CollisionResponse p1Response, CollisionResponse p2Response,
+      CollisionScratch scratch) {
+
     // Direction along the line of collision is P, normal is N.
     // Get the direction along the line of collision
-    double lineAngle = Math.atan2(p2ImpactY - p1ImpactY, p2ImpactX - p1ImpactX);
+    double lineAngle = Math.atan2(lineY, lineX);
 
     // Project velocities from (x, y) to (p, n)
-    double[] result = rotate(p1SpeedX, p1SpeedY, lineAngle);
+    double[] result = rotate(p1SpeedX, p1SpeedY, lineAngle, scratch.rotateResult);
     double p1SpeedP = result[0];
     double p1SpeedN = result[1];
-    result = rotate(p2SpeedX, p2SpeedY, lineAngle);
+    result = rotate(p2SpeedX, p2SpeedY, lineAngle, scratch.rotateResult);
     double p2SpeedP = result[0];
     double p2SpeedN = result[1];
 
@@ -860,14 +1100,74 @@ public class CollisionPhysics {
     p2SpeedNAfter = p2SpeedN;
 
     // Project the velocities back from (p, n) to (x, y)
-    result = rotate(p1SpeedPAfter, p1SpeedNAfter, -lineAngle);
+    result = rotate(p1SpeedPAfter, p1SpeedNAfter, -lineAngle, scratch.rotateResult);
     p1Response.newSpeedX = (float) result[0];
     p1Response.newSpeedY = (float) result[1];
-    result = rotate(p2SpeedPAfter, p2SpeedNAfter, -lineAngle);
+    result = rotate(p2SpeedPAfter, p2SpeedNAfter, -lineAngle, scratch.rotateResult);
     p2Response.newSpeedX = (float) result[0];
     p2Response.newSpeedY = (float) result[1];
   }
 
+  /**
+   * Same as pointIntersectsMovingPointRotatedResponse(), without
+   * trigonometry: the velocities are projected on the normalized line of
+   * collision (lineX, lineY) with dot products. Only the components along that
+   * line change, so the new velocities are the old ones plus the change of
+   * that component along the line.
+   *
+   * @param p1SpeedX   : p1's speed in x-direction.
+   * @param p1SpeedY   : p1's speed in y-direction.
+   * @param p1Radius   : p1's radius. Zero for a true point.
+   * @param p2SpeedX   : p2's speed in x-direction.
+   * @param p2SpeedY   : p2's speed in y-direction.
+   * @param p2Radius   : p2's radius. Zero for a true point.
+   * @param lineX      : x-component of the line of collision, from p1 to p2.
+   * @param lineY      : y-component of the line of collision, from p1 to p2.
+   * @param p1Response : To update the response for p1.
+   *                   Reset time to infinity if the points cannot collide.
+   * @param p2Response : To update the response for p2.
+   *                   Reset time to infinity if the points cannot collide.
+   */
+  static void pointIntersectsMovingPointNormalResponse(
+      float p1SpeedX, float p1SpeedY, float p1Radius,
+      float p2SpeedX, float p2SpeedY, float p2Radius,
+      double lineX, double lineY,
+      CollisionResponse p1Response, CollisionResponse p2Response) {
+
+    // Normalize the line of collision (P). Coinciding centers give the same
+    // direction as atan2(0, 0), i.e. the x-axis.
+    double length = Math.sqrt(lineX * lineX + lineY * lineY);
+    double normalX = (length > 0) ? lineX / length : 1.0;
+    double normalY = (length > 0) ? lineY / length : 0.0;
+
+    // Project velocities on P
+    double p1SpeedP = p1SpeedX * normalX + p1SpeedY * normalY;
+    double p2SpeedP = p2SpeedX * normalX + p2SpeedY * normalY;
+
+    // Collision possible only if p1SpeedP - p2SpeedP > 0
+    if (p1SpeedP - p2SpeedP <= 0) {
+      p1Response.reset();  // Set collision time to infinity
+      p2Response.reset();
+      return;
+    }
+
+    // Along P, apply conservation of energy and momentum (as above)
+    double p1Mass = p1Radius * p1Radius * p1Radius;
+    double p2Mass = p2Radius * p2Radius * p2Radius;
+    double diffMass = p1Mass - p2Mass;
+    double sumMass = p1Mass + p2Mass;
+    double p1SpeedPAfter = (diffMass * p1SpeedP + 2.0 * p2Mass * p2SpeedP) / sumMass;
+    double p2SpeedPAfter = (2.0 * p1Mass * p1SpeedP - diffMass * p2SpeedP) / sumMass;
+
+    // No change in the perpendicular direction N
+    double p1DeltaP = p1SpeedPAfter - p1SpeedP;
+    double p2DeltaP = p2SpeedPAfter - p2SpeedP;
+    p1Response.newSpeedX = (float) (p1SpeedX + p1DeltaP * normalX);
+    p1Response.newSpeedY = (float) (p1SpeedY + p1DeltaP * normalY);
+    p2Response.newSpeedX = (float) (p2SpeedX + p2DeltaP * normalX);
+    p2Response.newSpeedY = (float) (p2SpeedY + p2DeltaP * normalY);
+  }
+
   /**
    * Detect collision for a moving point hitting a stationary point,
    * within the given timeLimit.
@@ -875,6 +1175,7 @@ public class CollisionPhysics {
    * response in the given CollisionResponse object. Otherwise, set collision time
    * to infinity.
    * The result is passed back in the given CollisionResponse object.
+   * Uses the working copies of the calling thread (see CollisionScratch).
    *
    * @param p1X        : x-position of the center of point p1.
    * @param p1Y        : y-position of the center of point p1.
@@ -892,6 +1193,23 @@ public class CollisionPhysics {
       float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
       float p2X, float p2Y, float p2Radius,
       float timeLimit, CollisionResponse p1Response) {
+    pointIntersectsPoint(
+        p1X, p1Y, p1SpeedX, p1SpeedY, p1Radius, p2X, p2Y, p2Radius, timeLimit, p1Response,
+        CollisionScratch.forCurrentThread());
+  }
+
+  /**
+   * @see pointIntersectsPoint().
+   * Same, with the given working copies instead of those of the calling
+   * thread, so that several threads can detect collisions at once.
+   *
+   * @param scratch : working copies, owned by the calling thread.
+   */
+  public static void pointIntersectsPoint(
+      float p1X, float p1Y, float p1SpeedX, float p1SpeedY, float p1Radius,
+      float p2X, float p2Y, float p2Radius,
+      float timeLimit, CollisionResponse p1Response,
+      CollisionScratch scratch) {
 
     // Assumptions:
     assert (p1Radius >= 0) : "Negative radius!";
@@ -907,7 +1225,7 @@ public class CollisionPhysics {
     // Accept 0 < t <= timeLimit
     if (t > 0 && t <= timeLimit) {
       // Call helper method to compute and return the response given collision time t.
-      pointIntersectsPointResponse(p1X, p1Y, p1SpeedX, p1SpeedY, p2X, p2Y, p1Response, t);
+      pointIntersectsPointResponse(p1X, p1Y, p1SpeedX, p1SpeedY, p2X, p2Y, p1Response, t, scratch);
     }
   }
 
@@ -925,11 +1243,12 @@ public class CollisionPhysics {
    * @param p1Response : To update the collision time and response for p1.
    *                   Reset time to infinity if error is detected.
    * @param t          : the given detected collision time.
+   * @param scratch    : working copies, owned by the calling thread.
    */
   private static void pointIntersectsPointResponse(
       float p1X, float p1Y, float p1SpeedX, float p1SpeedY,
       float p2X, float p2Y,
-      CollisionResponse p1Response, float t) {
+      CollisionResponse p1Response, float t, CollisionScratch scratch) {
 
     p1Response.t = t; // Update collision time in response
 
@@ -937,12 +1256,66 @@ public class CollisionPhysics {
     double p1ImpactX = p1Response.getImpactX(p1X, p1SpeedX);
     double p1ImpactY = p1Response.getImpactY(p1Y, p1SpeedY);
 
+    if (TRIGONOMETRIC_RESPONSE) {
+      pointIntersectsPointRotatedResponse(p1SpeedX, p1SpeedY,
+          p2X - p1ImpactX, p2Y - p1ImpactY, p1Response, scratch);
+    } else {
+      pointIntersectsPointNormalResponse(p1SpeedX, p1SpeedY,
+          p2X - p1ImpactX, p2Y - p1ImpactY, p1Response);
+    }
+  }
+
+  /**
+   * Same as pointIntersectsPointRotatedResponse(), without
+   * trigonometry: the component of the velocity along the normalized line
+   * of collision (lineX, lineY) is reflected
+   * (see pointIntersectsMovingPointNormalResponse()).
+   *
+   * @param p1SpeedX   : p1's speed in x-direction.
+   * @param p1SpeedY   : p1's speed in y-direction.
+   * @param lineX      : x-component of the line of collision, from p1 to p2.
+   * @param lineY      : y-component of the line of collision, from p1 to p2.
+   * @param p1Response : To update the response for p1.
+   *                   Reset time to infinity if p1 moves away from p2.
+   */
+  static void pointIntersectsPointNormalResponse(
+      float p1SpeedX, float p1SpeedY, double lineX, double lineY,
+      CollisionResponse p1Response) {
+    double length = Math.sqrt(lineX * lineX + lineY * lineY);
+    double normalX = (length > 0) ? lineX / length : 1.0;
+    double normalY = (length > 0) ? lineY / length : 0.0;
+    double p1SpeedP = p1SpeedX * normalX + p1SpeedY * normalY;
+    if (p1SpeedP <= 0) {
+      p1Response.reset();  // No collision, keep moving.
+      return;
+    }
+    p1Response.newSpeedX = (float) (p1SpeedX - 2.0 * p1SpeedP * normalX);
+    p1Response.newSpeedY = (float) (p1SpeedY - 2.0 * p1SpeedP * normalY);
+  }
+
+  /**
+   * The original response of pointIntersectsPointResponse(), with
+   * trigonometry: the velocity is rotated into the frame of the line of
+   * collision (lineX, lineY) and back. The reference of
+   * pointIntersectsPointNormalResponse().
+   *
+   * @param p1SpeedX   : p1's speed in x-direction.
+   * @param p1SpeedY   : p1's speed in y-direction.
+   * @param lineX      : x-component of the line of collision, from p1 to p2.
+   * @param lineY      : y-component of the line of collision, from p1 to p2.
+   * @param p1Response : To update the response for p1.
+   *                   Reset time to infinity if p1 moves away from p2.
+   * @param scratch    : working copies, owned by the calling thread.
+   */
+  static void pointIntersectsPointRotatedResponse(
+      float p1SpeedX, float p1SpeedY, double lineX, double lineY,
+      CollisionResponse p1Response, CollisionScratch scratch) {
     // Direction along the line of collision is P, normal is N.
     // Get the direction along the line of collision
-    double lineAngle = Math.atan2(p2Y - p1ImpactY, p2X - p1ImpactX);
+    double lineAngle = Math.atan2(lineY, lineX);
 
     // Project velocities from (x ,y) to (p, n)
-    double[] result = rotate(p1SpeedX, p1SpeedY, lineAngle);
+    double[] result = rotate(p1SpeedX, p1SpeedY, lineAngle, scratch.rotateResult);
     double p1SpeedP = result[0];
     double p1SpeedN = result[1];
 
@@ -958,7 +1331,7 @@ public class CollisionPhysics {
     double p1SpeedNAfter = p1SpeedN;
 
     // Project the velocities back from (p, n) to (x, y)
-    result = rotate(p1SpeedPAfter, p1SpeedNAfter, -lineAngle);
+    result = rotate(p1SpeedPAfter, p1SpeedNAfter, -lineAngle, scratch.rotateResult);
     p1Response.newSpeedX = (float) result[0];
     p1Response.newSpeedY = (float) result[1];
   }
@@ -967,21 +1340,20 @@ public class CollisionPhysics {
    * Helper method to rotation vector (x, y) by theta, in Graphics coordinates.
    * y-axis is inverted.
    * theta measured in counter-clockwise direction.
-   * Re-use the double[] rotateResult to avoid repeated new operations.
+   * Re-use the given double[] result to avoid repeated new operations.
    *
    * @param x : x coordinate of the vector to be rotated.
    * @param y : y coordinate of the vector to be rotated, inverted.
    * @param theta : rotational angle in radians, counter-clockwise.
-   * @return An double array of 2 elements x and y, in the rotated coordinates.
+   * @param result : array of 2 elements, owned by the calling thread.
+   * @return the result array, with x and y in the rotated coordinates.
    */
-  private static double[] rotateResult = new double[2];
-
-  private static double[] rotate(double x, double y, double theta) {
+  private static double[] rotate(double x, double y, double theta, double[] result) {
     double sinTheta = Math.sin(theta);
     double cosTheta = Math.cos(theta);
-    rotateResult[0] = x * cosTheta + y * sinTheta;
-    rotateResult[1] = -x * sinTheta + y * cosTheta;
-    return rotateResult;
+    result[0] = x * cosTheta + y * sinTheta;
+    result[1] = -x * sinTheta + y * cosTheta;
+    return result;
   }
 
   /**
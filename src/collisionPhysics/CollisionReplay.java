@@ -0,0 +1,235 @@
+package collisionphysics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Rebuilds the state of a logged Simulation at any time, from a
+ * CollisionLog: seek() restores the nearest keyframe at or before that
+ * time, applies the events since, and moves each ball in a straight line
+ * from its last event.
+ * <p>
+ * The positions are exact at the keyframes and the events. In between,
+ * they differ from the live simulation by the rounding of its many small
+ * sub-step moves, a fraction of a pixel, and by the batch window (see
+ * Simulation.setBatchWindow()): the log has each collision at its own
+ * time, while the simulation resolves a batched one up to a window early.
+ * The clock of the restored simulation is the time sought, and its step
+ * count that of the keyframe.
+ * <p>
+ * A log that was not closed (e.g. the process was killed) is replayed up
+ * to its last keyframe.
+ */
+public final class CollisionReplay implements Closeable {
+  private final FileChannel events;
+  private final FileChannel keyframes;
+  private final long numEvents;
+  private final double endTime;
+  private final ByteBuffer buffer = Checkpoint.newBuffer();
+
+  // Index of the keyframes, in time order
+  private double[] keyframeTimes = new double[16];
+  private long[] keyframePositions = new long[16];  // In the keyframes file
+  private long[] keyframeEvents = new long[16];     // Index of the next event
+  private int numKeyframes;
+
+  private double[] ballTimes = new double[0];  // Time of the position, by ball
+
+  /**
+   * Constructor, opening the log in the given directory and indexing its
+   * keyframes.
+   *
+   * @param directory : the directory of a CollisionLog.
+   * @throws IOException if the log cannot be read, or is not a valid log.
+   */
+  public CollisionReplay(Path directory) throws IOException {
+    events = FileChannel.open(directory.resolve(CollisionLog.EVENTS_FILE), StandardOpenOption.READ);
+    keyframes = FileChannel.open(directory.resolve(CollisionLog.KEYFRAMES_FILE),
+        StandardOpenOption.READ);
+    try {
+      ByteBuffer header = readHeader(events, CollisionLog.EVENTS_MAGIC);
+      long writtenEvents = (events.size() - CollisionLog.HEADER_BYTES) / CollisionLog.EVENT_BYTES;
+      numEvents = Math.min(header.getLong(CollisionLog.NUM_EVENTS_OFFSET), writtenEvents);
+      endTime = header.getDouble(CollisionLog.END_TIME_OFFSET);
+      readHeader(keyframes, CollisionLog.KEYFRAMES_MAGIC);
+      indexKeyframes();
+    } catch (IOException | RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Return the number of events in the log.
+   */
+  public long getNumEvents() {
+    return numEvents;
+  }
+
+  /**
+   * Return the number of keyframes in the log.
+   */
+  public int getNumKeyframes() {
+    return numKeyframes;
+  }
+
+  /**
+   * Return the earliest time that can be sought, the time of the first keyframe.
+   */
+  public double getStartTime() {
+    if (numKeyframes == 0) {
+      throw new IllegalStateException("Collision log has no keyframes");
+    }
+    return keyframeTimes[0];
+  }
+
+  /**
+   * Return the latest time that can be sought, the end of the last step
+   * logged (or of the last keyframe, for a log that was not closed).
+   */
+  public double getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Restore the state of the logged simulation at the given time into a
+   * simulation (e.g. a fresh one, or the one displayed). Its balls,
+   * container and clock are replaced, and it grows as needed; its settings
+   * are kept.
+   *
+   * @param time       : the time to seek, from getStartTime() to getEndTime().
+   * @param simulation : the simulation to restore into.
+   * @throws IOException if the log cannot be read.
+   * @throws IllegalArgumentException if the time is out of the log.
+   */
+  public void seek(double time, Simulation simulation) throws IOException {
+    // The last keyframe at or before the time
+    int k = Arrays.binarySearch(keyframeTimes, 0, numKeyframes, time);
+    if (k < 0) {
+      k = -k - 2;
+    }
+    while (k + 1 < numKeyframes && keyframeTimes[k + 1] == time) {
+      k++;  // Forced keyframes may share a time
+    }
+    if (k < 0 || time > endTime) {
+      throw new IllegalArgumentException("Time " + time + " is out of the log");
+    }
+    keyframes.position(keyframePositions[k] + 8);
+    ByteBuffer header = Checkpoint.readHeader(keyframes);
+    Checkpoint.readState(keyframes, header, buffer, simulation);
+
+    BallStore balls = simulation.getBalls();
+    int count = balls.size();
+    if (ballTimes.length < count) {
+      ballTimes = new double[count];
+    }
+    Arrays.fill(ballTimes, 0, count, keyframeTimes[k]);
+    long endEvent = (k + 1 < numKeyframes) ? keyframeEvents[k + 1] : numEvents;
+    applyEvents(keyframeEvents[k], endEvent, time, balls);
+
+    // Straight from the last event of each ball
+    for (int i = 0; i < count; i++) {
+      float dt = (float) (time - ballTimes[i]);
+      balls.x[i] += balls.speedX[i] * dt;
+      balls.y[i] += balls.speedY[i] * dt;
+    }
+    simulation.restore(simulation.getContainerCenterX(), simulation.getContainerCenterY(),
+        simulation.getContainerRadius(), time, simulation.getStepCount());
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      events.close();
+    } finally {
+      keyframes.close();
+    }
+  }
+
+  /**
+   * Apply the events from index start until index end that are at or before
+   * the given time. The collisions batched in a sub-step are logged at their
+   * own times, so a later event may still be due: all of them are read.
+   */
+  private void applyEvents(long start, long end, double time, BallStore balls) throws IOException {
+    int count = balls.size();
+    int chunk = buffer.capacity() / CollisionLog.EVENT_BYTES;
+    for (long from = start; from < end; from += chunk) {
+      int length = (int) Math.min(chunk, end - from);
+      buffer.clear().limit(length * CollisionLog.EVENT_BYTES);
+      long position = CollisionLog.HEADER_BYTES + from * CollisionLog.EVENT_BYTES;
+      while (buffer.hasRemaining()) {
+        if (events.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Collision log is truncated");
+        }
+      }
+      buffer.flip();
+      for (int e = 0; e < length; e++) {
+        double eventTime = buffer.getDouble();
+        if (eventTime > time) {
+          buffer.position(buffer.position() + CollisionLog.EVENT_BYTES - 8);
+          continue;
+        }
+        int i = buffer.getInt();
+        buffer.getInt();  // Partner
+        if (i < 0 || i >= count) {
+          throw new IOException("Collision log is corrupt: ball " + i + " of " + count);
+        }
+        balls.x[i] = buffer.getFloat();
+        balls.y[i] = buffer.getFloat();
+        balls.speedX[i] = buffer.getFloat();
+        balls.speedY[i] = buffer.getFloat();
+        ballTimes[i] = eventTime;
+      }
+    }
+  }
+
+  /**
+   * Index the complete keyframes, skipping their balls.
+   */
+  private void indexKeyframes() throws IOException {
+    long size = keyframes.size();
+    long position = CollisionLog.HEADER_BYTES;
+    ByteBuffer eventIndex = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    while (position + 8 + Checkpoint.getSize(0) <= size) {
+      keyframes.position(position);
+      eventIndex.clear();
+      Checkpoint.readFully(keyframes, eventIndex);
+      ByteBuffer header = Checkpoint.readHeader(keyframes);
+      long next = position + 8 + Checkpoint.getSize(Checkpoint.getCount(header));
+      long firstEvent = eventIndex.getLong(0);
+      if (next > size || firstEvent > numEvents) {
+        break;  // Written after the last complete event count
+      }
+      if (numKeyframes == keyframeTimes.length) {
+        keyframeTimes = Arrays.copyOf(keyframeTimes, 2 * numKeyframes);
+        keyframePositions = Arrays.copyOf(keyframePositions, 2 * numKeyframes);
+        keyframeEvents = Arrays.copyOf(keyframeEvents, 2 * numKeyframes);
+      }
+      keyframeTimes[numKeyframes] = Checkpoint.getTime(header);
+      keyframePositions[numKeyframes] = position;
+      keyframeEvents[numKeyframes] = firstEvent;
+      numKeyframes++;
+      position = next;
+    }
+  }
+
+  private static ByteBuffer readHeader(FileChannel channel, int magic) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(CollisionLog.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    Checkpoint.readFully(channel, header);
+    if (header.getInt(0) != magic) {
+      throw new IOException("Not a collision log");
+    }
+    int version = header.getInt(4);
+    if (version != CollisionLog.VERSION) {
+      throw new IOException("Unsupported collision log version " + version);
+    }
+    return header;
+  }
+}
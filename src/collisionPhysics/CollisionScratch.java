@@ -0,0 +1,35 @@
+package collisionphysics;
+
+/**
+ * The working copies used by CollisionPhysics while detecting a collision,
+ * to avoid repeatedly allocating objects.
+ * <p>
+ * CollisionPhysics keeps no static state: each detection works on the
+ * CollisionScratch it is given, so that threads detecting collisions at
+ * once never share a working copy. A caller owning a thread (e.g. a game
+ * loop or a worker) creates its own instance and passes it explicitly; the
+ * overloads without a CollisionScratch use the instance of the calling
+ * thread, from forCurrentThread().
+ * <p>
+ * An instance must not be shared between threads.
+ */
+public final class CollisionScratch {
+  private static final ThreadLocal<CollisionScratch> PER_THREAD =
+      ThreadLocal.withInitial(CollisionScratch::new);
+
+  // Working copy for computing the response against several borders
+  final CollisionResponse tempResponse = new CollisionResponse();
+  // Working copy for the earliest collision among the obstacles of an ObstacleField
+  final CollisionResponse obstacleResponse = new CollisionResponse();
+  // The solution for colliding to a line has two parts: t and lambda
+  final float[] pointLineResult = new float[2];
+  // The rotated vector of CollisionPhysics.rotate()
+  final double[] rotateResult = new double[2];
+
+  /**
+   * Return the working copies of the calling thread, created on first use.
+   */
+  public static CollisionScratch forCurrentThread() {
+    return PER_THREAD.get();
+  }
+}
@@ -0,0 +1,482 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * An event-driven collision engine, in the style of Lubachevsky and Rapaport.
+ * <p>
+ * Instead of rescanning every pair after each collision, the engine keeps a
+ * min-heap of predicted events: ball-ball impacts, and impacts of a ball
+ * with the container or an obstacle.
+ * Each ball carries a collision counter; an event records the counters of
+ * its balls when it was predicted, and is discarded when popped if any of
+ * them has changed since (the ball has collided in the meantime).
+ * <p>
+ * Balls are advanced lazily: a ball's position is only brought up to date
+ * when it takes part in an event, and at the end of the time-step. After a
+ * collision, only the balls involved (two, or one for a container hit) are
+ * re-predicted, against the balls whose swept boxes overlap theirs: those
+ * of the broad-phase for the balls still on their path of the start of the
+ * time-step, and those of a grid of the balls that changed paths since. A
+ * time-step with k collisions then costs about O(n + k) tests instead of
+ * O(k n^2).
+ * <p>
+ * The detection and the response are computed by the CollisionPhysics
+ * methods, exactly as in the sub-step loop. A time-step resolves at most
+ * the budget of events; past it, the balls stop at the last event, and the
+ * caller decides what to do with the time left.
+ */
+public class EventDrivenEngine {
+  private static final int NO_BALL = -1;  // Second ball of a container event
+  private static final int OBSTACLE = -2;  // Second ball of an obstacle event
+  private static final float EPSILON_TIME = 1e-4f;  // Ignore shorter horizons
+
+  private final BroadPhase broadPhase;
+  private final PairList pairs = new PairList();
+  private final SweptBoxGrid changedBoxes = new SweptBoxGrid();  // Since the start of the step
+  private int[] overlaps = new int[0];  // Balls to re-predict a ball against
+  private int[] gridOverlaps = new int[0];
+  private int[] overlapQueries = new int[0];  // Last query that listed each ball
+  private int numOverlapQueries;
+  private ObstacleField obstacles;  // null for none
+  private int eventBudget = Integer.MAX_VALUE;  // Max events resolved per time-step
+
+  // Per-ball state: local time of the position, and the collision counter
+  private float[] ballTime = new float[0];
+  private int[] collisionCount = new int[0];
+
+  // Event heap, ordered by eventTime
+  private float[] eventTime = new float[0];
+  private int[] eventBallA = new int[0];
+  private int[] eventBallB = new int[0];
+  private int[] eventCountA = new int[0];
+  private int[] eventCountB = new int[0];
+  private float[] eventSpeedXA = new float[0];
+  private float[] eventSpeedYA = new float[0];
+  private float[] eventSpeedXB = new float[0];
+  private float[] eventSpeedYB = new float[0];
+  private int numEvents;
+
+  // Working copies, to avoid repeatedly allocating objects.
+  private final CollisionResponse responseA = new CollisionResponse();
+  private final CollisionResponse responseB = new CollisionResponse();
+  private final CollisionScratch scratch = new CollisionScratch();
+
+  // The state of the current time-step
+  private float[] x, y, speedX, speedY, radius;
+  private int count;
+  private float containerCenterX, containerCenterY, containerRadius;
+  private float timeStep;
+
+  // Log of the resolved collisions, or null
+  private CollisionLog log;
+  private double startTime;  // Absolute time of the time-step
+
+  // Counts of the last time-step, for the metrics
+  private int numProcessed, numCollisions, numPairTests;
+  private int numResolved;  // Valid events, against the budget
+  private boolean overBudget;  // The time-step ran out of events
+  private float endTime;  // Time the balls were brought to, timeStep unless over budget
+
+  /**
+   * Constructor.
+   *
+   * @param broadPhase : broad-phase used for the predictions of each time-step.
+   */
+  public EventDrivenEngine(BroadPhase broadPhase) {
+    this.broadPhase = broadPhase;
+  }
+
+  /**
+   * Set the static obstacles, tested as the container.
+   *
+   * @param obstacles : the built obstacles, or null for none.
+   */
+  public void setObstacles(ObstacleField obstacles) {
+    this.obstacles = obstacles;
+  }
+
+  /**
+   * Set the max number of events (collisions) resolved in one time-step.
+   * A time-step that runs out of them ends at its last resolved event.
+   *
+   * @param budget : max events per time-step, at least 1.
+   */
+  public void setEventBudget(int budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("Event budget must be at least 1: " + budget);
+    }
+    this.eventBudget = budget;
+  }
+
+  /**
+   * Log the collisions resolved by the next time-step.
+   *
+   * @param log       : the log, or null not to log.
+   * @param startTime : absolute simulation time of the start of the time-step.
+   */
+  void setCollisionLog(CollisionLog log, double startTime) {
+    this.log = log;
+    this.startTime = startTime;
+  }
+
+  /**
+   * Advance the balls by one time-step, resolving the collisions among the
+   * balls and with the circular container in time order.
+   *
+   * @param x                : x-positions of the balls, updated in place.
+   * @param y                : y-positions of the balls, updated in place.
+   * @param speedX           : speeds in x-direction, updated in place.
+   * @param speedY           : speeds in y-direction, updated in place.
+   * @param radius           : radii of the balls.
+   * @param count            : number of active balls.
+   * @param containerCenterX : center x of the circular container.
+   * @param containerCenterY : center y of the circular container.
+   * @param containerRadius  : radius of the circular container.
+   * @param timeStep         : length of the time-step, in (0, 1] range.
+   */
+  public void advance(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                      int count, float containerCenterX, float containerCenterY,
+                      float containerRadius, float timeStep) {
+    this.x = x;
+    this.y = y;
+    this.speedX = speedX;
+    this.speedY = speedY;
+    this.radius = radius;
+    this.count = count;
+    this.containerCenterX = containerCenterX;
+    this.containerCenterY = containerCenterY;
+    this.containerRadius = containerRadius;
+    this.timeStep = timeStep;
+    ensureBallCapacity(count);
+
+    // Initial predictions, for the candidate pairs of the broad-phase
+    numEvents = 0;
+    numProcessed = 0;
+    numCollisions = 0;
+    numPairTests = 0;
+    numResolved = 0;
+    overBudget = false;
+    endTime = timeStep;
+    for (int i = 0; i < count; i++) {
+      ballTime[i] = 0;
+      collisionCount[i] = 0;
+    }
+    broadPhase.findPairs(x, y, speedX, speedY, radius, count, timeStep, pairs);
+    resetChangedBoxes();
+    for (int k = 0; k < pairs.size(); k++) {
+      predictPair(pairs.first(k), pairs.second(k), 0);
+    }
+    for (int i = 0; i < count; i++) {
+      predictContainer(i, 0);
+    }
+
+    // Process the events in time order, until the budget runs out
+    float lastTime = 0;
+    while (numEvents > 0) {
+      if (numResolved == eventBudget) {
+        overBudget = true;
+        endTime = lastTime;  // The balls stand still for the time left
+        break;
+      }
+      float now = eventTime[0];
+      int a = eventBallA[0];
+      int b = eventBallB[0];
+      boolean valid = eventCountA[0] == collisionCount[a]
+          && (b < 0 || eventCountB[0] == collisionCount[b]);
+      responseA.newSpeedX = eventSpeedXA[0];
+      responseA.newSpeedY = eventSpeedYA[0];
+      responseB.newSpeedX = eventSpeedXB[0];
+      responseB.newSpeedY = eventSpeedYB[0];
+      pop();
+      numProcessed++;
+      if (!valid) {
+        continue;  // One of the balls has collided since the prediction
+      }
+      numCollisions += (b < 0) ? 1 : 2;
+      numResolved++;
+      lastTime = now;
+
+      resolve(a, b, now, responseA);
+      if (b < 0) {
+        predictAll(a, NO_BALL, now);
+      } else {
+        resolve(b, a, now, responseB);
+        predictAll(a, NO_BALL, now);
+        predictAll(b, a, now);  // (a, b) was already predicted from a
+      }
+    }
+
+    // Bring every ball to the end of the time-step
+    for (int i = 0; i < count; i++) {
+      float dt = endTime - ballTime[i];
+      x[i] += speedX[i] * dt;
+      y[i] += speedY[i] * dt;
+    }
+  }
+
+  /**
+   * Return the number of events popped in the last time-step, including
+   * the stale ones.
+   */
+  public int getProcessedEvents() {
+    return numProcessed;
+  }
+
+  /**
+   * Return the number of collision responses applied in the last
+   * time-step, one per ball involved.
+   */
+  public int getCollisions() {
+    return numCollisions;
+  }
+
+  /**
+   * Return true if the last time-step ran out of events, and ended early.
+   */
+  public boolean isOverBudget() {
+    return overBudget;
+  }
+
+  /**
+   * Return the time within the last time-step that the balls were brought
+   * to: the time-step, or the last resolved event when over budget.
+   */
+  public float getEndTime() {
+    return endTime;
+  }
+
+  /**
+   * Return the number of ball-ball predictions in the last time-step.
+   */
+  public int getPairTests() {
+    return numPairTests;
+  }
+
+  /**
+   * Return the number of candidate pairs of the broad-phase in the last
+   * time-step.
+   */
+  public int getCandidatePairs() {
+    return pairs.size();
+  }
+
+  /**
+   * Move ball i to the collision at time now with the given partner (or
+   * NO_BALL, or OBSTACLE), and apply its new speed. As in the sub-step
+   * loop, the ball stops slightly short of the impact.
+   */
+  private void resolve(int i, int partner, float now, CollisionResponse response) {
+    response.t = now - ballTime[i];
+    x[i] = response.getNewX(x[i], speedX[i]);
+    y[i] = response.getNewY(y[i], speedY[i]);
+    speedX[i] = response.newSpeedX;
+    speedY[i] = response.newSpeedY;
+    ballTime[i] = now;
+    collisionCount[i]++;
+    // Its new path, for the re-predictions of the other balls
+    float timeLimit = timeStep - now;
+    changedBoxes.insert(i,
+        SweptBox.min(x[i], speedX[i], radius[i], timeLimit),
+        SweptBox.min(y[i], speedY[i], radius[i], timeLimit),
+        SweptBox.max(x[i], speedX[i], radius[i], timeLimit),
+        SweptBox.max(y[i], speedY[i], radius[i], timeLimit));
+    if (log != null) {
+      log.append(startTime + now, i, partner, x[i], y[i], speedX[i], speedY[i]);
+    }
+  }
+
+  /**
+   * Empty the boxes of the changed balls for a new time-step, sizing the
+   * cells from the balls at its start.
+   */
+  private void resetChangedBoxes() {
+    float maxRadius = 0;
+    float maxSpeed = 0;
+    for (int i = 0; i < count; i++) {
+      maxRadius = Math.max(maxRadius, radius[i]);
+      maxSpeed = Math.max(maxSpeed, Math.max(Math.abs(speedX[i]), Math.abs(speedY[i])));
+    }
+    changedBoxes.reset(count, 2 * (maxRadius + SweptBox.MARGIN) + maxSpeed * timeStep);
+  }
+
+  /**
+   * Re-predict the events of ball a, just resolved at time now, against
+   * the other balls (except the given one) whose swept boxes overlap its
+   * own, the container and the obstacles. With the brute-force
+   * broad-phase, every other ball is tested.
+   */
+  private void predictAll(int a, int except, float now) {
+    float timeLimit = timeStep - now;
+    if (timeLimit >= EPSILON_TIME) {
+      float minX = SweptBox.min(x[a], speedX[a], radius[a], timeLimit);
+      float minY = SweptBox.min(y[a], speedY[a], radius[a], timeLimit);
+      float maxX = SweptBox.max(x[a], speedX[a], radius[a], timeLimit);
+      float maxY = SweptBox.max(y[a], speedY[a], radius[a], timeLimit);
+      int numFound = broadPhase.findOverlaps(minX, minY, maxX, maxY, overlaps);
+      int numGridFound = changedBoxes.findOverlaps(minX, minY, maxX, maxY, gridOverlaps);
+      // Each other ball once, found in either
+      int query = ++numOverlapQueries;
+      overlapQueries[a] = query;
+      if (except != NO_BALL) {
+        overlapQueries[except] = query;
+      }
+      for (int k = 0; k < numFound + numGridFound; k++) {
+        int b = (k < numFound) ? overlaps[k] : gridOverlaps[k - numFound];
+        if (overlapQueries[b] != query) {
+          overlapQueries[b] = query;
+          predictPair(a, b, now);
+        }
+      }
+    }
+    predictContainer(a, now);
+  }
+
+  private void predictPair(int a, int b, float now) {
+    float timeLimit = timeStep - now;
+    if (timeLimit < EPSILON_TIME) {
+      return;
+    }
+    numPairTests++;
+    float dtA = now - ballTime[a];
+    float dtB = now - ballTime[b];
+    CollisionPhysics.pointIntersectsMovingPoint(
+        x[a] + speedX[a] * dtA, y[a] + speedY[a] * dtA, speedX[a], speedY[a], radius[a],
+        x[b] + speedX[b] * dtB, y[b] + speedY[b] * dtB, speedX[b], speedY[b], radius[b],
+        timeLimit, responseA, responseB, scratch);
+    if (responseA.t <= timeLimit) {
+      push(now + responseA.t, a, b, responseA, responseB);
+    }
+  }
+
+  private void predictContainer(int a, float now) {
+    float timeLimit = timeStep - now;
+    if (timeLimit < EPSILON_TIME) {
+      return;
+    }
+    float dtA = now - ballTime[a];
+    CollisionPhysics.pointIntersectsCircleOuter(
+        x[a] + speedX[a] * dtA, y[a] + speedY[a] * dtA, speedX[a], speedY[a], radius[a],
+        containerCenterX, containerCenterY, containerRadius, timeLimit, responseA, scratch);
+    if (responseA.t <= timeLimit) {
+      push(now + responseA.t, a, NO_BALL, responseA, responseA);
+    }
+    if (obstacles != null) {
+      obstacles.detect(
+          x[a] + speedX[a] * dtA, y[a] + speedY[a] * dtA, speedX[a], speedY[a], radius[a],
+          timeLimit, responseA, scratch);
+      if (responseA.t <= timeLimit) {
+        push(now + responseA.t, a, OBSTACLE, responseA, responseA);
+      }
+    }
+  }
+
+  private void push(float time, int a, int b, CollisionResponse forA, CollisionResponse forB) {
+    if (numEvents == eventTime.length) {
+      growEvents();
+    }
+    int slot = numEvents++;
+    setEvent(slot, time, a, b, collisionCount[a], b < 0 ? 0 : collisionCount[b],
+        forA.newSpeedX, forA.newSpeedY, forB.newSpeedX, forB.newSpeedY);
+    // Sift up
+    while (slot > 0) {
+      int parent = (slot - 1) >> 1;
+      if (precedes(parent, slot)) {
+        break;
+      }
+      swap(slot, parent);
+      slot = parent;
+    }
+  }
+
+  private void pop() {
+    numEvents--;
+    if (numEvents == 0) {
+      return;
+    }
+    swap(0, numEvents);
+    // Sift down
+    int slot = 0;
+    while (true) {
+      int child = 2 * slot + 1;
+      if (child >= numEvents) {
+        break;
+      }
+      if (child + 1 < numEvents && !precedes(child, child + 1)) {
+        child++;
+      }
+      if (precedes(slot, child)) {
+        break;
+      }
+      swap(slot, child);
+      slot = child;
+    }
+  }
+
+  /**
+   * Return true if the event in slot s1 comes before (or with) the event in
+   * slot s2: by time, then by balls, so that simultaneous events are
+   * processed in the same order whatever the order of their predictions
+   * (e.g. the pair order of the broad-phase).
+   */
+  private boolean precedes(int s1, int s2) {
+    if (eventTime[s1] != eventTime[s2]) {
+      return eventTime[s1] < eventTime[s2];
+    }
+    if (eventBallA[s1] != eventBallA[s2]) {
+      return eventBallA[s1] < eventBallA[s2];
+    }
+    return eventBallB[s1] <= eventBallB[s2];
+  }
+
+  private void setEvent(int slot, float time, int a, int b, int countA, int countB,
+                        float speedXA, float speedYA, float speedXB, float speedYB) {
+    eventTime[slot] = time;
+    eventBallA[slot] = a;
+    eventBallB[slot] = b;
+    eventCountA[slot] = countA;
+    eventCountB[slot] = countB;
+    eventSpeedXA[slot] = speedXA;
+    eventSpeedYA[slot] = speedYA;
+    eventSpeedXB[slot] = speedXB;
+    eventSpeedYB[slot] = speedYB;
+  }
+
+  private void swap(int i, int j) {
+    float time = eventTime[i];
+    int a = eventBallA[i];
+    int b = eventBallB[i];
+    int countA = eventCountA[i];
+    int countB = eventCountB[i];
+    float speedXA = eventSpeedXA[i];
+    float speedYA = eventSpeedYA[i];
+    float speedXB = eventSpeedXB[i];
+    float speedYB = eventSpeedYB[i];
+    setEvent(i, eventTime[j], eventBallA[j], eventBallB[j], eventCountA[j], eventCountB[j],
+        eventSpeedXA[j], eventSpeedYA[j], eventSpeedXB[j], eventSpeedYB[j]);
+    setEvent(j, time, a, b, countA, countB, speedXA, speedYA, speedXB, speedYB);
+  }
+
+  private void growEvents() {
+    int capacity = Math.max(64, eventTime.length * 2);
+    eventTime = Arrays.copyOf(eventTime, capacity);
+    eventBallA = Arrays.copyOf(eventBallA, capacity);
+    eventBallB = Arrays.copyOf(eventBallB, capacity);
+    eventCountA = Arrays.copyOf(eventCountA, capacity);
+    eventCountB = Arrays.copyOf(eventCountB, capacity);
+    eventSpeedXA = Arrays.copyOf(eventSpeedXA, capacity);
+    eventSpeedYA = Arrays.copyOf(eventSpeedYA, capacity);
+    eventSpeedXB = Arrays.copyOf(eventSpeedXB, capacity);
+    eventSpeedYB = Arrays.copyOf(eventSpeedYB, capacity);
+  }
+
+  private void ensureBallCapacity(int count) {
+    if (ballTime.length < count) {
+      ballTime = new float[count];
+      collisionCount = new int[count];
+      overlaps = new int[count];
+      gridOverlaps = new int[count];
+      overlapQueries = new int[count];
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package collisionphysics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with log-linear buckets: 8
+ * buckets per power of 2, so a recorded value is known within 12.5%.
+ * <p>
+ * Recording is a few arithmetic operations and an ordered store into a
+ * fixed array: no allocation, no lock. It must be done by one thread at a
+ * time (e.g. the game thread, or the event dispatch thread); any thread may
+ * read the histogram while it is being recorded.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Values below SUB_BUCKETS have one bucket each, then SUB_BUCKETS per power of 2
+  private static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  private volatile long count;
+  private volatile long totalNanos;
+  private volatile long maxNanos;
+
+  /**
+   * Record one duration. Only call from one thread at a time.
+   *
+   * @param nanos : the duration, negative values count as 0.
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    int bucket = bucketOf(nanos);
+    counts.lazySet(bucket, counts.get(bucket) + 1);
+    totalNanos += nanos;
+    if (nanos > maxNanos) {
+      maxNanos = nanos;
+    }
+    count++;
+  }
+
+  /**
+   * Return the number of durations recorded.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Return the mean of the durations recorded, or 0 if none.
+   */
+  public long getMeanNanos() {
+    long n = count;
+    return (n > 0) ? totalNanos / n : 0;
+  }
+
+  /**
+   * Return the longest duration recorded.
+   */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * Return the given percentile of the durations recorded, as the upper
+   * bound of its bucket, or 0 if none.
+   *
+   * @param percentile : in [0, 100] range.
+   */
+  public long getPercentileNanos(double percentile) {
+    long n = count;
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+    long seen = 0;
+    for (int b = 0; b < NUM_BUCKETS; b++) {
+      seen += counts.get(b);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(b), maxNanos);
+      }
+    }
+    return maxNanos;  // Recorded meanwhile
+  }
+
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);  // >= SUB_BITS
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+    long sub = bucket % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BITS);
+    return ((SUB_BUCKETS + sub) << (exponent - SUB_BITS)) + width - 1;
+  }
+}
@@ -0,0 +1,344 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * A field of static obstacles inside the container: line segments (walls,
+ * and the edges of polygons) and pegs (stationary circles), e.g. for
+ * pachinko and maze arenas.
+ * <p>
+ * The obstacles are added first, then indexed once by build() into a
+ * uniform grid covering their bounds: each cell lists the obstacles whose
+ * bounding box overlaps it, in a single array sorted by cell (a counting
+ * sort, as SpatialHashBroadPhase). A moving ball only tests the obstacles
+ * of the cells that its swept box overlaps, so the cost of a detection
+ * depends on the obstacles nearby, not on the size of the field. An
+ * obstacle listed in several of those cells is tested once, from the cell
+ * that holds the minimum corner of the overlap of its cells and the query.
+ * <p>
+ * A built field is immutable, and a detection keeps no state in it, so a
+ * field can be shared by several simulations and threads.
+ *
+ * @see Simulation.setObstacles()
+ */
+public final class ObstacleField {
+  // Max number of cells per obstacle (on average); the cells are made
+  // larger for a field of long walls and tiny pegs
+  private static final int MAX_CELLS_PER_OBSTACLE = 16;
+
+  // Segments, then pegs. Obstacle k < numSegments is segment k, and
+  // obstacle k >= numSegments is peg k - numSegments.
+  private float[] segmentX1 = new float[16];
+  private float[] segmentY1 = new float[16];
+  private float[] segmentX2 = new float[16];
+  private float[] segmentY2 = new float[16];
+  private int numSegments;
+  private float[] pegX = new float[16];
+  private float[] pegY = new float[16];
+  private float[] pegRadius = new float[16];
+  private int numPegs;
+
+  // The grid, set by build()
+  private boolean built;
+  private float originX, originY;  // Minimum corner of the grid
+  private float cellSize;
+  private int numCellsX, numCellsY;
+  // cellStart[c] .. cellStart[c + 1] - 1 are the entries of cell c = cellY * numCellsX + cellX
+  private int[] cellStart;
+  private int[] cellObstacles;
+  // Bounding box of each obstacle, and its first cell
+  private float[] boxMinX, boxMinY, boxMaxX, boxMaxY;
+  private int[] firstCellX, firstCellY;
+
+  /**
+   * Add a line segment, tested with its two end points.
+   *
+   * @return the index of the segment.
+   */
+  public int addSegment(float x1, float y1, float x2, float y2) {
+    checkNotBuilt();
+    if (numSegments == segmentX1.length) {
+      int capacity = 2 * numSegments;
+      segmentX1 = Arrays.copyOf(segmentX1, capacity);
+      segmentY1 = Arrays.copyOf(segmentY1, capacity);
+      segmentX2 = Arrays.copyOf(segmentX2, capacity);
+      segmentY2 = Arrays.copyOf(segmentY2, capacity);
+    }
+    segmentX1[numSegments] = x1;
+    segmentY1[numSegments] = y1;
+    segmentX2[numSegments] = x2;
+    segmentY2[numSegments] = y2;
+    return numSegments++;
+  }
+
+  /**
+   * Add the edges of a closed polygon, as segments.
+   *
+   * @param polygonXs : array of x points of the polygon.
+   * @param polygonYs : array of y points of the polygon.
+   * @param numPoints : number of points to be taken from the point arrays.
+   */
+  public void addPolygon(float[] polygonXs, float[] polygonYs, int numPoints) {
+    for (int point = 0; point < numPoints; point++) {
+      int next = (point + 1 == numPoints) ? 0 : point + 1;
+      addSegment(polygonXs[point], polygonYs[point], polygonXs[next], polygonYs[next]);
+    }
+  }
+
+  /**
+   * Add a peg, a stationary circle.
+   *
+   * @return the index of the peg.
+   */
+  public int addPeg(float x, float y, float radius) {
+    checkNotBuilt();
+    if (!(radius >= 0)) {
+      throw new IllegalArgumentException("Negative radius: " + radius);
+    }
+    if (numPegs == pegX.length) {
+      int capacity = 2 * numPegs;
+      pegX = Arrays.copyOf(pegX, capacity);
+      pegY = Arrays.copyOf(pegY, capacity);
+      pegRadius = Arrays.copyOf(pegRadius, capacity);
+    }
+    pegX[numPegs] = x;
+    pegY[numPegs] = y;
+    pegRadius[numPegs] = radius;
+    return numPegs++;
+  }
+
+  /**
+   * Index the obstacles. No obstacle can be added afterwards. Does nothing
+   * if the field is already built.
+   */
+  public void build() {
+    if (built) {
+      return;
+    }
+    int numObstacles = numSegments + numPegs;
+    boxMinX = new float[numObstacles];
+    boxMinY = new float[numObstacles];
+    boxMaxX = new float[numObstacles];
+    boxMaxY = new float[numObstacles];
+    firstCellX = new int[numObstacles];
+    firstCellY = new int[numObstacles];
+
+    // Bounding boxes, and the cell size from their mean extent
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    double sumExtent = 0;
+    for (int k = 0; k < numObstacles; k++) {
+      if (k < numSegments) {
+        boxMinX[k] = Math.min(segmentX1[k], segmentX2[k]);
+        boxMinY[k] = Math.min(segmentY1[k], segmentY2[k]);
+        boxMaxX[k] = Math.max(segmentX1[k], segmentX2[k]);
+        boxMaxY[k] = Math.max(segmentY1[k], segmentY2[k]);
+      } else {
+        int p = k - numSegments;
+        boxMinX[k] = pegX[p] - pegRadius[p];
+        boxMinY[k] = pegY[p] - pegRadius[p];
+        boxMaxX[k] = pegX[p] + pegRadius[p];
+        boxMaxY[k] = pegY[p] + pegRadius[p];
+      }
+      minX = Math.min(minX, boxMinX[k]);
+      minY = Math.min(minY, boxMinY[k]);
+      maxX = Math.max(maxX, boxMaxX[k]);
+      maxY = Math.max(maxY, boxMaxY[k]);
+      sumExtent += Math.max(boxMaxX[k] - boxMinX[k], boxMaxY[k] - boxMinY[k]);
+    }
+    if (numObstacles == 0) {
+      minX = minY = maxX = maxY = 0;
+    }
+    originX = minX;
+    originY = minY;
+    cellSize = (float) Math.max(1, sumExtent / Math.max(1, numObstacles));
+    long maxCells = Math.max(1024, (long) MAX_CELLS_PER_OBSTACLE * numObstacles);
+    while ((long) numCells(maxX - minX) * numCells(maxY - minY) > maxCells) {
+      cellSize *= 2;
+    }
+    numCellsX = numCells(maxX - minX);
+    numCellsY = numCells(maxY - minY);
+
+    // Counting sort of the (cell, obstacle) entries by cell, in obstacle order
+    cellStart = new int[numCellsX * numCellsY + 1];
+    int numEntries = 0;
+    for (int k = 0; k < numObstacles; k++) {
+      firstCellX[k] = cellX(boxMinX[k]);
+      firstCellY[k] = cellY(boxMinY[k]);
+      for (int cy = firstCellY[k], lastY = cellY(boxMaxY[k]); cy <= lastY; cy++) {
+        for (int cx = firstCellX[k], lastX = cellX(boxMaxX[k]); cx <= lastX; cx++) {
+          cellStart[cy * numCellsX + cx + 1]++;
+          numEntries++;
+        }
+      }
+    }
+    for (int c = 0; c < numCellsX * numCellsY; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellObstacles = new int[numEntries];
+    int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+    for (int k = 0; k < numObstacles; k++) {
+      for (int cy = firstCellY[k], lastY = cellY(boxMaxY[k]); cy <= lastY; cy++) {
+        for (int cx = firstCellX[k], lastX = cellX(boxMaxX[k]); cx <= lastX; cx++) {
+          cellObstacles[fill[cy * numCellsX + cx]++] = k;
+        }
+      }
+    }
+    built = true;
+  }
+
+  /**
+   * Detect the earliest collision of a moving point with the obstacles,
+   * within the given timeLimit.
+   * If collision is detected within the timeLimit, compute collision time and
+   * response in the given CollisionResponse object. Otherwise, set collision time
+   * to infinity. Of simultaneous collisions, the one of the lower obstacle
+   * index is taken.
+   *
+   * @param pointX    : x-position of the center of the point.
+   * @param pointY    : y-position of the center of the point.
+   * @param speedX    : speed in x-direction.
+   * @param speedY    : speed in y-direction.
+   * @param radius    : radius of the point. Zero for a true point.
+   * @param timeLimit : max time to detect collision, in (0, 1] range.
+   * @param response  : If collision is detected, update the collision time and response.
+   *                  Otherwise, set collision time to infinity.
+   * @param scratch   : working copies, owned by the calling thread.
+   * @throws IllegalStateException if the field is not built.
+   */
+  public void detect(
+      float pointX, float pointY, float speedX, float speedY, float radius,
+      float timeLimit, CollisionResponse response, CollisionScratch scratch) {
+    if (!built) {
+      throw new IllegalStateException("Obstacle field is not built");
+    }
+    response.reset();
+    float queryMinX = SweptBox.min(pointX, speedX, radius, timeLimit);
+    float queryMinY = SweptBox.min(pointY, speedY, radius, timeLimit);
+    float queryMaxX = SweptBox.max(pointX, speedX, radius, timeLimit);
+    float queryMaxY = SweptBox.max(pointY, speedY, radius, timeLimit);
+    int cellX1 = cellX(queryMinX);
+    int cellY1 = cellY(queryMinY);
+    int cellX2 = cellX(queryMaxX);
+    int cellY2 = cellY(queryMaxY);
+    CollisionResponse candidate = scratch.obstacleResponse;
+    int bestObstacle = Integer.MAX_VALUE;
+    for (int cy = cellY1; cy <= cellY2; cy++) {
+      for (int cx = cellX1; cx <= cellX2; cx++) {
+        int cell = cy * numCellsX + cx;
+        for (int e = cellStart[cell], end = cellStart[cell + 1]; e < end; e++) {
+          int k = cellObstacles[e];
+          if (boxMinX[k] > queryMaxX || queryMinX > boxMaxX[k]
+              || boxMinY[k] > queryMaxY || queryMinY > boxMaxY[k]) {
+            continue;
+          }
+          // Test each obstacle once, from its first cell within the query
+          if (cx != Math.max(firstCellX[k], cellX1) || cy != Math.max(firstCellY[k], cellY1)) {
+            continue;
+          }
+          if (k < numSegments) {
+            CollisionPhysics.pointIntersectsLineSegment(
+                pointX, pointY, speedX, speedY, radius,
+                segmentX1[k], segmentY1[k], segmentX2[k], segmentY2[k],
+                timeLimit, candidate, scratch);
+          } else {
+            int p = k - numSegments;
+            CollisionPhysics.pointIntersectsPoint(
+                pointX, pointY, speedX, speedY, radius,
+                pegX[p], pegY[p], pegRadius[p],
+                timeLimit, candidate, scratch);
+          }
+          if (candidate.t < response.t || (candidate.t == response.t && k < bestObstacle)) {
+            response.copy(candidate);
+            bestObstacle = k;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the number of segments.
+   */
+  public int getNumSegments() {
+    return numSegments;
+  }
+
+  /**
+   * Return the x of the beginning point of segment k.
+   */
+  public float getSegmentX1(int k) {
+    return segmentX1[k];
+  }
+
+  /**
+   * Return the y of the beginning point of segment k.
+   */
+  public float getSegmentY1(int k) {
+    return segmentY1[k];
+  }
+
+  /**
+   * Return the x of the ending point of segment k.
+   */
+  public float getSegmentX2(int k) {
+    return segmentX2[k];
+  }
+
+  /**
+   * Return the y of the ending point of segment k.
+   */
+  public float getSegmentY2(int k) {
+    return segmentY2[k];
+  }
+
+  /**
+   * Return the number of pegs.
+   */
+  public int getNumPegs() {
+    return numPegs;
+  }
+
+  /**
+   * Return the center x of peg k.
+   */
+  public float getPegX(int k) {
+    return pegX[k];
+  }
+
+  /**
+   * Return the center y of peg k.
+   */
+  public float getPegY(int k) {
+    return pegY[k];
+  }
+
+  /**
+   * Return the radius of peg k.
+   */
+  public float getPegRadius(int k) {
+    return pegRadius[k];
+  }
+
+  private int numCells(float extent) {
+    return Math.max(1, (int) (extent / cellSize) + 1);
+  }
+
+  // Cell of a coordinate, clamped to the grid (the border cells also
+  // cover the space around it, where there is no obstacle)
+  private int cellX(float x) {
+    int cell = (int) Math.floor((x - originX) / cellSize);
+    return Math.max(0, Math.min(numCellsX - 1, cell));
+  }
+
+  private int cellY(float y) {
+    int cell = (int) Math.floor((y - originY) / cellSize);
+    return Math.max(0, Math.min(numCellsY - 1, cell));
+  }
+
+  private void checkNotBuilt() {
+    if (built) {
+      throw new IllegalStateException("Obstacle field is already built");
+    }
+  }
+}
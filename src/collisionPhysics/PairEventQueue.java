@@ -0,0 +1,158 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * A min-heap of predicted ball-ball collisions, ordered by absolute
+ * simulation time.
+ * <p>
+ * Each event records the velocity versions of its two balls when it was
+ * predicted. A ball's version changes with its velocity, which makes all
+ * the events predicted with the old velocity stale at once, without
+ * searching for them: the reader skips an event whose versions no longer
+ * match (as in EventDrivenEngine).
+ * <p>
+ * Events at the same time are ordered by their balls, so that the order of
+ * the pushes (e.g. the pair order of the broad-phase) does not matter.
+ * The backing arrays are re-used between steps to avoid repeatedly
+ * allocating objects.
+ */
+public class PairEventQueue {
+  private double[] times = new double[16];
+  private int[] firsts = new int[16];
+  private int[] seconds = new int[16];
+  private int[] firstVersions = new int[16];
+  private int[] secondVersions = new int[16];
+  private int size;
+
+  /**
+   * Remove all the events, keeping the backing arrays.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Return the number of events, including the stale ones.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Add the predicted collision of balls i and j, i < j.
+   *
+   * @param time     : absolute time of the collision.
+   * @param i        : the first ball.
+   * @param j        : the second ball.
+   * @param versionI : velocity version of ball i at the prediction.
+   * @param versionJ : velocity version of ball j at the prediction.
+   */
+  public void push(double time, int i, int j, int versionI, int versionJ) {
+    if (size == times.length) {
+      int capacity = size * 2;
+      times = Arrays.copyOf(times, capacity);
+      firsts = Arrays.copyOf(firsts, capacity);
+      seconds = Arrays.copyOf(seconds, capacity);
+      firstVersions = Arrays.copyOf(firstVersions, capacity);
+      secondVersions = Arrays.copyOf(secondVersions, capacity);
+    }
+    // Sift up from the new leaf
+    int k = size++;
+    while (k > 0) {
+      int parent = (k - 1) / 2;
+      if (precedes(parent, time, i, j)) {
+        break;
+      }
+      move(parent, k);
+      k = parent;
+    }
+    set(k, time, i, j, versionI, versionJ);
+  }
+
+  /**
+   * Return the time of the earliest event. The queue must not be empty.
+   */
+  public double peekTime() {
+    return times[0];
+  }
+
+  /**
+   * Return the first ball of the earliest event.
+   */
+  public int peekFirst() {
+    return firsts[0];
+  }
+
+  /**
+   * Return the second ball of the earliest event.
+   */
+  public int peekSecond() {
+    return seconds[0];
+  }
+
+  /**
+   * Return true if the velocity versions of the earliest event match the
+   * given current versions of the balls.
+   */
+  public boolean isPeekValid(int[] versions) {
+    return firstVersions[0] == versions[firsts[0]] && secondVersions[0] == versions[seconds[0]];
+  }
+
+  /**
+   * Remove the earliest event.
+   */
+  public void pop() {
+    int last = --size;
+    if (last == 0) {
+      return;
+    }
+    // Sift the last event down from the root
+    double time = times[last];
+    int first = firsts[last];
+    int second = seconds[last];
+    int k = 0;
+    while (true) {
+      int child = 2 * k + 1;
+      if (child >= last) {
+        break;
+      }
+      if (child + 1 < last && !precedes(child, times[child + 1], firsts[child + 1],
+          seconds[child + 1])) {
+        child++;
+      }
+      if (!precedes(child, time, first, second)) {
+        break;
+      }
+      move(child, k);
+      k = child;
+    }
+    set(k, time, first, second, firstVersions[last], secondVersions[last]);
+  }
+
+  /**
+   * Return true if the event at index k of the heap comes before (or with)
+   * the given event: by time, then by first and second ball.
+   */
+  private boolean precedes(int k, double time, int i, int j) {
+    if (times[k] != time) {
+      return times[k] < time;
+    }
+    if (firsts[k] != i) {
+      return firsts[k] < i;
+    }
+    return seconds[k] <= j;
+  }
+
+  private void move(int from, int to) {
+    set(to, times[from], firsts[from], seconds[from], firstVersions[from], secondVersions[from]);
+  }
+
+  private void set(int k, double time, int i, int j, int versionI, int versionJ) {
+    times[k] = time;
+    firsts[k] = i;
+    seconds[k] = j;
+    firstVersions[k] = versionI;
+    secondVersions[k] = versionJ;
+  }
+}
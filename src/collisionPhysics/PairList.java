@@ -0,0 +1,80 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of candidate pairs (i, j), i < j, produced by a BroadPhase.
+ * <p>
+ * Each pair is packed into a single long (i in the high word, j in the low
+ * word), so that sorting the backing array orders the pairs exactly like the
+ * brute-force i/j double loop. The backing array is re-used between calls
+ * to avoid repeatedly allocating objects.
+ */
+public class PairList {
+  private long[] pairs;
+  private int size;
+
+  /**
+   * Constructor with an initial capacity.
+   *
+   * @param initialCapacity : number of pairs to reserve room for.
+   */
+  public PairList(int initialCapacity) {
+    pairs = new long[Math.max(initialCapacity, 16)];
+  }
+
+  /**
+   * Constructor with a default capacity.
+   */
+  public PairList() {
+    this(256);
+  }
+
+  /**
+   * Remove all pairs, keeping the backing array.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Append the pair (i, j). The caller guarantees that i < j.
+   *
+   * @param i : index of the first ball.
+   * @param j : index of the second ball.
+   */
+  public void add(int i, int j) {
+    if (size == pairs.length) {
+      pairs = Arrays.copyOf(pairs, size * 2);
+    }
+    pairs[size++] = ((long) i << 32) | (j & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Sort the pairs in ascending (i, j) order.
+   */
+  public void sort() {
+    Arrays.sort(pairs, 0, size);
+  }
+
+  /**
+   * Return the number of pairs.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Return the first (smaller) ball index of the k-th pair.
+   */
+  public int first(int k) {
+    return (int) (pairs[k] >>> 32);
+  }
+
+  /**
+   * Return the second (larger) ball index of the k-th pair.
+   */
+  public int second(int k) {
+    return (int) pairs[k];
+  }
+}
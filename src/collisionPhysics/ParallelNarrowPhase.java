@@ -0,0 +1,137 @@
+package collisionphysics;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork-join narrow phase, computing the collision times of the candidate
+ * pairs of a BroadPhase, e.g. to fill a cache of predictions.
+ * <p>
+ * The pair tests are independent. The pair list is split into contiguous
+ * partitions, and each partition writes the times of its own pairs only:
+ * no partition writes into the state of a ball or into a shared response,
+ * and there is no reduction across the partitions. The times are then the
+ * same as those of a sequential scan, whatever the number of threads.
+ */
+public class ParallelNarrowPhase {
+  // Min number of pairs per partition, below which forking does not pay off
+  private static final int MIN_PARTITION_SIZE = 1024;
+
+  private final ForkJoinPool pool;
+  private Partition[] partitions = new Partition[0];
+  private final Fork fork = new Fork();
+
+  // The state of the current prediction, read by the partitions
+  private float[] x, y, speedX, speedY, radius;
+  private PairList pairs;
+  private float timeLimit;
+  private float[] times;
+
+  /**
+   * Constructor using the common fork-join pool.
+   */
+  public ParallelNarrowPhase() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pool : the fork-join pool to run the partitions in.
+   */
+  public ParallelNarrowPhase(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Compute the collision time of each of the given pairs, within timeLimit,
+   * as pointIntersectsMovingPointTime() would.
+   *
+   * @param x         : x-positions of the balls.
+   * @param y         : y-positions of the balls.
+   * @param speedX    : speeds in x-direction.
+   * @param speedY    : speeds in y-direction.
+   * @param radius    : radii of the balls.
+   * @param pairs     : the pairs.
+   * @param timeLimit : max time to detect collision.
+   * @param times     : set to the collision time of each pair, or infinity
+   *                  (Float.MAX_VALUE) if not within timeLimit.
+   */
+  public void predictTimes(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                           PairList pairs, float timeLimit, float[] times) {
+    this.x = x;
+    this.y = y;
+    this.speedX = speedX;
+    this.speedY = speedY;
+    this.radius = radius;
+    this.pairs = pairs;
+    this.timeLimit = timeLimit;
+    this.times = times;
+
+    // Partition the pair list, a few partitions per worker for load balance
+    int numPairs = pairs.size();
+    int numPartitions = Math.max(1, Math.min(4 * pool.getParallelism(),
+        numPairs / MIN_PARTITION_SIZE));
+    if (partitions.length < numPartitions) {
+      Partition[] newPartitions = new Partition[numPartitions];
+      System.arraycopy(partitions, 0, newPartitions, 0, partitions.length);
+      for (int p = partitions.length; p < numPartitions; p++) {
+        newPartitions[p] = new Partition();
+      }
+      partitions = newPartitions;
+    }
+    for (int p = 0; p < numPartitions; p++) {
+      Partition partition = partitions[p];
+      partition.reinitialize();
+      partition.from = (int) ((long) numPairs * p / numPartitions);
+      partition.to = (int) ((long) numPairs * (p + 1) / numPartitions);
+    }
+    if (numPartitions == 1) {
+      partitions[0].compute();
+    } else {
+      fork.reinitialize();
+      fork.numPartitions = numPartitions;
+      pool.invoke(fork);
+    }
+    this.times = null;
+  }
+
+  /**
+   * Runs all the partitions as subtasks of the pool.
+   */
+  private class Fork extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    int numPartitions;
+
+    @Override
+    protected void compute() {
+      for (int p = 1; p < numPartitions; p++) {
+        partitions[p].fork();
+      }
+      partitions[0].compute();
+      for (int p = 1; p < numPartitions; p++) {
+        partitions[p].join();
+      }
+    }
+  }
+
+  /**
+   * A contiguous range [from, to) of the pair list.
+   */
+  private class Partition extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    int from, to;
+
+    @Override
+    protected void compute() {
+      for (int k = from; k < to; k++) {
+        int i = pairs.first(k);
+        int j = pairs.second(k);
+        times[k] = CollisionPhysics.pointIntersectsMovingPointTime(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            x[j], y[j], speedX[j], speedY[j], radius[j],
+            timeLimit);
+      }
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * An indexed min-heap of predicted event times, at most one per ball, e.g.
+ * the time at which each ball will hit the container.
+ * <p>
+ * The times are absolute simulation times (see Simulation.getTime()), so a
+ * prediction stays valid as long as its ball moves straight, whatever the
+ * number of steps in between. Setting or removing the prediction of a ball
+ * costs O(log n); listing the balls due by a deadline costs O(k) for k due
+ * balls, by walking the heap down to the first later times only.
+ */
+public class PredictionQueue {
+  private static final int ABSENT = -1;
+
+  private double[] times = new double[0];  // By ball
+  private int[] positions = new int[0];    // By ball, index in heap or ABSENT
+  private int[] heap = new int[0];         // Balls, heap-ordered by time
+  private int[] stack = new int[0];        // For collectDue()
+  private int size;
+
+  /**
+   * Make room for the balls 0 to capacity - 1.
+   */
+  public void ensureCapacity(int capacity) {
+    if (positions.length < capacity) {
+      int oldCapacity = positions.length;
+      times = Arrays.copyOf(times, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+      Arrays.fill(positions, oldCapacity, capacity, ABSENT);
+      heap = Arrays.copyOf(heap, capacity);
+      stack = new int[capacity];
+    }
+  }
+
+  /**
+   * Remove all the predictions.
+   */
+  public void clear() {
+    for (int k = 0; k < size; k++) {
+      positions[heap[k]] = ABSENT;
+    }
+    size = 0;
+  }
+
+  /**
+   * Return the number of predictions.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Set (or replace) the predicted time of the given ball.
+   */
+  public void set(int ball, double time) {
+    int k = positions[ball];
+    times[ball] = time;
+    if (k == ABSENT) {
+      k = size++;
+      heap[k] = ball;
+      positions[ball] = k;
+    }
+    if (!siftUp(k)) {
+      siftDown(k);
+    }
+  }
+
+  /**
+   * Remove the prediction of the given ball, if any.
+   */
+  public void remove(int ball) {
+    int k = positions[ball];
+    if (k == ABSENT) {
+      return;
+    }
+    positions[ball] = ABSENT;
+    int last = heap[--size];
+    if (k < size) {
+      heap[k] = last;
+      positions[last] = k;
+      if (!siftUp(k)) {
+        siftDown(k);
+      }
+    }
+  }
+
+  /**
+   * Return the predicted time of the given ball, or infinity if none.
+   */
+  public double getTime(int ball) {
+    return (positions[ball] == ABSENT) ? Double.POSITIVE_INFINITY : times[ball];
+  }
+
+  /**
+   * List the balls predicted at or before the deadline, in no particular
+   * order.
+   *
+   * @param deadline : the latest time listed.
+   * @param due      : filled with the balls due, from index 0.
+   * @return the number of balls due.
+   */
+  public int collectDue(double deadline, int[] due) {
+    int count = 0;
+    int top = 0;
+    if (size > 0) {
+      stack[top++] = 0;
+    }
+    while (top > 0) {
+      int k = stack[--top];
+      int ball = heap[k];
+      if (times[ball] <= deadline) {
+        due[count++] = ball;
+        // The children are not earlier than their parent
+        int child = 2 * k + 1;
+        if (child < size) {
+          stack[top++] = child;
+        }
+        if (child + 1 < size) {
+          stack[top++] = child + 1;
+        }
+      }
+    }
+    return count;
+  }
+
+  private boolean siftUp(int k) {
+    int ball = heap[k];
+    double time = times[ball];
+    int start = k;
+    while (k > 0) {
+      int parent = (k - 1) / 2;
+      int parentBall = heap[parent];
+      if (times[parentBall] <= time) {
+        break;
+      }
+      heap[k] = parentBall;
+      positions[parentBall] = k;
+      k = parent;
+    }
+    heap[k] = ball;
+    positions[ball] = k;
+    return k != start;
+  }
+
+  private void siftDown(int k) {
+    int ball = heap[k];
+    double time = times[ball];
+    while (true) {
+      int child = 2 * k + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && times[heap[child + 1]] < times[heap[child]]) {
+        child++;
+      }
+      int childBall = heap[child];
+      if (times[childBall] >= time) {
+        break;
+      }
+      heap[k] = childBall;
+      positions[childBall] = k;
+      k = child;
+    }
+    heap[k] = ball;
+    positions[ball] = k;
+  }
+}
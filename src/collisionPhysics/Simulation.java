@@ -0,0 +1,1072 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * The headless simulation: the balls bouncing inside a circular container,
+ * with collision detection and response, but no display.
+ * <p>
+ * A Simulation owns the balls (in a BallStore) and the container geometry,
+ * and advances them with step(). It has no AWT or Swing dependency, so it
+ * can run on a server, in a benchmark or in a batch job; a display (e.g.
+ * BallWorld) is a view that steps it and draws its snapshot().
+ * <p>
+ * The simulation is deterministic: the same balls and inputs give
+ * bit-identical trajectories, whatever the broad-phase and with or without
+ * the multi-core prediction. Each candidate pair is tested on its own, with
+ * no floating-point sums over the pairs (the multi-core prediction only
+ * fills in the time of each pair). Simultaneous collisions are ordered by
+ * ball index, never by the order in which the broad-phase found them: the
+ * cached pair collisions come out of the PairEventQueue by (time, first
+ * ball, second ball), the due pairs of a sub-step are checked in (i, j)
+ * order, and the event-driven engine orders its events the same way.
+ * <p>
+ * A Simulation is not thread-safe: step(), addBall(), removeBall() and the
+ * setters must be called from one thread (the game thread). Other threads
+ * read the state through snapshot(), taken on that thread.
+ */
+public class Simulation {
+  private static final float EPSILON_TIME = 1e-2f;  // Threshold for zero time
+  private static final int WALL = -1;  // Partner of a ball-container collision
+  private static final int OBSTACLE = -2;  // Partner of a ball-obstacle collision
+
+  // Collisions within this time after the earliest one are resolved in the
+  // same sub-step, when each is the earliest collision of both its balls.
+  public static final float DEFAULT_BATCH_WINDOW = EPSILON_TIME / 2;
+  // Max sub-steps of one step, which bounds its time however crowded. By
+  // default, a step over budget still moves the balls through all its time
+  // (OverBudgetPolicy.CONTAINER_ONLY), so the clock and the motion agree.
+  public static final int DEFAULT_SUB_STEP_BUDGET = 256;
+  // Max events of one step of the event-driven engine, which resolves one
+  // collision per event instead of a batch per sub-step
+  public static final int DEFAULT_EVENT_BUDGET = 1 << 20;
+  // A cached collision predicted within this time after the sub-step is
+  // checked again exactly, for the rounding of the moves since the prediction
+  private static final float PREDICTION_MARGIN = EPSILON_TIME;
+  // Obstacle hits are predicted this far ahead: a ball that hits none
+  // within it is checked again after that time
+  private static final float OBSTACLE_HORIZON = 1f;
+
+  // Multi-core prediction of the candidate pairs, used above
+  // PARALLEL_MIN_PAIRS candidate pairs.
+  private static final int PARALLEL_MIN_PAIRS = 8192;
+
+  // Use the SIMD kernels when the JDK Vector API module is present
+  // (--add-modules jdk.incubator.vector), the scalar path otherwise.
+  private static final boolean USE_VECTOR_KERNELS =
+      ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+  private final BallStore balls;
+  // Positions at the start of the last step, for interpolated rendering
+  private float[] previousX = new float[0];
+  private float[] previousY = new float[0];
+  private float containerCenterX, containerCenterY, containerRadius;
+  private long stepCount;  // Number of steps taken
+  private double time;  // Simulation clock, the sum of the time-steps
+  private final SimulationMetrics metrics = new SimulationMetrics();
+  private CollisionLog collisionLog;  // null when not logging
+  private boolean keyframeDue;  // The balls changed outside of the collisions
+
+  // Broad-phase collision filter, and its working list of candidate pairs.
+  private BroadPhase broadPhase = new SpatialHashBroadPhase();
+  private final PairList candidatePairs = new PairList();
+  private EventDrivenEngine eventEngine;  // null to use the sub-step loop
+  private ParallelNarrowPhase parallelNarrowPhase;  // null to stay on the calling thread
+  private float batchWindow = DEFAULT_BATCH_WINDOW;
+  private int subStepBudget = DEFAULT_SUB_STEP_BUDGET;
+  private int eventBudget = DEFAULT_EVENT_BUDGET;
+  private OverBudgetPolicy overBudgetPolicy = OverBudgetPolicy.CONTAINER_ONLY;
+
+  // For collision detection and response
+  // Maintain the response of the earliest collision detected
+  // by each ball. Only the first collision matters!
+  private float[] earliestTs = new float[0];
+  private float[] earliestSpeedXs = new float[0];
+  private float[] earliestSpeedYs = new float[0];
+  private int[] earliestPartners = new int[0];  // The other ball, WALL or OBSTACLE
+
+  // Cached container and obstacle hits: the predicted absolute time of each
+  // ball's next hit, kept until the ball collides or the container changes
+  private ObstacleField obstacles;  // null for none
+  private final PredictionQueue wallHits = new PredictionQueue();
+  private int[] staleWallHits = new int[0];  // Balls to predict again
+  private boolean[] isStaleWallHit = new boolean[0];
+  private int numStaleWallHits;
+  private boolean allWallHitsStale = true;
+  private int[] dueBalls = new int[0];
+  private float[] wallTs = new float[0];
+
+  // Cached ball-ball collisions of the current step: the predicted absolute
+  // time of each candidate pair's collision, kept until one of its balls
+  // changes velocity (its version changes)
+  private final PairEventQueue pairHits = new PairEventQueue();
+  private int[] velocityVersions = new int[0];
+  private int[] changedBalls = new int[0];  // Since the last sub-step
+  private boolean[] isChangedBall = new boolean[0];
+  private int numChangedBalls;
+  private final SweptBoxGrid changedBoxes = new SweptBoxGrid();  // Since the start of the step
+  private int[] overlaps = new int[0];  // Balls to test against a changed ball
+  private int[] gridOverlaps = new int[0];
+  private float[] overlapTs = new float[0];
+  private int[] overlapQueries = new int[0];  // Last query that tested each ball
+  private int numOverlapQueries;
+  private float overlapPadding;  // Motion of the other balls over the prediction margin
+  private final PairList duePairs = new PairList();
+  private float[] pairTs = new float[0];
+
+  // Working copies for computing responses in step(),
+  // to avoid repeatedly allocating objects.
+  private final CollisionResponse thisResponse = new CollisionResponse();
+  private final CollisionResponse anotherResponse = new CollisionResponse();
+  private final CollisionResponse tempResponse = new CollisionResponse();
+  private final CollisionResponse obstacleResponse = new CollisionResponse();
+  private final CollisionScratch scratch = new CollisionScratch();
+
+  /**
+   * Constructor with an empty container.
+   *
+   * @param capacity         : initial number of balls to reserve room for.
+   * @param containerCenterX : center x of the circular container.
+   * @param containerCenterY : center y of the circular container.
+   * @param containerRadius  : radius of the circular container.
+   */
+  public Simulation(int capacity, float containerCenterX, float containerCenterY,
+                    float containerRadius) {
+    balls = new BallStore(capacity);
+    ensureCapacity(capacity);
+    setContainer(containerCenterX, containerCenterY, containerRadius);
+  }
+
+  /**
+   * Add a ball. For user friendliness, the velocity is given in speed and
+   * moveAngle in usual Cartesian coordinates, as for BallStore.add().
+   *
+   * @param x             : center x-position.
+   * @param y             : center y-position.
+   * @param radius        : radius.
+   * @param speed         : magnitude of speed, per step.
+   * @param angleInDegree : direction of movement, counter-clockwise.
+   * @param colorIndex    : palette index of the color.
+   * @return the index of the new ball.
+   */
+  public int addBall(float x, float y, float radius, float speed, float angleInDegree,
+                     int colorIndex) {
+    if (balls.size() == previousX.length) {
+      ensureCapacity(Math.max(16, balls.size() + 1));
+    }
+    int i = balls.add(x, y, radius, speed, angleInDegree, colorIndex);
+    previousX[i] = x;
+    previousY[i] = y;
+    earliestTs[i] = Float.MAX_VALUE;
+    ballChanged(i);
+    return i;
+  }
+
+  /**
+   * Remove ball i. As BallStore.remove(), the last ball takes its index, so
+   * a caller keeping its own data by ball moves the row getBalls().size()
+   * (after the removal) to i. Call it between steps.
+   */
+  public void removeBall(int i) {
+    int last = balls.size() - 1;
+    balls.remove(i);
+    previousX[i] = previousX[last];
+    previousY[i] = previousY[last];
+    earliestTs[i] = earliestTs[last];
+    wallHits.remove(last);
+    if (i != last) {
+      wallHits.remove(i);
+      staleWallHit(i);
+    }
+    keyframeDue = true;
+  }
+
+  /**
+   * Make room for at least the given number of balls, growing all the
+   * per-ball arrays to that or to twice their capacity, whichever is
+   * larger. Adding balls grows them as needed; reserving room beforehand
+   * (e.g. for the peak of an emitter) avoids the copies while running.
+   */
+  public void ensureCapacity(int capacity) {
+    int oldCapacity = previousX.length;
+    if (capacity <= oldCapacity) {
+      return;
+    }
+    capacity = Math.max(capacity, 2 * oldCapacity);
+    balls.ensureCapacity(capacity);
+    previousX = Arrays.copyOf(previousX, capacity);
+    previousY = Arrays.copyOf(previousY, capacity);
+    earliestTs = Arrays.copyOf(earliestTs, capacity);
+    Arrays.fill(earliestTs, oldCapacity, capacity, Float.MAX_VALUE);
+    earliestSpeedXs = Arrays.copyOf(earliestSpeedXs, capacity);
+    earliestSpeedYs = Arrays.copyOf(earliestSpeedYs, capacity);
+    earliestPartners = Arrays.copyOf(earliestPartners, capacity);
+    wallHits.ensureCapacity(capacity);
+    staleWallHits = Arrays.copyOf(staleWallHits, capacity);
+    isStaleWallHit = Arrays.copyOf(isStaleWallHit, capacity);
+    dueBalls = Arrays.copyOf(dueBalls, capacity);
+    wallTs = Arrays.copyOf(wallTs, capacity);
+    velocityVersions = Arrays.copyOf(velocityVersions, capacity);
+    changedBalls = Arrays.copyOf(changedBalls, capacity);
+    isChangedBall = Arrays.copyOf(isChangedBall, capacity);
+    overlaps = Arrays.copyOf(overlaps, capacity);
+    gridOverlaps = Arrays.copyOf(gridOverlaps, capacity);
+    overlapTs = Arrays.copyOf(overlapTs, capacity);
+    overlapQueries = Arrays.copyOf(overlapQueries, capacity);
+  }
+
+  /**
+   * Notify that the position or velocity of ball i was changed outside
+   * step() (e.g. through getBalls()), so that its cached predictions are
+   * no longer valid.
+   */
+  public void ballChanged(int i) {
+    staleWallHit(i);
+    keyframeDue = true;
+  }
+
+  /**
+   * Mark the cached container hit of ball i as stale.
+   */
+  private void staleWallHit(int i) {
+    if (!isStaleWallHit[i]) {
+      isStaleWallHit[i] = true;
+      staleWallHits[numStaleWallHits++] = i;
+    }
+  }
+
+  /**
+   * Take the balls just written into getBalls() as restored state (e.g. by
+   * Checkpoint), with the given container and clock. The previous positions
+   * are the current ones, and all the cached predictions are dropped.
+   */
+  void restore(float containerCenterX, float containerCenterY, float containerRadius,
+               double time, long stepCount) {
+    int count = balls.size();
+    System.arraycopy(balls.x, 0, previousX, 0, count);
+    System.arraycopy(balls.y, 0, previousY, 0, count);
+    Arrays.fill(earliestTs, 0, count, Float.MAX_VALUE);
+    this.time = time;
+    this.stepCount = stepCount;
+    setContainer(containerCenterX, containerCenterY, containerRadius);
+    keyframeDue = true;
+  }
+
+  /**
+   * Set or reset the container (e.g. to match the screen).
+   */
+  public void setContainer(float centerX, float centerY, float radius) {
+    this.containerCenterX = centerX;
+    this.containerCenterY = centerY;
+    this.containerRadius = radius;
+    allWallHitsStale = true;
+    keyframeDue = true;
+  }
+
+  /**
+   * Select the broad-phase collision filter used by step(), e.g.
+   * SpatialHashBroadPhase for sparse scenes, SweepAndPruneBroadPhase for
+   * dense scenes where the number of balls is close to the capacity, or
+   * AabbTreeBroadPhase when the radii vary widely.
+   *
+   * @param broadPhase : the broad-phase to use from the next step, by the
+   *                   sub-step loop and the event-driven engine alike.
+   */
+  public void setBroadPhase(BroadPhase broadPhase) {
+    this.broadPhase = broadPhase;
+    if (eventEngine != null) {
+      setEventDriven(true);
+    }
+  }
+
+  /**
+   * Switch between the sub-step loop, which rescans all the candidate pairs
+   * after each collision, and the event-driven engine, which only
+   * re-predicts the balls involved in each collision. Both use the
+   * broad-phase of setBroadPhase().
+   *
+   * @param eventDriven : true to use the event-driven engine.
+   */
+  public void setEventDriven(boolean eventDriven) {
+    eventEngine = eventDriven ? new EventDrivenEngine(broadPhase) : null;
+    if (eventEngine != null) {
+      eventEngine.setObstacles(obstacles);
+      eventEngine.setEventBudget(eventBudget);
+    }
+  }
+
+  /**
+   * Set the static obstacles inside the container (e.g. the pegs of a
+   * pachinko), building the field if it is not built yet.
+   *
+   * @param obstacles : the obstacles, or null for none.
+   */
+  public void setObstacles(ObstacleField obstacles) {
+    if (obstacles != null) {
+      obstacles.build();
+    }
+    this.obstacles = obstacles;
+    if (eventEngine != null) {
+      eventEngine.setObstacles(obstacles);
+    }
+    allWallHitsStale = true;
+  }
+
+  /**
+   * Return the static obstacles, or null if none.
+   */
+  public ObstacleField getObstacles() {
+    return obstacles;
+  }
+
+  /**
+   * Start or stop logging the collisions, for replays (see CollisionReplay).
+   * A keyframe of the current state is written at the start of the next
+   * step. The caller closes the log after stopping it.
+   *
+   * @param log : the log to append to, or null to stop logging.
+   */
+  public void setCollisionLog(CollisionLog log) {
+    collisionLog = log;
+    keyframeDue = true;
+  }
+
+  /**
+   * Enable or disable the multi-core prediction: a ParallelNarrowPhase
+   * fills in the collision time of each candidate pair at the start of
+   * each step of the sub-step loop. The search for the earliest
+   * collisions, the responses and the event-driven engine stay on the
+   * calling thread. The results are the same either way.
+   *
+   * @param parallel : true to predict on all the cores when there are many pairs.
+   */
+  public void setParallel(boolean parallel) {
+    parallelNarrowPhase = parallel ? new ParallelNarrowPhase() : null;
+  }
+
+  /**
+   * Set the batch window of the sub-step loop: the collisions within this
+   * time after the earliest one are resolved in the same sub-step, provided
+   * that each is the earliest collision of both its balls. A cluster of
+   * nearly simultaneous collisions then takes one sub-step instead of one
+   * each. The balls of a batched collision are resolved at their own time,
+   * at most window ahead of the others.
+   *
+   * @param window : in [0, 1) range, 0 to resolve the earliest collisions only.
+   */
+  public void setBatchWindow(float window) {
+    this.batchWindow = window;
+  }
+
+  /**
+   * Set the max number of sub-steps of one step, and what to do with the
+   * rest of the step when they run out. The policy also applies when the
+   * event-driven engine runs out of its events (see setEventBudget). The
+   * default is DEFAULT_SUB_STEP_BUDGET with CONTAINER_ONLY.
+   *
+   * @param budget : max sub-steps per step, at least 1.
+   * @param policy : how to spend the time left when the budget runs out.
+   */
+  public void setSubStepBudget(int budget, OverBudgetPolicy policy) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("Sub-step budget must be at least 1: " + budget);
+    }
+    this.subStepBudget = budget;
+    this.overBudgetPolicy = policy;
+  }
+
+  /**
+   * Set the max number of events (collisions) the event-driven engine
+   * resolves in one step. The rest of the step is then spent per the
+   * policy of setSubStepBudget. The default is DEFAULT_EVENT_BUDGET.
+   *
+   * @param budget : max events per step, at least 1.
+   */
+  public void setEventBudget(int budget) {
+    if (budget < 1) {
+      throw new IllegalArgumentException("Event budget must be at least 1: " + budget);
+    }
+    this.eventBudget = budget;
+    if (eventEngine != null) {
+      eventEngine.setEventBudget(budget);
+    }
+  }
+
+  /**
+   * Return the balls. The store is live: it must only be read or modified
+   * on the thread calling step().
+   */
+  public BallStore getBalls() {
+    return balls;
+  }
+
+  /**
+   * Return the number of balls the simulation has room for before growing.
+   */
+  public int getCapacity() {
+    return balls.capacity();
+  }
+
+  /**
+   * Return the center x of the circular container.
+   */
+  public float getContainerCenterX() {
+    return containerCenterX;
+  }
+
+  /**
+   * Return the center y of the circular container.
+   */
+  public float getContainerCenterY() {
+    return containerCenterY;
+  }
+
+  /**
+   * Return the radius of the circular container.
+   */
+  public float getContainerRadius() {
+    return containerRadius;
+  }
+
+  /**
+   * Return the metrics of the steps, which the display may also record its
+   * frames into.
+   */
+  public SimulationMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Return the simulation clock: the sum of the time-steps taken.
+   */
+  public double getTime() {
+    return time;
+  }
+
+  /**
+   * Return the number of steps taken.
+   */
+  public long getStepCount() {
+    return stepCount;
+  }
+
+  /**
+   * Advance the simulation by dt, with proper collision detection and
+   * response.
+   *
+   * @param dt : length of the step, in (0, 1] range. The speeds are per unit of time.
+   */
+  public void step(float dt) {
+    long startNanos = System.nanoTime();
+    if (collisionLog != null) {
+      collisionLog.beginStep(this, keyframeDue);
+      keyframeDue = false;
+    }
+    stepCount++;
+    double stepStartTime = time;
+    time += dt;
+    int count = balls.size();
+    System.arraycopy(balls.x, 0, previousX, 0, count);
+    System.arraycopy(balls.y, 0, previousY, 0, count);
+    if (eventEngine != null) {
+      // Resolve the collisions of the whole step in time order
+      eventEngine.setCollisionLog(collisionLog, stepStartTime);
+      eventEngine.advance(balls.x, balls.y, balls.speedX, balls.speedY, balls.radius,
+          count, containerCenterX, containerCenterY, containerRadius, dt);
+      int numCollisions = eventEngine.getCollisions();
+      boolean overBudget = eventEngine.isOverBudget();
+      if (overBudget) {
+        keyframeDue = true;  // The balls stop, or pass through each other
+        if (overBudgetPolicy == OverBudgetPolicy.CONTAINER_ONLY) {
+          float endTime = eventEngine.getEndTime();
+          numCollisions += finishInContainer(stepStartTime + endTime, dt - endTime);
+        }
+      }
+      metrics.recordStep(eventEngine.getProcessedEvents(), eventEngine.getCandidatePairs(),
+          eventEngine.getPairTests(), numCollisions, overBudget,
+          System.nanoTime() - startNanos);
+      allWallHitsStale = true;  // Not maintained by the engine
+      if (collisionLog != null) {
+        collisionLog.endStep(time);
+      }
+      return;
+    }
+
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    Arrays.fill(earliestTs, 0, count, Float.MAX_VALUE);
+
+    float timeLeft = dt;  // One step to begin with
+    int subSteps = 0;
+    int numCollisions = 0;
+    boolean overBudget = false;
+
+    // Predict the collisions of the candidate pairs over the whole step.
+    // The later sub-steps only predict again the pairs of the balls that
+    // collide, and check the pairs predicted to collide next.
+    broadPhase.findPairs(x, y, speedX, speedY, radius, count, dt, candidatePairs);
+    int numCandidatePairs = candidatePairs.size();
+    int numPairTests = predictCandidatePairs(stepStartTime, dt);
+    resetChangedBoxes(dt);
+
+    // Repeat until the step is up, or the budget runs out
+    do {
+      if (subSteps == subStepBudget) {
+        overBudget = true;
+        keyframeDue = true;  // The balls stop, or pass through each other
+        if (overBudgetPolicy == OverBudgetPolicy.CONTAINER_ONLY) {
+          numCollisions += finishInContainer(stepStartTime + (dt - timeLeft), timeLeft);
+          allWallHitsStale = true;
+        }
+        break;
+      }
+      subSteps++;
+      // Find the earliest collision up to timeLeft among all objects,
+      // and those within the batch window after it
+      float tMin = timeLeft;
+      double now = stepStartTime + (dt - timeLeft);
+      updateWallHits(now);
+      numPairTests += predictChangedPairs(now, timeLeft);
+      numPairTests += collectDuePairs(now, timeLeft);
+
+      // Check collision between two balls, in the same (i, j) order as a
+      // full double loop, so that ties are broken the same way. Each due
+      // pair is predicted again from the current positions.
+      float predictionLimit = timeLeft + PREDICTION_MARGIN;
+      for (int k = 0; k < duePairs.size(); k++) {
+        int i = duePairs.first(k);
+        int j = duePairs.second(k);
+        CollisionPhysics.pointIntersectsMovingPoint(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            x[j], y[j], speedX[j], speedY[j], radius[j],
+            predictionLimit, thisResponse, anotherResponse, scratch);
+        if (thisResponse.t <= predictionLimit) {
+          pairHits.push(now + thisResponse.t, i, j, velocityVersions[i], velocityVersions[j]);
+        }
+        if (thisResponse.t > Math.min(tMin + batchWindow, timeLeft)) {
+          continue;
+        }
+        if (anotherResponse.t < earliestTs[j]) {
+          setEarliest(j, anotherResponse, i);
+        }
+        if (thisResponse.t < earliestTs[i]) {
+          setEarliest(i, thisResponse, j);
+        }
+        if (earliestTs[i] < tMin) {
+          tMin = earliestTs[i];
+        }
+      }
+      numPairTests += duePairs.size();
+      // Check collision between the balls and the container, for the balls
+      // whose cached hit is due: predict again from their current position,
+      // and compute the response of those hitting within the limit.
+      int numDue = wallHits.collectDue(
+          now + Math.min(tMin + batchWindow, timeLeft) + PREDICTION_MARGIN, dueBalls);
+      for (int d = 0; d < numDue; d++) {
+        int i = dueBalls[d];
+        float limit = Math.min(tMin + batchWindow, timeLeft);
+        float t = CollisionPhysics.pointIntersectsCircleOuterDetection(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            containerCenterX, containerCenterY, containerRadius);
+        if (obstacles != null) {
+          t = Math.min(t, predictObstacleHit(i));
+        }
+        wallHits.set(i, now + t);
+        if (t <= limit) {
+          CollisionPhysics.pointIntersectsCircleOuter(x[i], y[i], speedX[i], speedY[i], radius[i],
+              containerCenterX, containerCenterY, containerRadius, limit, tempResponse, scratch);
+          if (tempResponse.t < earliestTs[i]) {
+            setEarliest(i, tempResponse, WALL);
+          }
+          if (obstacles != null && obstacleResponse.t <= limit
+              && obstacleResponse.t < earliestTs[i]) {
+            setEarliest(i, obstacleResponse, OBSTACLE);
+          }
+        }
+        if (earliestTs[i] < tMin) {
+          tMin = earliestTs[i];
+        }
+      }
+
+      // Update all the balls up to the detected earliest collision time tMin,
+      // or timeLeft if there is no collision. The collisions in the batch
+      // window are resolved too, when they are the earliest of both balls.
+      float batchLimit = Math.min(tMin + batchWindow, timeLeft);
+      for (int i = 0; i < count; i++) {
+        float t = earliestTs[i];
+        if (t <= tMin || (t <= batchLimit && isMutual(i, batchLimit))) {
+          // This ball collided, get the new position and speed
+          tempResponse.t = earliestTs[i];
+          x[i] = tempResponse.getNewX(x[i], speedX[i]);
+          y[i] = tempResponse.getNewY(y[i], speedY[i]);
+          speedX[i] = earliestSpeedXs[i];
+          speedY[i] = earliestSpeedYs[i];
+          numCollisions++;
+          if (collisionLog != null) {
+            collisionLog.append(now + t, i, earliestPartners[i], x[i], y[i], speedX[i], speedY[i]);
+          }
+          staleWallHit(i);
+          velocityVersions[i]++;
+          isChangedBall[i] = true;
+          changedBalls[numChangedBalls++] = i;
+        } else {
+          // This ball does not involve in a collision. Move straight.
+          x[i] += speedX[i] * tMin;
+          y[i] += speedY[i] * tMin;
+        }
+      }
+      // Clear for the next collision detection
+      Arrays.fill(earliestTs, 0, count, Float.MAX_VALUE);
+
+      timeLeft -= tMin;                // Subtract the time consumed and repeat
+    } while (timeLeft > EPSILON_TIME);  // Ignore remaining time less than threshold
+    if (collisionLog != null) {
+      collisionLog.endStep(time);
+    }
+    metrics.recordStep(subSteps, numCandidatePairs, numPairTests, numCollisions, overBudget,
+        System.nanoTime() - startNanos);
+    clearChangedBalls();
+  }
+
+  /**
+   * Fill the cache of ball-ball collisions with the predictions of the
+   * candidate pairs, from the start of the step.
+   *
+   * @return the number of pairs tested.
+   */
+  private int predictCandidatePairs(double now, float timeLeft) {
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    int numPairs = candidatePairs.size();
+    float predictionLimit = timeLeft + PREDICTION_MARGIN;
+    if (pairTs.length < numPairs) {
+      pairTs = new float[Math.max(numPairs, 2 * pairTs.length)];
+    }
+    if (parallelNarrowPhase != null && numPairs >= PARALLEL_MIN_PAIRS) {
+      parallelNarrowPhase.predictTimes(x, y, speedX, speedY, radius, candidatePairs,
+          predictionLimit, pairTs);
+    } else {
+      for (int k = 0; k < numPairs; k++) {
+        int i = candidatePairs.first(k);
+        int j = candidatePairs.second(k);
+        pairTs[k] = CollisionPhysics.pointIntersectsMovingPointTime(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            x[j], y[j], speedX[j], speedY[j], radius[j],
+            predictionLimit);
+      }
+    }
+    pairHits.clear();
+    for (int k = 0; k < numPairs; k++) {
+      if (pairTs[k] <= predictionLimit) {
+        int i = candidatePairs.first(k);
+        int j = candidatePairs.second(k);
+        pairHits.push(now + pairTs[k], i, j, velocityVersions[i], velocityVersions[j]);
+      }
+    }
+    return numPairs;
+  }
+
+  /**
+   * Empty the swept boxes of the changed balls for a new step, sizing the
+   * cells and the padding of the queries from the balls at its start.
+   */
+  private void resetChangedBoxes(float dt) {
+    int count = balls.size();
+    float maxRadius = 0;
+    float maxSpeed = 0;
+    for (int i = 0; i < count; i++) {
+      maxRadius = Math.max(maxRadius, balls.radius[i]);
+      maxSpeed = Math.max(maxSpeed, Math.max(Math.abs(balls.speedX[i]), Math.abs(balls.speedY[i])));
+    }
+    changedBoxes.reset(count, 2 * (maxRadius + SweptBox.MARGIN) + maxSpeed * dt);
+    overlapPadding = maxSpeed * PREDICTION_MARGIN;
+  }
+
+  /**
+   * Predict again the collisions of the balls changed by the last sub-step:
+   * their new paths may cross balls that were not candidates at the start
+   * of the step. The other balls are found by their swept boxes: in the
+   * broad-phase for the balls still on their path of the start of the step,
+   * padded as the prediction runs a margin past the step, and in the grid of
+   * the changed balls for the others. With the brute-force broad-phase,
+   * every ball is tested. The changed ball is tested against all of them
+   * at once by the SIMD kernel, and only the hits are predicted again one
+   * by one; without the kernel, a quick test on the relative motion skips
+   * the balls out of reach.
+   *
+   * @return the number of pairs tested.
+   */
+  private int predictChangedPairs(double now, float timeLeft) {
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    float predictionLimit = timeLeft + PREDICTION_MARGIN;
+    // The new paths first, so that the changed balls find each other
+    for (int c = 0; c < numChangedBalls; c++) {
+      int a = changedBalls[c];
+      changedBoxes.insert(a,
+          SweptBox.min(x[a], speedX[a], radius[a], predictionLimit),
+          SweptBox.min(y[a], speedY[a], radius[a], predictionLimit),
+          SweptBox.max(x[a], speedX[a], radius[a], predictionLimit),
+          SweptBox.max(y[a], speedY[a], radius[a], predictionLimit));
+    }
+    int numTests = 0;
+    for (int c = 0; c < numChangedBalls; c++) {
+      int a = changedBalls[c];
+      float minX = SweptBox.min(x[a], speedX[a], radius[a], predictionLimit);
+      float minY = SweptBox.min(y[a], speedY[a], radius[a], predictionLimit);
+      float maxX = SweptBox.max(x[a], speedX[a], radius[a], predictionLimit);
+      float maxY = SweptBox.max(y[a], speedY[a], radius[a], predictionLimit);
+      int numFound = broadPhase.findOverlaps(minX - overlapPadding, minY - overlapPadding,
+          maxX + overlapPadding, maxY + overlapPadding, overlaps);
+      int numGridFound = changedBoxes.findOverlaps(minX, minY, maxX, maxY, gridOverlaps);
+      // Keep each ball once, and the pair of two changed balls once
+      int query = ++numOverlapQueries;
+      overlapQueries[a] = query;
+      int numOverlaps = 0;
+      for (int k = 0; k < numFound + numGridFound; k++) {
+        int b = (k < numFound) ? overlaps[k] : gridOverlaps[k - numFound];
+        if (overlapQueries[b] != query && !(isChangedBall[b] && b < a)) {
+          overlapQueries[b] = query;
+          overlaps[numOverlaps++] = b;
+        }
+      }
+      if (USE_VECTOR_KERNELS) {
+        VectorKernels.movingPointTimes(x, y, speedX, speedY, radius, a, overlaps, numOverlaps,
+            predictionLimit, overlapTs);
+        for (int k = 0; k < numOverlaps; k++) {
+          if (overlapTs[k] <= predictionLimit) {
+            predictChangedPair(a, overlaps[k], now, predictionLimit);
+          }
+        }
+        numTests += numOverlaps;
+      } else {
+        for (int k = 0; k < numOverlaps; k++) {
+          numTests += predictChangedPair(a, overlaps[k], now, predictionLimit);
+        }
+      }
+    }
+    clearChangedBalls();
+    return numTests;
+  }
+
+  /**
+   * Predict again the collision of the changed ball a with ball b, unless
+   * the relative motion keeps them out of reach.
+   *
+   * @return the number of pairs tested, 0 or 1.
+   */
+  private int predictChangedPair(int a, int b, double now, float predictionLimit) {
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    // Relative motion of b from a, out of reach on an axis?
+    float reach = radius[a] + radius[b];
+    float offsetX = x[b] - x[a];
+    float endX = offsetX + (speedX[b] - speedX[a]) * predictionLimit;
+    if ((offsetX > reach && endX > reach) || (offsetX < -reach && endX < -reach)) {
+      return 0;
+    }
+    float offsetY = y[b] - y[a];
+    float endY = offsetY + (speedY[b] - speedY[a]) * predictionLimit;
+    if ((offsetY > reach && endY > reach) || (offsetY < -reach && endY < -reach)) {
+      return 0;
+    }
+    int i = Math.min(a, b);
+    int j = Math.max(a, b);
+    float t = CollisionPhysics.pointIntersectsMovingPointTime(
+        x[i], y[i], speedX[i], speedY[i], radius[i],
+        x[j], y[j], speedX[j], speedY[j], radius[j],
+        predictionLimit);
+    if (t <= predictionLimit) {
+      pairHits.push(now + t, i, j, velocityVersions[i], velocityVersions[j]);
+    }
+    return 1;
+  }
+
+  private void clearChangedBalls() {
+    for (int c = 0; c < numChangedBalls; c++) {
+      isChangedBall[changedBalls[c]] = false;
+    }
+    numChangedBalls = 0;
+  }
+
+  /**
+   * Take out of the cache the pairs that may collide in this sub-step, into
+   * duePairs in (i, j) order: those predicted by the earliest collision time
+   * (plus the batch window), with a margin for the rounding since their
+   * prediction. The earliest time is narrowed down by checking the due
+   * pairs in time order, from their current positions.
+   *
+   * @return the number of pairs tested.
+   */
+  private int collectDuePairs(double now, float timeLeft) {
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    float predictionLimit = timeLeft + PREDICTION_MARGIN;
+    float tMin = timeLeft;
+    int numTests = 0;
+    duePairs.clear();
+    while (pairHits.size() > 0
+        && pairHits.peekTime() <= now + Math.min(tMin + batchWindow, timeLeft) + PREDICTION_MARGIN) {
+      if (pairHits.isPeekValid(velocityVersions)) {
+        int i = pairHits.peekFirst();
+        int j = pairHits.peekSecond();
+        duePairs.add(i, j);
+        tMin = Math.min(tMin, CollisionPhysics.pointIntersectsMovingPointTime(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            x[j], y[j], speedX[j], speedY[j], radius[j],
+            predictionLimit));
+        numTests++;
+      }
+      pairHits.pop();
+    }
+    duePairs.sort();
+    return numTests;
+  }
+
+  /**
+   * Bring the cached container and obstacle hits up to date at time now:
+   * predict again the hits of the balls changed since the last update, or
+   * of all the balls after the container or the obstacles changed.
+   */
+  private void updateWallHits(double now) {
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    int count = balls.size();
+    if (allWallHitsStale) {
+      if (USE_VECTOR_KERNELS) {
+        VectorKernels.circleOuterTimes(x, y, speedX, speedY, radius, count,
+            containerCenterX, containerCenterY, containerRadius, Float.MAX_VALUE, wallTs);
+      } else {
+        for (int i = 0; i < count; i++) {
+          wallTs[i] = CollisionPhysics.pointIntersectsCircleOuterDetection(
+              x[i], y[i], speedX[i], speedY[i], radius[i],
+              containerCenterX, containerCenterY, containerRadius);
+        }
+      }
+      if (obstacles != null) {
+        for (int i = 0; i < count; i++) {
+          wallTs[i] = Math.min(wallTs[i], predictObstacleHit(i));
+        }
+      }
+      wallHits.clear();
+      for (int i = 0; i < count; i++) {
+        wallHits.set(i, now + wallTs[i]);
+      }
+      allWallHitsStale = false;
+    } else {
+      for (int s = 0; s < numStaleWallHits; s++) {
+        int i = staleWallHits[s];
+        if (i >= count) {
+          continue;  // Removed since
+        }
+        float t = CollisionPhysics.pointIntersectsCircleOuterDetection(
+            x[i], y[i], speedX[i], speedY[i], radius[i],
+            containerCenterX, containerCenterY, containerRadius);
+        if (obstacles != null) {
+          t = Math.min(t, predictObstacleHit(i));
+        }
+        wallHits.set(i, now + t);
+      }
+    }
+    for (int s = 0; s < numStaleWallHits; s++) {
+      isStaleWallHit[staleWallHits[s]] = false;
+    }
+    numStaleWallHits = 0;
+  }
+
+  /**
+   * Return the time of the next obstacle hit of ball i, or OBSTACLE_HORIZON
+   * if it hits none that soon, and leave its response in obstacleResponse.
+   */
+  private float predictObstacleHit(int i) {
+    obstacles.detect(balls.x[i], balls.y[i], balls.speedX[i], balls.speedY[i], balls.radius[i],
+        OBSTACLE_HORIZON, obstacleResponse, scratch);
+    return Math.min(obstacleResponse.t, OBSTACLE_HORIZON);
+  }
+
+  /**
+   * Record the given response as the earliest collision of ball i, with
+   * the given partner (the other ball, WALL or OBSTACLE).
+   */
+  private void setEarliest(int i, CollisionResponse response, int partner) {
+    earliestTs[i] = response.t;
+    earliestSpeedXs[i] = response.newSpeedX;
+    earliestSpeedYs[i] = response.newSpeedY;
+    earliestPartners[i] = partner;
+  }
+
+  /**
+   * Return true if the earliest collision of ball i is also the earliest
+   * collision of its partner, by batchLimit: then resolving it does not
+   * conflict with any other collision of the sub-step.
+   */
+  private boolean isMutual(int i, float batchLimit) {
+    int partner = earliestPartners[i];
+    return partner < 0
+        || (earliestTs[partner] <= batchLimit && earliestPartners[partner] == i);
+  }
+
+  /**
+   * The degraded end of a step over budget: move the balls through the
+   * time left with the container collisions only, each ball on its own.
+   * Balls may pass through each other and the obstacles until the next
+   * step, but they stay in the container, and the cost is bounded by a few tests per ball.
+   *
+   * @return the number of container collisions resolved.
+   */
+  private int finishInContainer(double now, float timeLeft) {
+    final int maxBounces = 4;  // Per ball; more is a ball grazing the wall
+    float[] x = balls.x;
+    float[] y = balls.y;
+    float[] speedX = balls.speedX;
+    float[] speedY = balls.speedY;
+    float[] radius = balls.radius;
+    int numCollisions = 0;
+    for (int i = 0, count = balls.size(); i < count; i++) {
+      float ballTimeLeft = timeLeft;
+      for (int bounce = 0; bounce < maxBounces && ballTimeLeft > 0; bounce++) {
+        CollisionPhysics.pointIntersectsCircleOuter(x[i], y[i], speedX[i], speedY[i], radius[i],
+            containerCenterX, containerCenterY, containerRadius, ballTimeLeft, tempResponse,
+            scratch);
+        if (tempResponse.t > ballTimeLeft) {
+          // No wall within the time left, move straight through it
+          x[i] += speedX[i] * ballTimeLeft;
+          y[i] += speedY[i] * ballTimeLeft;
+          break;
+        }
+        x[i] = tempResponse.getNewX(x[i], speedX[i]);
+        y[i] = tempResponse.getNewY(y[i], speedY[i]);
+        speedX[i] = tempResponse.newSpeedX;
+        speedY[i] = tempResponse.newSpeedY;
+        ballTimeLeft -= tempResponse.t;
+        numCollisions++;
+        if (collisionLog != null) {
+          collisionLog.append(now + (timeLeft - ballTimeLeft), i, WALL, x[i], y[i],
+              speedX[i], speedY[i]);
+        }
+      }
+      // Out of bounces, the ball waits at the wall for the next step
+    }
+    return numCollisions;
+  }
+
+  /**
+   * Return a copy of the current state, which other threads (e.g. a display)
+   * can read while the simulation keeps stepping. To hand frames over
+   * continuously without allocating, use a SnapshotBuffer instead.
+   */
+  public Snapshot snapshot() {
+    Snapshot snapshot = new Snapshot(balls.size());
+    snapshot.copyFrom(this);
+    return snapshot;
+  }
+
+  /**
+   * What a step does with its time left when it runs out of sub-steps.
+   */
+  public enum OverBudgetPolicy {
+    /**
+     * End the step: the balls stand still for the time left, while the
+     * clock still advances by the whole step. The physics stay exact, but
+     * the world slows down while it is over budget. Opt-in only.
+     */
+    STOP,
+    /**
+     * Finish the step with the container collisions only: the balls keep
+     * moving and stay in the container, but may pass through each other
+     * until the next step. The default.
+     */
+    CONTAINER_ONLY
+  }
+
+  /**
+   * A copy of the state of a Simulation at the end of a step.
+   * The fields must not be modified. A snapshot read from a SnapshotBuffer
+   * does not change until the reader's next read, after which the buffer
+   * may re-use it.
+   */
+  public static final class Snapshot {
+    /** The balls, with one row per ball */
+    public final BallStore balls;
+    /** x-positions of the balls at the start of the last step */
+    public float[] previousX;
+    /** y-positions of the balls at the start of the last step */
+    public float[] previousY;
+    /** Center x of the circular container */
+    public float containerCenterX;
+    /** Center y of the circular container */
+    public float containerCenterY;
+    /** Radius of the circular container */
+    public float containerRadius;
+    /** Number of steps taken */
+    public long stepCount;
+    /** Wall time (System.nanoTime()) simulated up to by the last step, or 0 if not stamped */
+    public long tickNanos;
+    /** Wall time simulated by one step, or 0 if not stamped */
+    public long tickPeriodNanos;
+
+    /**
+     * Constructor of an empty snapshot, with room for capacity balls.
+     */
+    Snapshot(int capacity) {
+      balls = new BallStore(capacity);
+      previousX = new float[capacity];
+      previousY = new float[capacity];
+    }
+
+    /**
+     * Copy the current state of the given simulation into this snapshot.
+     */
+    void copyFrom(Simulation simulation) {
+      int count = simulation.balls.size();
+      balls.copyFrom(simulation.balls);
+      if (previousX.length < count) {
+        previousX = new float[balls.capacity()];
+        previousY = new float[balls.capacity()];
+      }
+      System.arraycopy(simulation.previousX, 0, previousX, 0, count);
+      System.arraycopy(simulation.previousY, 0, previousY, 0, count);
+      containerCenterX = simulation.containerCenterX;
+      containerCenterY = simulation.containerCenterY;
+      containerRadius = simulation.containerRadius;
+      stepCount = simulation.stepCount;
+      tickNanos = 0;
+      tickPeriodNanos = 0;
+    }
+
+    /**
+     * Return how far the given wall time is past the tick of this snapshot,
+     * as a fraction of the tick period in [0, 1], or 1 if the snapshot is not
+     * stamped. A renderer draws the balls interpolated by this fraction
+     * between previousX/Y and their positions, which moves smoothly at any
+     * display rate (one tick behind).
+     *
+     * @param nowNanos : the wall time of the frame drawn, from System.nanoTime().
+     */
+    public float getInterpolationAlpha(long nowNanos) {
+      if (tickPeriodNanos == 0) {
+        return 1f;
+      }
+      float alpha = (float) (nowNanos - tickNanos) / tickPeriodNanos;
+      return Math.max(0f, Math.min(1f, alpha));
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package collisionphysics;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime metrics of a Simulation and of its display: per step, the
+ * sub-step iterations, broad-phase candidate pairs, narrow-phase pair tests
+ * and collisions resolved, the physics time, the late ticks and the steps
+ * over their sub-step budget; per frame, the paint time.
+ * <p>
+ * Recording is allocation-free and cheap enough to leave on: a step
+ * publishes its counts once, at its end, with a handful of volatile stores.
+ * The step metrics are recorded by the thread stepping the simulation, the
+ * paint metrics by the thread painting it (one writer each); any thread
+ * may read them, e.g. JMX through SimulationMetricsMBean, or an on-screen
+ * overlay.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+  // A tick is late when it leaves less than this of its period, as the
+  // minimum sleep of a classic game loop
+  private static final long MIN_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+  private volatile long steps;
+  private volatile int lastSubSteps;
+  private volatile int maxSubSteps;
+  private volatile long totalSubSteps;
+  private volatile int lastCandidatePairs;
+  private volatile long totalCandidatePairs;
+  private volatile int lastPairTests;
+  private volatile long totalPairTests;
+  private volatile int lastCollisions;
+  private volatile long totalCollisions;
+  private volatile long overBudgetSteps;
+  private volatile long lateTicks;
+  private final LatencyHistogram physicsTimes = new LatencyHistogram();
+  private final LatencyHistogram paintTimes = new LatencyHistogram();
+  private ObjectName registeredName;  // null when not registered
+
+  /**
+   * Record the counts and the duration of one step.
+   *
+   * @param subSteps       : sub-step iterations (or events processed).
+   * @param candidatePairs : pairs returned by the broad-phase.
+   * @param pairTests      : pairs tested by the narrow-phase.
+   * @param collisions     : collision responses applied, one per ball involved.
+   * @param overBudget     : true if the step ran out of sub-steps (or events).
+   * @param nanos          : physics time of the step.
+   */
+  void recordStep(int subSteps, int candidatePairs, int pairTests, int collisions,
+                  boolean overBudget, long nanos) {
+    steps++;
+    lastSubSteps = subSteps;
+    if (subSteps > maxSubSteps) {
+      maxSubSteps = subSteps;
+    }
+    totalSubSteps += subSteps;
+    lastCandidatePairs = candidatePairs;
+    totalCandidatePairs += candidatePairs;
+    lastPairTests = pairTests;
+    totalPairTests += pairTests;
+    lastCollisions = collisions;
+    totalCollisions += collisions;
+    if (overBudget) {
+      overBudgetSteps++;
+    }
+    physicsTimes.record(nanos);
+  }
+
+  /**
+   * Record the duration of one tick (a step and its callback), which is
+   * late if it leaves less than 5 ms of its period.
+   *
+   * @param nanos       : duration of the tick.
+   * @param periodNanos : period of the ticks.
+   */
+  public void recordTick(long nanos, long periodNanos) {
+    if (periodNanos - nanos < MIN_SLACK_NANOS) {
+      lateTicks++;
+    }
+  }
+
+  /**
+   * Record the duration of painting one frame.
+   */
+  public void recordPaint(long nanos) {
+    paintTimes.record(nanos);
+  }
+
+  /**
+   * Register these metrics with the platform MBean server, under
+   * "collisionphysics:type=SimulationMetrics,name={name}".
+   *
+   * The owner unregisters them when the simulation goes away, so that the
+   * server does not keep it alive and the name can be re-used.
+   *
+   * @param name : name of the simulation, unique in the JVM.
+   * @throws IllegalStateException if the registration fails, e.g. the name is
+   *                               taken, or these metrics are already registered.
+   */
+  public synchronized void register(String name) {
+    if (registeredName != null) {
+      throw new IllegalStateException("Metrics already registered as " + registeredName);
+    }
+    try {
+      ObjectName objectName =
+          new ObjectName("collisionphysics:type=SimulationMetrics,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+      registeredName = objectName;
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot register the metrics of " + name, e);
+    }
+  }
+
+  /**
+   * Unregister these metrics from the platform MBean server, if registered.
+   *
+   * @throws IllegalStateException if the unregistration fails.
+   */
+  public synchronized void unregister() {
+    if (registeredName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+    } catch (InstanceNotFoundException e) {
+      // Already unregistered through the server
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot unregister " + registeredName, e);
+    }
+    registeredName = null;
+  }
+
+  /**
+   * Return the histogram of the physics time of the steps.
+   */
+  public LatencyHistogram getPhysicsTimes() {
+    return physicsTimes;
+  }
+
+  /**
+   * Return the histogram of the paint time of the frames.
+   */
+  public LatencyHistogram getPaintTimes() {
+    return paintTimes;
+  }
+
+  @Override
+  public long getSteps() {
+    return steps;
+  }
+
+  @Override
+  public int getLastSubSteps() {
+    return lastSubSteps;
+  }
+
+  @Override
+  public int getMaxSubSteps() {
+    return maxSubSteps;
+  }
+
+  @Override
+  public long getTotalSubSteps() {
+    return totalSubSteps;
+  }
+
+  @Override
+  public int getLastCandidatePairs() {
+    return lastCandidatePairs;
+  }
+
+  @Override
+  public long getTotalCandidatePairs() {
+    return totalCandidatePairs;
+  }
+
+  @Override
+  public int getLastPairTests() {
+    return lastPairTests;
+  }
+
+  @Override
+  public long getTotalPairTests() {
+    return totalPairTests;
+  }
+
+  @Override
+  public int getLastCollisions() {
+    return lastCollisions;
+  }
+
+  @Override
+  public long getTotalCollisions() {
+    return totalCollisions;
+  }
+
+  @Override
+  public long getOverBudgetSteps() {
+    return overBudgetSteps;
+  }
+
+  @Override
+  public long getLateTicks() {
+    return lateTicks;
+  }
+
+  @Override
+  public long getPhysicsMeanNanos() {
+    return physicsTimes.getMeanNanos();
+  }
+
+  @Override
+  public long getPhysicsP50Nanos() {
+    return physicsTimes.getPercentileNanos(50);
+  }
+
+  @Override
+  public long getPhysicsP99Nanos() {
+    return physicsTimes.getPercentileNanos(99);
+  }
+
+  @Override
+  public long getPhysicsMaxNanos() {
+    return physicsTimes.getMaxNanos();
+  }
+
+  @Override
+  public long getFrames() {
+    return paintTimes.getCount();
+  }
+
+  @Override
+  public long getPaintMeanNanos() {
+    return paintTimes.getMeanNanos();
+  }
+
+  @Override
+  public long getPaintP50Nanos() {
+    return paintTimes.getPercentileNanos(50);
+  }
+
+  @Override
+  public long getPaintP99Nanos() {
+    return paintTimes.getPercentileNanos(99);
+  }
+
+  @Override
+  public long getPaintMaxNanos() {
+    return paintTimes.getMaxNanos();
+  }
+}
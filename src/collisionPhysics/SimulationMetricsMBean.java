@@ -0,0 +1,72 @@
+package collisionphysics;
+
+/**
+ * The JMX management interface of SimulationMetrics. The counts of the last
+ * step are per tick; the totals are since the start, for rates.
+ *
+ * @see SimulationMetrics
+ */
+public interface SimulationMetricsMBean {
+  /** Number of steps recorded */
+  long getSteps();
+
+  /** Sub-step iterations of the last step */
+  int getLastSubSteps();
+
+  /** Most sub-step iterations of one step */
+  int getMaxSubSteps();
+
+  /** Sub-step iterations of all the steps */
+  long getTotalSubSteps();
+
+  /** Broad-phase candidate pairs of the last step */
+  int getLastCandidatePairs();
+
+  /** Broad-phase candidate pairs of all the steps */
+  long getTotalCandidatePairs();
+
+  /** Narrow-phase pair tests of the last step */
+  int getLastPairTests();
+
+  /** Narrow-phase pair tests of all the steps */
+  long getTotalPairTests();
+
+  /** Collisions resolved in the last step, counted per ball involved */
+  int getLastCollisions();
+
+  /** Collisions resolved in all the steps */
+  long getTotalCollisions();
+
+  /** Steps that ran out of sub-steps */
+  long getOverBudgetSteps();
+
+  /** Ticks that left less than the minimum slack of their period */
+  long getLateTicks();
+
+  /** Mean physics time of a step, in nanoseconds */
+  long getPhysicsMeanNanos();
+
+  /** Median physics time of a step, in nanoseconds */
+  long getPhysicsP50Nanos();
+
+  /** 99th percentile of the physics time of a step, in nanoseconds */
+  long getPhysicsP99Nanos();
+
+  /** Longest physics time of a step, in nanoseconds */
+  long getPhysicsMaxNanos();
+
+  /** Number of frames painted */
+  long getFrames();
+
+  /** Mean paint time of a frame, in nanoseconds */
+  long getPaintMeanNanos();
+
+  /** Median paint time of a frame, in nanoseconds */
+  long getPaintP50Nanos();
+
+  /** 99th percentile of the paint time of a frame, in nanoseconds */
+  long getPaintP99Nanos();
+
+  /** Longest paint time of a frame, in nanoseconds */
+  long getPaintMaxNanos();
+}
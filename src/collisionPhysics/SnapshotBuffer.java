@@ -0,0 +1,81 @@
+package collisionphysics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of Simulation snapshots, handing finished frames
+ * from the game thread (the writer) to a renderer (the reader).
+ * <p>
+ * Of the three snapshots, the writer owns one (the back buffer), the reader
+ * owns one (the front buffer), and the third is the latest finished frame,
+ * held in a single atomic slot. The writer fills its back buffer, then swaps
+ * it into the slot; the reader swaps its front buffer with the slot if a
+ * newer frame is there. Each side owns its buffer exclusively between swaps,
+ * so the reader always sees a whole frame, never a torn one, and neither
+ * side ever blocks or waits for the other. Frames published while the reader
+ * is busy are overwritten by newer ones (the reader only wants the latest).
+ * <p>
+ * The snapshots are allocated for the capacity of the simulation, and only
+ * grow (by doubling) with it, so publishing does not allocate otherwise.
+ */
+public final class SnapshotBuffer {
+  private static final int INDEX_MASK = 3;
+  private static final int FRESH = 4;  // Set in the slot when it holds an unread frame
+
+  private final Simulation.Snapshot[] snapshots = new Simulation.Snapshot[3];
+  private final AtomicInteger latest;  // Index of the latest frame, plus FRESH if unread
+  private int back = 0;   // Owned by the writer
+  private int front = 1;  // Owned by the reader
+
+  /**
+   * Constructor, with the given simulation's initial state as first frame.
+   *
+   * @param simulation : the simulation to take the snapshots of.
+   */
+  public SnapshotBuffer(Simulation simulation) {
+    for (int k = 0; k < snapshots.length; k++) {
+      snapshots[k] = new Simulation.Snapshot(simulation.getCapacity());
+    }
+    snapshots[front].copyFrom(simulation);
+    latest = new AtomicInteger(2);
+  }
+
+  /**
+   * Publish the current state of the given simulation, as the latest frame.
+   * Must be called from the thread stepping the simulation.
+   *
+   * @param simulation : the simulation given at construction.
+   */
+  public void publish(Simulation simulation) {
+    publish(simulation, 0, 0);
+  }
+
+  /**
+   * @see publish(). Same, stamping the frame with the wall time of its tick,
+   * which the reader interpolates from (see Snapshot.getInterpolationAlpha()).
+   * The stamp travels with the frame, so the reader never pairs a frame with
+   * the time of another tick.
+   *
+   * @param tickNanos   : wall time (System.nanoTime()) simulated up to by the step.
+   * @param periodNanos : wall time simulated by one step.
+   */
+  public void publish(Simulation simulation, long tickNanos, long periodNanos) {
+    Simulation.Snapshot snapshot = snapshots[back];
+    snapshot.copyFrom(simulation);
+    snapshot.tickNanos = tickNanos;
+    snapshot.tickPeriodNanos = periodNanos;
+    back = latest.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Return the latest published frame. Must be called from a single reader
+   * thread (e.g. the event dispatch thread). The returned snapshot does not
+   * change until the next call.
+   */
+  public Simulation.Snapshot read() {
+    if ((latest.get() & FRESH) != 0) {
+      front = latest.getAndSet(front) & INDEX_MASK;
+    }
+    return snapshots[front];
+  }
+}
@@ -0,0 +1,196 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * A uniform-grid spatial hash broad-phase.
+ * <p>
+ * The cell size is derived from the largest radius plus the largest
+ * displacement within the time limit, so that the swept box of every ball
+ * covers at most 2 x 2 cells. Each ball is inserted into the cells that its
+ * swept box overlaps, and only balls sharing a cell are paired. A pair that
+ * shares several cells is reported once, by the cell that holds the minimum
+ * corner of the intersection of the two swept boxes.
+ * <p>
+ * The cells are hashed into a table, and the table is built with a counting
+ * sort, so that no object is allocated once the working arrays have grown
+ * to the number of balls.
+ */
+public class SpatialHashBroadPhase implements BroadPhase {
+  // Swept box of each ball
+  private float[] boxMinX = new float[0];
+  private float[] boxMinY = new float[0];
+  private float[] boxMaxX = new float[0];
+  private float[] boxMaxY = new float[0];
+
+  // Cell entries (ball, cell), unsorted and sorted by bucket
+  private int[] entryBall = new int[0];
+  private int[] entryCellX = new int[0];
+  private int[] entryCellY = new int[0];
+  private int[] entryBucket = new int[0];
+  private int[] sortedBall = new int[0];
+  private int[] sortedCellX = new int[0];
+  private int[] sortedCellY = new int[0];
+
+  // bucketStart[b] .. bucketStart[b + 1] - 1 are the sorted entries of bucket b
+  private int[] bucketStart = new int[1];
+  private int numBuckets;  // Of the last call, a power of 2 (or 0 for no ball)
+  private float cellSize;
+
+  @Override
+  public void findPairs(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                        int count, float timeLimit, PairList pairs) {
+    pairs.clear();
+    if (count == 0) {
+      numBuckets = 0;
+      return;
+    }
+    ensureCapacity(count);
+
+    // Size the cells from the max radius plus the max displacement
+    float maxRadius = 0;
+    float maxDisplacement = 0;
+    for (int i = 0; i < count; i++) {
+      maxRadius = Math.max(maxRadius, radius[i]);
+      maxDisplacement = Math.max(maxDisplacement,
+          Math.max(Math.abs(speedX[i]), Math.abs(speedY[i])) * timeLimit);
+    }
+    // One extra margin on each side absorbs round-off in the box bounds.
+    cellSize = 2 * (maxRadius + 2 * SweptBox.MARGIN) + maxDisplacement;
+
+    // Insert each ball into the (up to 4) cells overlapped by its swept box
+    int numEntries = 0;
+    for (int i = 0; i < count; i++) {
+      boxMinX[i] = SweptBox.min(x[i], speedX[i], radius[i], timeLimit);
+      boxMinY[i] = SweptBox.min(y[i], speedY[i], radius[i], timeLimit);
+      boxMaxX[i] = SweptBox.max(x[i], speedX[i], radius[i], timeLimit);
+      boxMaxY[i] = SweptBox.max(y[i], speedY[i], radius[i], timeLimit);
+      int cellX1 = cell(boxMinX[i], cellSize);
+      int cellX2 = cell(boxMaxX[i], cellSize);
+      int cellY1 = cell(boxMinY[i], cellSize);
+      int cellY2 = cell(boxMaxY[i], cellSize);
+      for (int cellX = cellX1; cellX <= cellX2; cellX++) {
+        for (int cellY = cellY1; cellY <= cellY2; cellY++) {
+          entryBall[numEntries] = i;
+          entryCellX[numEntries] = cellX;
+          entryCellY[numEntries] = cellY;
+          numEntries++;
+        }
+      }
+    }
+
+    // Counting sort of the entries by hash bucket
+    numBuckets = Integer.highestOneBit(numEntries) << 2;
+    int mask = numBuckets - 1;
+    if (bucketStart.length < numBuckets + 1) {
+      bucketStart = new int[numBuckets + 1];
+    }
+    Arrays.fill(bucketStart, 0, numBuckets + 1, 0);
+    for (int e = 0; e < numEntries; e++) {
+      int bucket = hash(entryCellX[e], entryCellY[e]) & mask;
+      entryBucket[e] = bucket;
+      bucketStart[bucket + 1]++;
+    }
+    for (int b = 0; b < numBuckets; b++) {
+      bucketStart[b + 1] += bucketStart[b];
+    }
+    for (int e = 0; e < numEntries; e++) {
+      int slot = bucketStart[entryBucket[e]]++;
+      sortedBall[slot] = entryBall[e];
+      sortedCellX[slot] = entryCellX[e];
+      sortedCellY[slot] = entryCellY[e];
+    }
+    // The fill loop advanced every start to the next bucket's start; shift back.
+    for (int b = numBuckets; b > 0; b--) {
+      bucketStart[b] = bucketStart[b - 1];
+    }
+    bucketStart[0] = 0;
+
+    // Pair the balls sharing a cell
+    for (int b = 0; b < numBuckets; b++) {
+      int end = bucketStart[b + 1];
+      for (int e1 = bucketStart[b]; e1 < end; e1++) {
+        int cellX = sortedCellX[e1];
+        int cellY = sortedCellY[e1];
+        int i = sortedBall[e1];
+        for (int e2 = e1 + 1; e2 < end; e2++) {
+          // Different cells may hash into the same bucket
+          if (sortedCellX[e2] != cellX || sortedCellY[e2] != cellY) {
+            continue;
+          }
+          int j = sortedBall[e2];
+          if (boxMinX[i] > boxMaxX[j] || boxMinX[j] > boxMaxX[i]
+              || boxMinY[i] > boxMaxY[j] || boxMinY[j] > boxMaxY[i]) {
+            continue;  // Swept boxes do not overlap
+          }
+          // Report the pair only from the cell holding the overlap's min corner
+          if (cell(Math.max(boxMinX[i], boxMinX[j]), cellSize) != cellX
+              || cell(Math.max(boxMinY[i], boxMinY[j]), cellSize) != cellY) {
+            continue;
+          }
+          if (i < j) {
+            pairs.add(i, j);
+          } else {
+            pairs.add(j, i);
+          }
+        }
+      }
+    }
+    pairs.sort();
+  }
+
+  @Override
+  public int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result) {
+    if (numBuckets == 0) {
+      return 0;
+    }
+    int mask = numBuckets - 1;
+    int numOverlaps = 0;
+    for (int cellX = cell(minX, cellSize); cellX <= cell(maxX, cellSize); cellX++) {
+      for (int cellY = cell(minY, cellSize); cellY <= cell(maxY, cellSize); cellY++) {
+        int bucket = hash(cellX, cellY) & mask;
+        for (int e = bucketStart[bucket]; e < bucketStart[bucket + 1]; e++) {
+          if (sortedCellX[e] != cellX || sortedCellY[e] != cellY) {
+            continue;
+          }
+          int i = sortedBall[e];
+          if (boxMinX[i] > maxX || minX > boxMaxX[i] || boxMinY[i] > maxY || minY > boxMaxY[i]) {
+            continue;
+          }
+          // Report the ball only from the cell holding the overlap's min corner
+          if (cell(Math.max(boxMinX[i], minX), cellSize) == cellX
+              && cell(Math.max(boxMinY[i], minY), cellSize) == cellY) {
+            result[numOverlaps++] = i;
+          }
+        }
+      }
+    }
+    return numOverlaps;
+  }
+
+  private static int cell(float position, float cellSize) {
+    return (int) Math.floor(position / cellSize);
+  }
+
+  private static int hash(int cellX, int cellY) {
+    return (cellX * 73856093) ^ (cellY * 19349663);
+  }
+
+  private void ensureCapacity(int count) {
+    if (boxMinX.length >= count) {
+      return;
+    }
+    int capacity = Math.max(count, boxMinX.length * 2);
+    boxMinX = new float[capacity];
+    boxMinY = new float[capacity];
+    boxMaxX = new float[capacity];
+    boxMaxY = new float[capacity];
+    entryBall = new int[4 * capacity];
+    entryCellX = new int[4 * capacity];
+    entryCellY = new int[4 * capacity];
+    entryBucket = new int[4 * capacity];
+    sortedBall = new int[4 * capacity];
+    sortedCellX = new int[4 * capacity];
+    sortedCellY = new int[4 * capacity];
+  }
+}
@@ -0,0 +1,174 @@
+package collisionphysics;
+
+/**
+ * An incremental sweep-and-prune broad-phase along the x-axis.
+ * <p>
+ * The two endpoints (min and max of the swept box) of every ball are kept in
+ * a list that persists from call to call. Balls move very little between two
+ * sub-steps, so the list is almost sorted and an insertion sort restores the
+ * order in near O(n). The sorted list is then swept once, keeping the set of
+ * open intervals; a ball is paired with every open interval whose swept box
+ * also overlaps along the y-axis.
+ * <p>
+ * This suits dense scenes, where a grid would have to be rebuilt from
+ * scratch every sub-step.
+ */
+public class SweepAndPruneBroadPhase implements BroadPhase {
+  // Swept box of each ball
+  private float[] boxMinX = new float[0];
+  private float[] boxMinY = new float[0];
+  private float[] boxMaxX = new float[0];
+  private float[] boxMaxY = new float[0];
+
+  // Persistent endpoint list along x. Each endpoint is encoded as
+  // (ball << 1) | 1 for the max endpoint, (ball << 1) for the min endpoint.
+  private int[] endpoints = new int[0];
+  private float[] endpointValues = new float[0];
+  private int numBalls;  // Number of balls whose endpoints are in the list
+  private float maxWidth;  // Of the swept boxes along x
+
+  // Open intervals during the sweep, with O(1) removal
+  private int[] active = new int[0];
+  private int[] activeSlot = new int[0];
+
+  @Override
+  public void findPairs(float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+                        int count, float timeLimit, PairList pairs) {
+    pairs.clear();
+    ensureCapacity(count);
+
+    if (count < numBalls) {
+      // Balls were removed: drop the endpoints of the indices past the end,
+      // keeping the others in order (a ball moved into a hole is sorted below)
+      int kept = 0;
+      for (int e = 0; e < 2 * numBalls; e++) {
+        if ((endpoints[e] >> 1) < count) {
+          endpoints[kept] = endpoints[e];
+          endpointValues[kept] = endpointValues[e];
+          kept++;
+        }
+      }
+      numBalls = count;
+    }
+    // Append the endpoints of the newly added balls; the sort moves them in place
+    for (int i = numBalls; i < count; i++) {
+      endpoints[2 * i] = i << 1;
+      endpoints[2 * i + 1] = (i << 1) | 1;
+    }
+    numBalls = count;
+
+    maxWidth = 0;
+    for (int i = 0; i < count; i++) {
+      boxMinX[i] = SweptBox.min(x[i], speedX[i], radius[i], timeLimit);
+      boxMinY[i] = SweptBox.min(y[i], speedY[i], radius[i], timeLimit);
+      boxMaxX[i] = SweptBox.max(x[i], speedX[i], radius[i], timeLimit);
+      boxMaxY[i] = SweptBox.max(y[i], speedY[i], radius[i], timeLimit);
+      maxWidth = Math.max(maxWidth, boxMaxX[i] - boxMinX[i]);
+    }
+
+    // Refresh the endpoint values, then restore the order by insertion sort
+    int numEndpoints = 2 * count;
+    for (int e = 0; e < numEndpoints; e++) {
+      int ball = endpoints[e] >> 1;
+      endpointValues[e] = (endpoints[e] & 1) == 0 ? boxMinX[ball] : boxMaxX[ball];
+    }
+    for (int e = 1; e < numEndpoints; e++) {
+      int endpoint = endpoints[e];
+      float value = endpointValues[e];
+      int k = e - 1;
+      while (k >= 0 && precedes(value, endpoint, endpointValues[k], endpoints[k])) {
+        endpoints[k + 1] = endpoints[k];
+        endpointValues[k + 1] = endpointValues[k];
+        k--;
+      }
+      endpoints[k + 1] = endpoint;
+      endpointValues[k + 1] = value;
+    }
+
+    // Sweep along x, testing the open intervals along y
+    int numActive = 0;
+    for (int e = 0; e < numEndpoints; e++) {
+      int ball = endpoints[e] >> 1;
+      if ((endpoints[e] & 1) == 0) {
+        for (int a = 0; a < numActive; a++) {
+          int other = active[a];
+          if (boxMinY[ball] <= boxMaxY[other] && boxMinY[other] <= boxMaxY[ball]) {
+            if (ball < other) {
+              pairs.add(ball, other);
+            } else {
+              pairs.add(other, ball);
+            }
+          }
+        }
+        active[numActive] = ball;
+        activeSlot[ball] = numActive;
+        numActive++;
+      } else {
+        // Swap-remove from the open set
+        int slot = activeSlot[ball];
+        int last = active[--numActive];
+        active[slot] = last;
+        activeSlot[last] = slot;
+      }
+    }
+    pairs.sort();
+  }
+
+  /**
+   * A box overlapping the query along x has its min endpoint at most one
+   * max width before the query: scan the sorted min endpoints from there.
+   */
+  @Override
+  public int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result) {
+    // First endpoint at or after minX - maxWidth, by binary search
+    float from = minX - maxWidth;
+    int low = 0;
+    int high = 2 * numBalls;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (endpointValues[middle] < from) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    int numOverlaps = 0;
+    for (int e = low; e < 2 * numBalls && endpointValues[e] <= maxX; e++) {
+      int ball = endpoints[e] >> 1;
+      if ((endpoints[e] & 1) == 0 && boxMaxX[ball] >= minX
+          && boxMinY[ball] <= maxY && minY <= boxMaxY[ball]) {
+        result[numOverlaps++] = ball;
+      }
+    }
+    return numOverlaps;
+  }
+
+  /**
+   * Order of the endpoints: by value, with a min endpoint before a max
+   * endpoint of equal value, so that touching intervals are reported.
+   */
+  private static boolean precedes(float value, int endpoint, float otherValue, int otherEndpoint) {
+    if (value != otherValue) {
+      return value < otherValue;
+    }
+    return (endpoint & 1) < (otherEndpoint & 1);
+  }
+
+  private void ensureCapacity(int count) {
+    if (boxMinX.length >= count) {
+      return;
+    }
+    int capacity = Math.max(count, boxMinX.length * 2);
+    boxMinX = new float[capacity];
+    boxMinY = new float[capacity];
+    boxMaxX = new float[capacity];
+    boxMaxY = new float[capacity];
+    int[] newEndpoints = new int[2 * capacity];
+    float[] newEndpointValues = new float[2 * capacity];
+    System.arraycopy(endpoints, 0, newEndpoints, 0, 2 * numBalls);
+    endpoints = newEndpoints;
+    endpointValues = newEndpointValues;
+    active = new int[capacity];
+    activeSlot = new int[capacity];
+  }
+}
@@ -0,0 +1,41 @@
+package collisionphysics;
+
+/**
+ * Helper methods to compute the axis-aligned bounding box swept by a moving
+ * circle during (0, timeLimit]. Two circles can only collide within the time
+ * limit if their swept boxes overlap.
+ */
+final class SweptBox {
+  // Padding added to every swept box, so that round-off in the narrow phase
+  // can never report a collision between two boxes that (barely) do not touch.
+  static final float MARGIN = 1e-2f;
+
+  private SweptBox() {
+  }
+
+  /**
+   * Return the smaller bound of the swept interval along one axis.
+   *
+   * @param position  : position along the axis.
+   * @param speed     : speed along the axis.
+   * @param radius    : radius of the circle.
+   * @param timeLimit : length of the sweep.
+   */
+  static float min(float position, float speed, float radius, float timeLimit) {
+    float end = position + speed * timeLimit;
+    return (end < position ? end : position) - radius - MARGIN;
+  }
+
+  /**
+   * Return the larger bound of the swept interval along one axis.
+   *
+   * @param position  : position along the axis.
+   * @param speed     : speed along the axis.
+   * @param radius    : radius of the circle.
+   * @param timeLimit : length of the sweep.
+   */
+  static float max(float position, float speed, float radius, float timeLimit) {
+    float end = position + speed * timeLimit;
+    return (end > position ? end : position) + radius + MARGIN;
+  }
+}
@@ -0,0 +1,142 @@
+package collisionphysics;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of the swept boxes of the balls that changed paths during
+ * a time-step, which the broad-phase boxes of the step no longer cover.
+ * <p>
+ * A ball is inserted again each time it changes, into the cells its new box
+ * overlaps; its older entries are skipped by their insertion stamp. The
+ * cells are hashed into a table of chains that reset() empties in O(1), so
+ * no object is allocated once the arrays have grown to the busiest step.
+ */
+final class SweptBoxGrid {
+  private static final int NO_ENTRY = -1;
+
+  private float cellSize = 1;
+  private int step;  // Stamp of the current reset
+
+  // Current box of each ball
+  private float[] boxMinX = new float[0];
+  private float[] boxMinY = new float[0];
+  private float[] boxMaxX = new float[0];
+  private float[] boxMaxY = new float[0];
+  private int[] ballInsertion = new int[0];  // Stamp of the current entries
+  private int[] ballQuery = new int[0];      // Last query that reported the ball
+  private int numInsertions;
+  private int numQueries;
+
+  // Chains of entries by bucket, valid if bucketStep is the current step
+  private int[] bucketHead = new int[16];
+  private int[] bucketStep = new int[16];
+  private int[] entryBall = new int[64];
+  private int[] entryInsertion = new int[64];
+  private int[] entryCellX = new int[64];
+  private int[] entryCellY = new int[64];
+  private int[] entryNext = new int[64];
+  private int numEntries;
+
+  /**
+   * Empty the grid for a new time-step.
+   *
+   * @param count    : number of balls.
+   * @param cellSize : size of the cells, e.g. that of the typical box.
+   */
+  void reset(int count, float cellSize) {
+    if (boxMinX.length < count) {
+      int capacity = Math.max(count, 2 * boxMinX.length);
+      boxMinX = new float[capacity];
+      boxMinY = new float[capacity];
+      boxMaxX = new float[capacity];
+      boxMaxY = new float[capacity];
+      ballInsertion = new int[capacity];
+      ballQuery = Arrays.copyOf(ballQuery, capacity);
+    }
+    int numBuckets = Math.max(16, Integer.highestOneBit(count) << 1);
+    if (bucketHead.length < numBuckets) {
+      bucketHead = new int[numBuckets];
+      bucketStep = new int[numBuckets];
+    }
+    this.cellSize = cellSize > 0 ? cellSize : 1;
+    step++;
+    numEntries = 0;
+  }
+
+  /**
+   * Insert a ball with its new box, replacing its previous one.
+   */
+  void insert(int ball, float minX, float minY, float maxX, float maxY) {
+    boxMinX[ball] = minX;
+    boxMinY[ball] = minY;
+    boxMaxX[ball] = maxX;
+    boxMaxY[ball] = maxY;
+    int insertion = ++numInsertions;
+    ballInsertion[ball] = insertion;
+    int mask = bucketHead.length - 1;
+    for (int cellX = cell(minX); cellX <= cell(maxX); cellX++) {
+      for (int cellY = cell(minY); cellY <= cell(maxY); cellY++) {
+        if (numEntries == entryBall.length) {
+          int capacity = 2 * numEntries;
+          entryBall = Arrays.copyOf(entryBall, capacity);
+          entryInsertion = Arrays.copyOf(entryInsertion, capacity);
+          entryCellX = Arrays.copyOf(entryCellX, capacity);
+          entryCellY = Arrays.copyOf(entryCellY, capacity);
+          entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        int bucket = hash(cellX, cellY) & mask;
+        if (bucketStep[bucket] != step) {
+          bucketStep[bucket] = step;
+          bucketHead[bucket] = NO_ENTRY;
+        }
+        int e = numEntries++;
+        entryBall[e] = ball;
+        entryInsertion[e] = insertion;
+        entryCellX[e] = cellX;
+        entryCellY[e] = cellY;
+        entryNext[e] = bucketHead[bucket];
+        bucketHead[bucket] = e;
+      }
+    }
+  }
+
+  /**
+   * Collect the inserted balls whose current box overlaps the given box.
+   *
+   * @param result : filled with the balls, in no particular order.
+   * @return the number of balls in result.
+   */
+  int findOverlaps(float minX, float minY, float maxX, float maxY, int[] result) {
+    int query = ++numQueries;
+    int mask = bucketHead.length - 1;
+    int numOverlaps = 0;
+    for (int cellX = cell(minX); cellX <= cell(maxX); cellX++) {
+      for (int cellY = cell(minY); cellY <= cell(maxY); cellY++) {
+        int bucket = hash(cellX, cellY) & mask;
+        if (bucketStep[bucket] != step) {
+          continue;
+        }
+        for (int e = bucketHead[bucket]; e != NO_ENTRY; e = entryNext[e]) {
+          int i = entryBall[e];
+          if (entryInsertion[e] != ballInsertion[i] || ballQuery[i] == query
+              || entryCellX[e] != cellX || entryCellY[e] != cellY) {
+            continue;  // Older box, already reported, or another cell
+          }
+          ballQuery[i] = query;
+          if (boxMinX[i] <= maxX && minX <= boxMaxX[i] && boxMinY[i] <= maxY && minY <= boxMaxY[i]) {
+            result[numOverlaps++] = i;
+          }
+        }
+      }
+    }
+    return numOverlaps;
+  }
+
+  private int cell(float position) {
+    return (int) Math.floor(position / cellSize);
+  }
+
+  private static int hash(int cellX, int cellY) {
+    return (cellX * 73856093) ^ (cellY * 19349663);
+  }
+}
@@ -0,0 +1,195 @@
+package collisionphysics;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the collision-time computations of CollisionPhysics,
+ * built on the JDK Vector API (module jdk.incubator.vector, which must be
+ * added with --add-modules at compile and run time).
+ * <p>
+ * Each kernel solves the same quadratic equation as its scalar reference,
+ * for a lane-width block of balls at a time. The operations are carried out
+ * in the same order and precision as the scalar code (differences of floats
+ * in float, the rest in double, no fused multiply-add), so the results are
+ * bit-identical to the scalar path. The remaining balls that do not fill a
+ * whole block go through the scalar path.
+ * <p>
+ * Only the collision time is computed. The caller computes the response of
+ * the accepted collisions with the scalar CollisionPhysics methods, which
+ * may still reject a collision (e.g. two overlapping balls moving apart).
+ */
+public final class VectorKernels {
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+  // Floats with the same number of lanes as DOUBLES, at half the width
+  private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class,
+      VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+  private static final int LANES = DOUBLES.length();
+
+  private VectorKernels() {
+  }
+
+  /**
+   * Compute the time of collision of ball i with each of the given balls,
+   * within the given timeLimit, a lane-width block of balls at a time.
+   * Vector version of CollisionPhysics.pointIntersectsMovingPointDetection().
+   *
+   * @param x         : x-positions of the balls.
+   * @param y         : y-positions of the balls.
+   * @param speedX    : speeds in x-direction.
+   * @param speedY    : speeds in y-direction.
+   * @param radius    : radii of the balls.
+   * @param i         : the ball tested against the others.
+   * @param others    : the balls to test against.
+   * @param count     : number of balls in others.
+   * @param timeLimit : max time to detect collision.
+   * @param times     : set to the collision time with each of the others, or
+   *                  infinity (Float.MAX_VALUE) if not within timeLimit.
+   * @return the earliest of the collision times.
+   */
+  public static float movingPointTimes(
+      float[] x, float[] y, float[] speedX, float[] speedY, float[] radius,
+      int i, int[] others, int count, float timeLimit, float[] times) {
+    float tMin = Float.MAX_VALUE;
+
+    FloatVector p1X = FloatVector.broadcast(FLOATS, x[i]);
+    FloatVector p1Y = FloatVector.broadcast(FLOATS, y[i]);
+    FloatVector p1SpeedX = FloatVector.broadcast(FLOATS, speedX[i]);
+    FloatVector p1SpeedY = FloatVector.broadcast(FLOATS, speedY[i]);
+    FloatVector p1Radius = FloatVector.broadcast(FLOATS, radius[i]);
+    FloatVector infinity = FloatVector.broadcast(FLOATS, Float.MAX_VALUE);
+
+    int k = 0;
+    for (; k + LANES <= count; k += LANES) {
+      DoubleVector centerX = toDouble(p1X.sub(FloatVector.fromArray(FLOATS, x, 0, others, k)));
+      DoubleVector centerY = toDouble(p1Y.sub(FloatVector.fromArray(FLOATS, y, 0, others, k)));
+      DoubleVector relSpeedX = toDouble(
+          p1SpeedX.sub(FloatVector.fromArray(FLOATS, speedX, 0, others, k)));
+      DoubleVector relSpeedY = toDouble(
+          p1SpeedY.sub(FloatVector.fromArray(FLOATS, speedY, 0, others, k)));
+      DoubleVector sumRadius = toDouble(
+          p1Radius.add(FloatVector.fromArray(FLOATS, radius, 0, others, k)));
+
+      DoubleVector radiusSq = sumRadius.mul(sumRadius);
+      DoubleVector speedSq = relSpeedX.mul(relSpeedX).add(relSpeedY.mul(relSpeedY));
+      DoubleVector cross = centerX.mul(relSpeedY).sub(centerY.mul(relSpeedX));
+      DoubleVector termB2minus4ac = radiusSq.mul(speedSq).sub(cross.mul(cross));
+      DoubleVector termMinusB = relSpeedX.neg().mul(centerX).sub(relSpeedY.mul(centerY));
+      DoubleVector root = termB2minus4ac.lanewise(VectorOperators.SQRT);
+      DoubleVector sol1 = termMinusB.add(root).div(speedSq);
+      DoubleVector sol2 = termMinusB.sub(root).div(speedSq);
+
+      FloatVector t = smallestPositive(sol1, sol2, termB2minus4ac);
+      VectorMask<Float> accepted = t.compare(VectorOperators.GT, 0f)
+          .and(t.compare(VectorOperators.LE, timeLimit));
+      t = infinity.blend(t, accepted);
+      t.intoArray(times, k);
+      tMin = Math.min(tMin, t.reduceLanes(VectorOperators.MIN));
+    }
+    // Scalar path for the remaining balls
+    for (; k < count; k++) {
+      int j = others[k];
+      float t = CollisionPhysics.pointIntersectsMovingPointDetection(
+          x[i], y[i], speedX[i], speedY[i], radius[i],
+          x[j], y[j], speedX[j], speedY[j], radius[j]);
+      times[k] = (t > 0 && t <= timeLimit) ? t : Float.MAX_VALUE;
+      tMin = Math.min(tMin, times[k]);
+    }
+    return tMin;
+  }
+
+  /**
+   * Compute the time of collision of each of the first count balls with a
+   * circular container, within the given timeLimit.
+   * Vector version of CollisionPhysics.pointIntersectsCircleOuterDetection().
+   *
+   * @param x            : x-positions of the balls.
+   * @param y            : y-positions of the balls.
+   * @param speedX       : speeds in x-direction.
+   * @param speedY       : speeds in y-direction.
+   * @param radius       : radii of the balls.
+   * @param count        : number of balls.
+   * @param outerCenterX : center x of the circular container.
+   * @param outerCenterY : center y of the circular container.
+   * @param outerRadius  : radius of the circular container.
+   * @param timeLimit    : max time to detect collision, in (0, 1] range.
+   * @param times        : set to the collision time of each ball, or
+   *                     infinity (Float.MAX_VALUE) if not within timeLimit.
+   * @return the earliest of the collision times.
+   */
+  public static float circleOuterTimes(
+      float[] x, float[] y, float[] speedX, float[] speedY, float[] radius, int count,
+      float outerCenterX, float outerCenterY, float outerRadius,
+      float timeLimit, float[] times) {
+    float tMin = Float.MAX_VALUE;
+
+    FloatVector centerX = FloatVector.broadcast(FLOATS, outerCenterX);
+    FloatVector centerY = FloatVector.broadcast(FLOATS, outerCenterY);
+    FloatVector outer = FloatVector.broadcast(FLOATS, outerRadius);
+    FloatVector infinity = FloatVector.broadcast(FLOATS, Float.MAX_VALUE);
+
+    int i = 0;
+    for (; i + LANES <= count; i += LANES) {
+      FloatVector pointSpeedX = FloatVector.fromArray(FLOATS, speedX, i);
+      FloatVector pointSpeedY = FloatVector.fromArray(FLOATS, speedY, i);
+      DoubleVector offsetPointX = toDouble(FloatVector.fromArray(FLOATS, x, i).sub(centerX));
+      DoubleVector offsetPointY = toDouble(FloatVector.fromArray(FLOATS, y, i).sub(centerY));
+      DoubleVector effectiveRadius = toDouble(outer.sub(FloatVector.fromArray(FLOATS, radius, i)));
+      DoubleVector sqSpeedX = toDouble(pointSpeedX.mul(pointSpeedX));
+      DoubleVector sqSpeedY = toDouble(pointSpeedY.mul(pointSpeedY));
+      DoubleVector doubleSpeedX = toDouble(pointSpeedX);
+      DoubleVector doubleSpeedY = toDouble(pointSpeedY);
+
+      DoubleVector termA = sqSpeedX.add(sqSpeedY);
+      DoubleVector termB = doubleSpeedX.mul(offsetPointX).add(doubleSpeedY.mul(offsetPointY)).mul(2.0);
+      DoubleVector termC = offsetPointX.mul(offsetPointX).add(offsetPointY.mul(offsetPointY))
+          .sub(effectiveRadius.mul(effectiveRadius));
+      DoubleVector b2minus4ac = termB.mul(termB).sub(termA.mul(4.0).mul(termC));
+      DoubleVector root = b2minus4ac.lanewise(VectorOperators.SQRT);
+      DoubleVector term2a = termA.mul(2.0);
+      DoubleVector minusB = termB.neg();
+      DoubleVector sol1 = minusB.add(root).div(term2a);
+      DoubleVector sol2 = minusB.sub(root).div(term2a);
+
+      FloatVector t = smallestPositive(sol1, sol2, b2minus4ac);
+      VectorMask<Float> accepted = t.compare(VectorOperators.GT, 0f)
+          .and(t.compare(VectorOperators.LE, timeLimit));
+      t = infinity.blend(t, accepted);
+      t.intoArray(times, i);
+      tMin = Math.min(tMin, t.reduceLanes(VectorOperators.MIN));
+    }
+    // Scalar path for the remaining balls
+    for (; i < count; i++) {
+      float t = CollisionPhysics.pointIntersectsCircleOuterDetection(
+          x[i], y[i], speedX[i], speedY[i], radius[i],
+          outerCenterX, outerCenterY, outerRadius);
+      times[i] = (t > 0 && t <= timeLimit) ? t : Float.MAX_VALUE;
+      tMin = Math.min(tMin, times[i]);
+    }
+    return tMin;
+  }
+
+  /**
+   * Return the smaller positive of the two solutions, or infinity if there
+   * is none or if the discriminant is negative.
+   */
+  private static FloatVector smallestPositive(DoubleVector sol1, DoubleVector sol2,
+                                              DoubleVector discriminant) {
+    VectorMask<Double> positive1 = sol1.compare(VectorOperators.GT, 0.0);
+    VectorMask<Double> positive2 = sol2.compare(VectorOperators.GT, 0.0);
+    DoubleVector t = DoubleVector.broadcast(DOUBLES, Float.MAX_VALUE)
+        .blend(sol2, positive2)
+        .blend(sol1, positive1)
+        .blend(sol1.min(sol2), positive1.and(positive2))
+        .blend(Float.MAX_VALUE, discriminant.compare(VectorOperators.LT, 0.0));
+    return (FloatVector) t.convertShape(VectorOperators.D2F, FLOATS, 0);
+  }
+
+  private static DoubleVector toDouble(FloatVector v) {
+    return (DoubleVector) v.convertShape(VectorOperators.F2D, DOUBLES, 0);
+  }
+}
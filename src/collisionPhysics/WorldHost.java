@@ -0,0 +1,336 @@
+package collisionphysics;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hosts many independent simulations on a small, shared pool of threads,
+ * instead of one sleeping thread per world.
+ * <p>
+ * Each hosted world has its own tick rate. The worlds wait in a single
+ * queue ordered by the deadline of their next tick (the workers park with
+ * nanosecond resolution until the earliest one is due); a worker takes the
+ * most overdue world, runs its ticks and puts it back with its next deadline.
+ * <p>
+ * The ticks follow a fixed timestep: each one advances the world by one
+ * unit of simulated time, and simulated time follows System.nanoTime().
+ * The wall time elapsed since the world was last served is added to an
+ * accumulator, which is drained one tick period at a time, so a world
+ * served late catches up with extra ticks and the remainder carries over to
+ * the next service. Serving the earliest deadline first
+ * shares the workers fairly: a slow world delays its own next tick, not the
+ * ticks of the others. A world is never in the queue twice, so its
+ * Simulation is only ever stepped by one thread at a time.
+ * <p>
+ * Backpressure: a world that falls more than maxLagTicks behind its
+ * schedule drops the ticks it missed instead of running them back to back
+ * (which would make it fall further behind: the spiral of death),
+ * and the host refuses new worlds (RejectedExecutionException) while the
+ * average lag of the ticks exceeds the overload threshold, or when it holds
+ * maxWorlds worlds.
+ * <p>
+ * A world whose step or onTick throws is cancelled: the failure is logged
+ * and kept on its handle (see HostedWorld.getFailure()), and the worker
+ * goes on serving the other worlds.
+ */
+public class WorldHost implements AutoCloseable {
+  // Weight of the latest tick in the moving average of the lag
+  private static final double LAG_SMOOTHING = 0.01;
+  private static final System.Logger LOG = System.getLogger(WorldHost.class.getName());
+
+  private final DelayQueue<HostedWorld> queue = new DelayQueue<>();
+  private final Thread[] workers;
+  private final int maxWorlds;
+  private final int maxLagTicks;
+  private final long overloadLagNanos;
+  private final AtomicInteger numWorlds = new AtomicInteger();
+  // Moving average of the lag, as the bits of a double, updated by the workers
+  private final AtomicLong averageLagBits = new AtomicLong(Double.doubleToLongBits(0));
+  private volatile boolean closed;
+
+  /**
+   * Constructor with one worker per core, and default limits: 10000 worlds,
+   * 4 ticks of lag before dropping ticks, and overload at 5 ms of average lag.
+   */
+  public WorldHost() {
+    this(Runtime.getRuntime().availableProcessors(), 10000, 4, TimeUnit.MILLISECONDS.toNanos(5));
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param numWorkers       : number of threads stepping the worlds.
+   * @param maxWorlds        : max number of worlds hosted at once.
+   * @param maxLagTicks      : max number of ticks a world may fall behind before
+   *                         dropping the missed ticks.
+   * @param overloadLagNanos : average lag of the ticks above which new worlds are refused.
+   */
+  public WorldHost(int numWorkers, int maxWorlds, int maxLagTicks, long overloadLagNanos) {
+    this.maxWorlds = maxWorlds;
+    this.maxLagTicks = maxLagTicks;
+    this.overloadLagNanos = overloadLagNanos;
+    workers = new Thread[numWorkers];
+    for (int w = 0; w < numWorkers; w++) {
+      workers[w] = new Thread(this::work, "WorldHost-" + w);
+      workers[w].setDaemon(true);
+      workers[w].start();
+    }
+  }
+
+  /**
+   * Start hosting the given simulation. It may be hosted again once its
+   * previous handle is cancelled: a tick of the old handle still running
+   * then completes before the first tick of the new one.
+   *
+   * @param simulation : the world to step, no longer touched by the caller's thread.
+   * @param tickRate   : number of ticks per second.
+   * @param onTick     : called on the worker thread after each step, with the
+   *                   handle of the world (e.g. to add balls, or to publish a
+   *                   snapshot stamped with getLastTickNanos()), or null.
+   * @return the handle of the hosted world.
+   * @throws RejectedExecutionException if the host is closed, full or overloaded.
+   */
+  public HostedWorld host(Simulation simulation, int tickRate, Consumer<HostedWorld> onTick) {
+    if (closed) {
+      throw new RejectedExecutionException("WorldHost is closed");
+    }
+    if (isOverloaded()) {
+      throw new RejectedExecutionException("WorldHost is overloaded, average lag "
+          + getAverageLagNanos() + " ns");
+    }
+    if (numWorlds.incrementAndGet() > maxWorlds) {
+      numWorlds.decrementAndGet();
+      throw new RejectedExecutionException("WorldHost is full, " + maxWorlds + " worlds");
+    }
+    HostedWorld world = new HostedWorld(simulation, 1_000_000_000L / tickRate, onTick);
+    queue.put(world);
+    return world;
+  }
+
+  /**
+   * Return true if the ticks lag too much to accept new worlds.
+   */
+  public boolean isOverloaded() {
+    return getAverageLagNanos() > overloadLagNanos;
+  }
+
+  /**
+   * Return the moving average of the lag of the ticks behind their deadlines.
+   */
+  public long getAverageLagNanos() {
+    return (long) Double.longBitsToDouble(averageLagBits.get());
+  }
+
+  /**
+   * Add the lag of one tick to the moving average. The workers update it
+   * at once, so the update is a compare-and-set loop rather than a
+   * read-modify-write that could lose the updates of the others.
+   */
+  private void recordLag(long lagNanos) {
+    long bits;
+    long newBits;
+    do {
+      bits = averageLagBits.get();
+      double average = Double.longBitsToDouble(bits);
+      newBits = Double.doubleToLongBits(average + (lagNanos - average) * LAG_SMOOTHING);
+    } while (!averageLagBits.compareAndSet(bits, newBits));
+  }
+
+  /**
+   * Return the number of worlds hosted.
+   */
+  public int getNumWorlds() {
+    return numWorlds.get();
+  }
+
+  /**
+   * Stop all the workers. The worlds are no longer stepped.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Thread worker : workers) {
+      worker.interrupt();
+    }
+  }
+
+  /**
+   * The loop of a worker: run the tick of the most overdue world, then put
+   * it back for its next tick.
+   */
+  private void work() {
+    while (!closed) {
+      HostedWorld world;
+      try {
+        world = queue.take();
+      } catch (InterruptedException e) {
+        return;  // Closed
+      }
+      if (world.cancelled) {
+        numWorlds.decrementAndGet();
+        continue;
+      }
+      try {
+        serve(world);
+      } catch (RuntimeException | Error e) {
+        // The world is in an unknown state: stop hosting it, not the worker
+        LOG.log(System.Logger.Level.ERROR, "Hosted world failed and is cancelled", e);
+        world.failure = e;
+        world.cancelled = true;
+        numWorlds.decrementAndGet();
+        continue;
+      }
+      queue.put(world);
+    }
+  }
+
+  /**
+   * Run the ticks due of the given world, and set its next deadline.
+   */
+  private void serve(HostedWorld world) {
+    long now = System.nanoTime();
+    long period = world.periodNanos;
+    recordLag(now - world.nextTickNanos);
+
+    // Accumulate the wall time elapsed since the last service
+    world.accumulatorNanos += now - world.lastServiceNanos;
+    world.lastServiceNanos = now;
+    if (world.paused) {
+      world.accumulatorNanos = 0;  // No simulated time passes while paused
+    } else if (world.accumulatorNanos > maxLagTicks * period) {
+      // Too far behind: drop the missed ticks rather than catching up
+      world.droppedTicks += world.accumulatorNanos / period - 1;
+      world.accumulatorNanos = period;
+    }
+    // Drain the accumulator, one fixed tick at a time
+    while (world.accumulatorNanos >= period) {
+      long tickStartNanos = System.nanoTime();
+      synchronized (world.simulation) {  // Against an older, cancelled handle
+        world.simulation.step(1.0f);
+        world.accumulatorNanos -= period;
+        // Stamp the tick before onTick publishes it: each tick of the service
+        // has its own wall time
+        world.lastTickNanos = now - world.accumulatorNanos;
+        if (world.onTick != null) {
+          world.onTick.accept(world);
+        }
+      }
+      world.simulation.getMetrics().recordTick(System.nanoTime() - tickStartNanos, period);
+      world.ticks++;
+    }
+    world.nextTickNanos = now + period - world.accumulatorNanos;
+  }
+
+  /**
+   * The handle of a world hosted by a WorldHost.
+   */
+  public static final class HostedWorld implements Delayed {
+    private final Simulation simulation;
+    private final long periodNanos;
+    private final Consumer<HostedWorld> onTick;
+    private long nextTickNanos;  // Deadline of the next tick
+    private long lastServiceNanos;  // When the world was last served
+    private long accumulatorNanos;  // Wall time not yet simulated
+    private volatile long lastTickNanos;  // Wall time simulated by the last tick
+    private volatile long ticks;
+    private volatile long droppedTicks;
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+    private volatile Throwable failure;  // What cancelled the world, if it failed
+
+    private HostedWorld(Simulation simulation, long periodNanos, Consumer<HostedWorld> onTick) {
+      this.simulation = simulation;
+      this.periodNanos = periodNanos;
+      this.onTick = onTick;
+      // Spread the first ticks over one period, so that worlds hosted
+      // together do not all come due at once
+      this.lastServiceNanos = System.nanoTime() - periodNanos;
+      this.nextTickNanos = lastServiceNanos + periodNanos
+          + ThreadLocalRandom.current().nextLong(periodNanos);
+      this.lastTickNanos = lastServiceNanos;
+    }
+
+    /**
+     * Return the simulation of this world. It must only be used in onTick,
+     * on the worker thread.
+     */
+    public Simulation getSimulation() {
+      return simulation;
+    }
+
+    /**
+     * Return the wall time (System.nanoTime()) simulated up to by the last
+     * tick. In onTick, this is the time of the tick just run.
+     */
+    public long getLastTickNanos() {
+      return lastTickNanos;
+    }
+
+    /**
+     * Return the period of the ticks, in nanoseconds.
+     */
+    public long getPeriodNanos() {
+      return periodNanos;
+    }
+
+    /**
+     * Pause or resume the ticks. A paused world keeps its slot in the
+     * schedule but is not stepped.
+     */
+    public void setPaused(boolean paused) {
+      this.paused = paused;
+    }
+
+    /**
+     * Stop hosting this world, after its current tick if any.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Return the exception thrown by a step or onTick of this world, which
+     * cancelled it, or null if it has not failed.
+     */
+    public Throwable getFailure() {
+      return failure;
+    }
+
+    /**
+     * Return true if the world is no longer hosted: cancelled, or failed.
+     */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Return the number of ticks run.
+     */
+    public long getTicks() {
+      return ticks;
+    }
+
+    /**
+     * Return the number of ticks dropped because the world fell behind.
+     */
+    public long getDroppedTicks() {
+      return droppedTicks;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(nextTickNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(nextTickNanos, ((HostedWorld) other).nextTickNanos);
+    }
+  }
+}
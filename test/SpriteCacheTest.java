@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The open-addressed sprite table against a LinkedHashMap in access order,
+ * the textbook LRU cache: same hits, same misses, same sprites.
+ */
+class SpriteCacheTest {
+  private static final Color[] COLORS = {Color.YELLOW, Color.GREEN, Color.PINK, Color.ORANGE};
+
+  @Test
+  void evictsLeastRecentlyUsed() {
+    for (int maxSprites : new int[] {1, 3, 16, 100}) {
+      SpriteCache cache = new SpriteCache(maxSprites);
+      Map<Long, BufferedImage> expected = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+          return size() > maxSprites;
+        }
+      };
+      Random random = new Random(14);
+      long hits = 0;
+      for (int n = 0; n < 20000; n++) {
+        // Skewed towards a few sizes, as the balls of a world are
+        int diameter = 1 + (int) Math.abs(random.nextGaussian() * 30);
+        Color color = COLORS[random.nextInt(COLORS.length)];
+        long key = ((long) diameter << 32) | (color.getRGB() & 0xffffffffL);
+        BufferedImage sprite = cache.get(diameter, color, null);
+        BufferedImage previous = expected.get(key);
+        if (previous != null) {
+          hits++;
+          assertSame(previous, sprite, "sprite of " + diameter + " at lookup " + n);
+        } else {
+          expected.put(key, sprite);
+        }
+        assertEquals(expected.size(), cache.size());
+      }
+      assertEquals(hits, cache.getHits());
+      assertEquals(20000 - hits, cache.getMisses());
+    }
+  }
+
+  @Test
+  void rendersTheRequestedSize() {
+    SpriteCache cache = new SpriteCache(4);
+    BufferedImage sprite = cache.get(20, Color.RED, null);
+    assertEquals(20, sprite.getWidth());
+    assertEquals(20, sprite.getHeight());
+    assertEquals(Color.RED.getRGB(), sprite.getRGB(10, 10));
+    assertEquals(0, sprite.getRGB(0, 0) >>> 24);  // Transparent corner
+  }
+}
@@ -0,0 +1,112 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Balls removed and added between steps: every broad-phase must still give
+ * the trajectories of the brute-force one, bit for bit, and an emitter
+ * keeps the count of the balls it spawns and retires.
+ */
+class BallEmitterTest {
+  private static final int STEPS = 100;
+
+  @Test
+  void removalsMatchBruteForce() {
+    assertAllMatchBruteForce(false);
+    assertAllMatchBruteForce(true);
+  }
+
+  @Test
+  void spawnAndRetireKeepTheCount() {
+    Simulation simulation = SimulationTest.scene(200, 330, 7, false);
+    int count = simulation.getBalls().size();
+    BallEmitter emitter = newEmitter(simulation);
+
+    assertEquals(count, emitter.spawn(30));
+    assertEquals(count + 30, simulation.getBalls().size());
+    assertEquals(10, emitter.retire(10));
+    assertEquals(count + 20, simulation.getBalls().size());
+    simulation.step(1f);
+
+    // 2.5 spawned and 1.5 retired per step, the fractions carried over
+    emitter.setRates(2.5f, 1.5f);
+    for (int s = 1; s <= STEPS; s++) {
+      emitter.update(1f);
+      simulation.step(1f);
+      int expected = count + 20 + (int) (2.5f * s) - (int) (1.5f * s);
+      assertEquals(expected, simulation.getBalls().size(), "Balls after step " + s);
+    }
+
+    // No more than there are
+    int size = simulation.getBalls().size();
+    assertEquals(size, emitter.retire(size + 10));
+    assertEquals(0, simulation.getBalls().size());
+    simulation.step(1f);
+  }
+
+  /**
+   * Run the scene with its removals and refills with each broad-phase, and
+   * compare the final states with that of the brute-force broad-phase,
+   * whose cached wall hits are all predicted again after each change.
+   */
+  private static void assertAllMatchBruteForce(boolean eventDriven) {
+    long expected = run(eventDriven, true,
+        simulation -> simulation.setBroadPhase(new BruteForceBroadPhase()));
+    String scene = "event-driven " + eventDriven;
+    assertEquals(expected, run(eventDriven, false,
+        simulation -> simulation.setBroadPhase(new BruteForceBroadPhase())),
+        "Brute force, " + scene);
+    assertEquals(expected, run(eventDriven, false, simulation -> { }),
+        "Spatial hash, " + scene);
+    assertEquals(expected, run(eventDriven, false,
+        simulation -> simulation.setBroadPhase(new SweepAndPruneBroadPhase())),
+        "Sweep and prune, " + scene);
+    assertEquals(expected, run(eventDriven, false,
+        simulation -> simulation.setBroadPhase(new AabbTreeBroadPhase())),
+        "AABB tree, " + scene);
+    assertEquals(expected, run(eventDriven, false, simulation -> simulation.setParallel(true)),
+        "Parallel, " + scene);
+  }
+
+  /**
+   * Step a scene, removing balls at random indices and spawning as many
+   * again every few steps, and return the hash of its final state.
+   *
+   * @param refresh : true to predict all the cached wall hits again after each change.
+   */
+  private static long run(boolean eventDriven, boolean refresh, Consumer<Simulation> setup) {
+    Simulation simulation = SimulationTest.scene(800, 330, 7, false);
+    simulation.setEventDriven(eventDriven);
+    setup.accept(simulation);
+    BallEmitter emitter = newEmitter(simulation);
+    Random random = new Random(11);
+    for (int s = 0; s < STEPS; s++) {
+      if (s % 4 == 1) {
+        int removals = 1 + random.nextInt(20);
+        for (int n = 0; n < removals; n++) {
+          simulation.removeBall(random.nextInt(simulation.getBalls().size()));
+        }
+        emitter.spawn(removals);
+        if (refresh) {
+          simulation.setContainer(simulation.getContainerCenterX(),
+              simulation.getContainerCenterY(), simulation.getContainerRadius());
+        }
+      }
+      simulation.step(1f);
+    }
+    return SimulationTest.hash(simulation);
+  }
+
+  private static BallEmitter newEmitter(Simulation simulation) {
+    BallEmitter emitter = new BallEmitter(simulation, 3);
+    emitter.setPosition(0, 0, 250);
+    emitter.setSpeed(1, 5);
+    emitter.setRadius(4, 12);
+    emitter.setColors(0, 8);
+    return emitter;
+  }
+}
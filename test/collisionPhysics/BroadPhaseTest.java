@@ -0,0 +1,71 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The box queries of every broad-phase must report each ball whose swept
+ * box overlaps the query box, once.
+ */
+class BroadPhaseTest {
+  private static final int COUNT = 500;
+  private static final float TIME_LIMIT = 1;
+
+  @Test
+  void overlapsMatchBruteForce() {
+    assertOverlapsMatch(new SpatialHashBroadPhase());
+    assertOverlapsMatch(new SweepAndPruneBroadPhase());
+    assertOverlapsMatch(new AabbTreeBroadPhase());
+    assertOverlapsMatch(new BruteForceBroadPhase());
+  }
+
+  private static void assertOverlapsMatch(BroadPhase broadPhase) {
+    Random random = new Random(5);
+    float[] x = new float[COUNT];
+    float[] y = new float[COUNT];
+    float[] speedX = new float[COUNT];
+    float[] speedY = new float[COUNT];
+    float[] radius = new float[COUNT];
+    int[] result = new int[COUNT];
+    PairList pairs = new PairList();
+    // A few rounds, so that the incremental broad-phases update their state
+    for (int round = 0; round < 5; round++) {
+      int count = COUNT - 50 * round;
+      for (int i = 0; i < count; i++) {
+        x[i] = random.nextFloat() * 1000 - 500;
+        y[i] = random.nextFloat() * 1000 - 500;
+        speedX[i] = random.nextFloat() * 40 - 20;
+        speedY[i] = random.nextFloat() * 40 - 20;
+        radius[i] = 2 + random.nextFloat() * 10;
+      }
+      broadPhase.findPairs(x, y, speedX, speedY, radius, count, TIME_LIMIT, pairs);
+      for (int q = 0; q < 200; q++) {
+        float minX = random.nextFloat() * 1100 - 550;
+        float minY = random.nextFloat() * 1100 - 550;
+        float maxX = minX + random.nextFloat() * 80;
+        float maxY = minY + random.nextFloat() * 80;
+        int numOverlaps = broadPhase.findOverlaps(minX, minY, maxX, maxY, result);
+        boolean[] found = new boolean[count];
+        for (int k = 0; k < numOverlaps; k++) {
+          assertTrue(!found[result[k]], "Ball reported twice by " + broadPhase);
+          found[result[k]] = true;
+        }
+        for (int i = 0; i < count; i++) {
+          boolean overlaps = SweptBox.min(x[i], speedX[i], radius[i], TIME_LIMIT) <= maxX
+              && minX <= SweptBox.max(x[i], speedX[i], radius[i], TIME_LIMIT)
+              && SweptBox.min(y[i], speedY[i], radius[i], TIME_LIMIT) <= maxY
+              && minY <= SweptBox.max(y[i], speedY[i], radius[i], TIME_LIMIT);
+          if (overlaps) {
+            assertTrue(found[i], "Ball " + i + " missed by " + broadPhase);
+          }
+        }
+        if (broadPhase instanceof BruteForceBroadPhase) {
+          assertEquals(count, numOverlaps);
+        }
+      }
+    }
+  }
+}
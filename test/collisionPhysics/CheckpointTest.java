@@ -0,0 +1,144 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A checkpoint restores a simulation that continues bit for bit as the
+ * saved one, into a new or an existing simulation, and a damaged file is
+ * rejected without touching the simulation.
+ */
+class CheckpointTest {
+  private static final int STEPS = 50;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void readIntoANewSimulation() throws IOException {
+    Simulation saved = settledScene();
+    Path file = directory.resolve("new.balz");
+    Checkpoint.write(saved, file);
+    assertEquals(Checkpoint.getSize(saved.getBalls().size()), Files.size(file));
+
+    Simulation restored = Checkpoint.read(file, 1);
+    assertSameState(saved, restored);
+    assertSameFuture(saved, restored);
+  }
+
+  @Test
+  void readIntoAnExistingSimulation() throws IOException {
+    Simulation saved = settledScene();
+    Path file = directory.resolve("existing.balz");
+    Checkpoint.write(saved, file);
+
+    // Smaller than the checkpoint, and elsewhere in time
+    Simulation restored = SimulationTest.scene(50, 100, 3, false);
+    restored.step(1f);
+    Checkpoint.read(file, restored);
+    assertSameState(saved, restored);
+    assertSameFuture(saved, restored);
+  }
+
+  @Test
+  void rejectsABadMagic() throws IOException {
+    assertRejected(bytes -> bytes.putInt(0, 0x12345678), "Not a checkpoint");
+  }
+
+  @Test
+  void rejectsAnUnknownVersion() throws IOException {
+    assertRejected(bytes -> bytes.putInt(4, 2), "Unsupported checkpoint version 2");
+  }
+
+  @Test
+  void rejectsATruncatedFile() throws IOException {
+    Simulation saved = settledScene();
+    Path file = directory.resolve("truncated.balz");
+    Checkpoint.write(saved, file);
+    byte[] bytes = Files.readAllBytes(file);
+    // Short of its last ball, and short of its header
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+    assertRejected(file);
+    Files.write(file, Arrays.copyOf(bytes, 20));
+    assertRejected(file);
+  }
+
+  /**
+   * Write a checkpoint, damage it, and check that both reads reject it
+   * with the given message.
+   */
+  private void assertRejected(Damage damage, String message) throws IOException {
+    Path file = directory.resolve("damaged.balz");
+    Checkpoint.write(settledScene(), file);
+    ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    damage.apply(bytes);
+    Files.write(file, bytes.array());
+    assertEquals(message, assertRejected(file).getMessage());
+  }
+
+  /**
+   * Check that both reads reject the file, and that the existing
+   * simulation is left as it was.
+   */
+  private static IOException assertRejected(Path file) {
+    IOException exception = assertThrows(IOException.class, () -> Checkpoint.read(file, 1));
+    Simulation existing = SimulationTest.scene(50, 100, 3, false);
+    int count = existing.getBalls().size();
+    long hash = SimulationTest.hash(existing);
+    assertThrows(IOException.class, () -> Checkpoint.read(file, existing));
+    assertEquals(count, existing.getBalls().size());
+    assertEquals(hash, SimulationTest.hash(existing));
+    return exception;
+  }
+
+  private static Simulation settledScene() {
+    Simulation simulation = SimulationTest.scene(800, 330, 7, false);
+    for (int s = 0; s < STEPS; s++) {
+      simulation.step(1f);
+    }
+    return simulation;
+  }
+
+  private static void assertSameState(Simulation expected, Simulation actual) {
+    int count = expected.getBalls().size();
+    assertEquals(count, actual.getBalls().size());
+    assertEquals(SimulationTest.hash(expected), SimulationTest.hash(actual));
+    assertArrayEquals(Arrays.copyOf(expected.getBalls().radius, count),
+        Arrays.copyOf(actual.getBalls().radius, count));
+    assertArrayEquals(Arrays.copyOf(expected.getBalls().colorIndex, count),
+        Arrays.copyOf(actual.getBalls().colorIndex, count));
+    assertEquals(expected.getTime(), actual.getTime());
+    assertEquals(expected.getStepCount(), actual.getStepCount());
+    assertEquals(expected.getContainerCenterX(), actual.getContainerCenterX());
+    assertEquals(expected.getContainerCenterY(), actual.getContainerCenterY());
+    assertEquals(expected.getContainerRadius(), actual.getContainerRadius());
+  }
+
+  /**
+   * Step both simulations further, and check that they stay bit-identical.
+   */
+  private static void assertSameFuture(Simulation expected, Simulation actual) {
+    for (int s = 0; s < STEPS; s++) {
+      expected.step(1f);
+      actual.step(1f);
+      assertEquals(SimulationTest.hash(expected), SimulationTest.hash(actual), "Step " + s);
+    }
+  }
+
+  /**
+   * A change to the bytes of a checkpoint.
+   */
+  private interface Damage {
+    void apply(ByteBuffer bytes);
+  }
+}
@@ -0,0 +1,71 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A closed CollisionLog holds exactly its events, and CollisionReplay
+ * restores the logged states, with batched collisions at their own times.
+ */
+class CollisionLogTest {
+  private static final int STEPS = 400;
+  private static final int SAMPLE_EVERY = 37;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void replayMatchesTheLiveSimulation() throws IOException {
+    Simulation simulation = SimulationTest.scene(800, 330, 7, false);
+    simulation.setBatchWindow(Simulation.DEFAULT_BATCH_WINDOW);
+    CollisionLog log = new CollisionLog(directory, 100);
+    simulation.setCollisionLog(log);
+    int count = simulation.getBalls().size();
+    double[] times = new double[STEPS / SAMPLE_EVERY + 1];
+    float[][] states = new float[times.length][];
+    int numSamples = 0;
+    for (int s = 0; s < STEPS; s++) {
+      simulation.step(1f);
+      if (s % SAMPLE_EVERY == 5) {
+        BallStore balls = simulation.getBalls();
+        times[numSamples] = simulation.getTime();
+        states[numSamples] = new float[4 * count];
+        System.arraycopy(balls.x, 0, states[numSamples], 0, count);
+        System.arraycopy(balls.y, 0, states[numSamples], count, count);
+        System.arraycopy(balls.speedX, 0, states[numSamples], 2 * count, count);
+        System.arraycopy(balls.speedY, 0, states[numSamples], 3 * count, count);
+        numSamples++;
+      }
+    }
+    simulation.setCollisionLog(null);
+    log.close();
+    // More events than one buffer holds, and no slack past them
+    assertTrue(log.getNumEvents() > (1 << 20) / CollisionLog.EVENT_BYTES);
+    assertEquals(CollisionLog.HEADER_BYTES + log.getNumEvents() * CollisionLog.EVENT_BYTES,
+        Files.size(directory.resolve(CollisionLog.EVENTS_FILE)));
+
+    try (CollisionReplay replay = new CollisionReplay(directory)) {
+      assertEquals(log.getNumEvents(), replay.getNumEvents());
+      Simulation restored = new Simulation(count, 0, 0, 1);
+      for (int k = 0; k < numSamples; k++) {
+        replay.seek(times[k], restored);
+        BallStore balls = restored.getBalls();
+        assertEquals(count, balls.size());
+        float[] state = states[k];
+        for (int i = 0; i < count; i++) {
+          String ball = "ball " + i + " at time " + times[k];
+          assertEquals(state[i], balls.x[i], 1f, "x of " + ball);
+          assertEquals(state[count + i], balls.y[i], 1f, "y of " + ball);
+          assertEquals(state[2 * count + i], balls.speedX[i], "Speed x of " + ball);
+          assertEquals(state[3 * count + i], balls.speedY[i], "Speed y of " + ball);
+        }
+      }
+    }
+  }
+}
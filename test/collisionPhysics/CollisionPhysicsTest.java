@@ -0,0 +1,117 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The trig-free responses against the original trigonometric derivation
+ * (-Dcollisionphysics.trigonometricResponse=true): both must accept the
+ * same collisions, and the new speeds must agree within a relative error
+ * of MAX_RELATIVE_ERROR of the speeds involved.
+ */
+class CollisionPhysicsTest {
+  private static final int SAMPLES = 200000;
+  private static final double MAX_RELATIVE_ERROR = 1e-7;  // About one float rounding
+  // Below this relative speed along the line of collision, rounding may
+  // decide either way whether the points approach each other
+  private static final double GRAZING = 1e-9;
+
+  private final Random random = new Random(9);
+  private final CollisionScratch scratch = new CollisionScratch();
+
+  @Test
+  void movingPointResponseMatchesTrigonometric() {
+    CollisionResponse p1Normal = new CollisionResponse();
+    CollisionResponse p2Normal = new CollisionResponse();
+    CollisionResponse p1Rotated = new CollisionResponse();
+    CollisionResponse p2Rotated = new CollisionResponse();
+    double maxError = 0;
+    int accepted = 0;
+    for (int n = 0; n < SAMPLES; n++) {
+      float p1SpeedX = speed(), p1SpeedY = speed(), p1Radius = radius();
+      float p2SpeedX = speed(), p2SpeedY = speed(), p2Radius = radius();
+      double lineX = line(), lineY = line();
+      p1Normal.t = p2Normal.t = p1Rotated.t = p2Rotated.t = 1;
+      CollisionPhysics.pointIntersectsMovingPointNormalResponse(
+          p1SpeedX, p1SpeedY, p1Radius, p2SpeedX, p2SpeedY, p2Radius,
+          lineX, lineY, p1Normal, p2Normal);
+      CollisionPhysics.pointIntersectsMovingPointRotatedResponse(
+          p1SpeedX, p1SpeedY, p1Radius, p2SpeedX, p2SpeedY, p2Radius,
+          lineX, lineY, p1Rotated, p2Rotated, scratch);
+
+      double length = Math.hypot(lineX, lineY);
+      double approach = ((p1SpeedX - p2SpeedX) * lineX + (p1SpeedY - p2SpeedY) * lineY) / length;
+      if (Math.abs(approach) < GRAZING) {
+        continue;
+      }
+      assertEquals(p1Rotated.t, p1Normal.t, "accepted, p1 at sample " + n);
+      assertEquals(p2Rotated.t, p2Normal.t, "accepted, p2 at sample " + n);
+      if (p1Normal.t == Float.MAX_VALUE) {
+        continue;
+      }
+      accepted++;
+      double scale = Math.hypot(p1SpeedX, p1SpeedY) + Math.hypot(p2SpeedX, p2SpeedY);
+      maxError = Math.max(maxError, error(p1Normal, p1Rotated, scale));
+      maxError = Math.max(maxError, error(p2Normal, p2Rotated, scale));
+    }
+    assertTrue(accepted > SAMPLES / 4, "too few collisions accepted: " + accepted);
+    assertTrue(maxError <= MAX_RELATIVE_ERROR, "relative error " + maxError);
+  }
+
+  @Test
+  void pointResponseMatchesTrigonometric() {
+    CollisionResponse normal = new CollisionResponse();
+    CollisionResponse rotated = new CollisionResponse();
+    double maxError = 0;
+    int accepted = 0;
+    for (int n = 0; n < SAMPLES; n++) {
+      float p1SpeedX = speed(), p1SpeedY = speed();
+      double lineX = line(), lineY = line();
+      normal.t = rotated.t = 1;
+      CollisionPhysics.pointIntersectsPointNormalResponse(p1SpeedX, p1SpeedY, lineX, lineY, normal);
+      CollisionPhysics.pointIntersectsPointRotatedResponse(p1SpeedX, p1SpeedY, lineX, lineY,
+          rotated, scratch);
+
+      double approach = (p1SpeedX * lineX + p1SpeedY * lineY) / Math.hypot(lineX, lineY);
+      if (Math.abs(approach) < GRAZING) {
+        continue;
+      }
+      assertEquals(rotated.t, normal.t, "accepted at sample " + n);
+      if (normal.t == Float.MAX_VALUE) {
+        continue;
+      }
+      accepted++;
+      maxError = Math.max(maxError, error(normal, rotated, Math.hypot(p1SpeedX, p1SpeedY)));
+    }
+    assertTrue(accepted > SAMPLES / 4, "too few collisions accepted: " + accepted);
+    assertTrue(maxError <= MAX_RELATIVE_ERROR, "relative error " + maxError);
+  }
+
+  /**
+   * Return the difference of the new speeds of the two responses, relative
+   * to the given scale of the speeds.
+   */
+  private static double error(CollisionResponse normal, CollisionResponse rotated, double scale) {
+    double error = Math.hypot(normal.newSpeedX - rotated.newSpeedX,
+        normal.newSpeedY - rotated.newSpeedY);
+    return error / scale;
+  }
+
+  /** A speed component, sometimes exactly 0 */
+  private float speed() {
+    return random.nextInt(10) == 0 ? 0 : 20 * random.nextFloat() - 10;
+  }
+
+  /** A radius, from a dust grain to a large ball */
+  private float radius() {
+    return 0.5f + 50 * random.nextFloat();
+  }
+
+  /** A component of the line of collision, sometimes axis-aligned */
+  private double line() {
+    return random.nextInt(10) == 0 ? 0 : 60 * random.nextDouble() - 30;
+  }
+}
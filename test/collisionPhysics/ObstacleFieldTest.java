@@ -0,0 +1,117 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The grid of an ObstacleField must find the same earliest collision as a
+ * test of every segment and peg, bit for bit, for moving points inside the
+ * grid, across its border and outside it.
+ */
+class ObstacleFieldTest {
+  private static final int QUERIES = 100000;
+  private static final float FIELD = 300;  // Obstacles within [-FIELD, FIELD]
+  private static final float QUERY = 450;  // Queries within [-QUERY, QUERY]
+
+  private final Random random = new Random(13);
+  private final CollisionScratch scratch = new CollisionScratch();
+
+  @Test
+  void detectMatchesBruteForce() {
+    ObstacleField field = new ObstacleField();
+    // Long walls, short segments, a few polygons and pegs of all sizes
+    for (int k = 0; k < 20; k++) {
+      field.addSegment(coordinate(FIELD), coordinate(FIELD), coordinate(FIELD),
+          coordinate(FIELD));
+    }
+    for (int k = 0; k < 200; k++) {
+      float x = coordinate(FIELD);
+      float y = coordinate(FIELD);
+      field.addSegment(x, y, x + coordinate(15), y + coordinate(15));
+    }
+    for (int k = 0; k < 10; k++) {
+      float x = coordinate(FIELD - 30);
+      float y = coordinate(FIELD - 30);
+      field.addPolygon(new float[]{x, x + 30, x + 15}, new float[]{y, y, y + 25}, 3);
+    }
+    for (int k = 0; k < 500; k++) {
+      field.addPeg(coordinate(FIELD), coordinate(FIELD), random.nextFloat() * 12);
+    }
+    field.build();
+
+    CollisionResponse expected = new CollisionResponse();
+    CollisionResponse actual = new CollisionResponse();
+    int hits = 0;
+    int outsideHits = 0;
+    for (int n = 0; n < QUERIES; n++) {
+      float x = coordinate(QUERY);
+      float y = coordinate(QUERY);
+      // Mostly short moves, some long enough to cross much of the field
+      float maxSpeed = (n % 10 == 0) ? 400 : 30;
+      float speedX = coordinate(maxSpeed);
+      float speedY = coordinate(maxSpeed);
+      float radius = (n % 7 == 0) ? 0 : random.nextFloat() * 10;
+      float timeLimit = 1 - random.nextFloat();  // In (0, 1]
+      detectBruteForce(field, x, y, speedX, speedY, radius, timeLimit, expected);
+      field.detect(x, y, speedX, speedY, radius, timeLimit, actual, scratch);
+      String query = "Query " + n + " at (" + x + ", " + y + ")";
+      assertEquals(expected.t, actual.t, "Time of " + query);
+      if (expected.t <= timeLimit) {
+        // The speeds are only set by a collision
+        assertEquals(expected.newSpeedX, actual.newSpeedX, "Speed x of " + query);
+        assertEquals(expected.newSpeedY, actual.newSpeedY, "Speed y of " + query);
+        hits++;
+        if (Math.abs(x) > FIELD || Math.abs(y) > FIELD) {
+          outsideHits++;
+        }
+      }
+    }
+    // Enough collisions for the comparison to mean something, including
+    // some of points starting outside the grid
+    assertTrue(hits > QUERIES / 20, "Hits " + hits);
+    assertTrue(outsideHits > 100, "Hits from outside the grid " + outsideHits);
+  }
+
+  @Test
+  void emptyFieldDetectsNothing() {
+    ObstacleField field = new ObstacleField();
+    field.build();
+    CollisionResponse response = new CollisionResponse();
+    field.detect(10, 20, 5, -5, 3, 1, response, scratch);
+    assertTrue(response.t > 1, "Time " + response.t);
+  }
+
+  /**
+   * Detect the earliest collision with every obstacle, the lowest index
+   * first on equal times, as ObstacleField.detect().
+   */
+  private void detectBruteForce(ObstacleField field, float x, float y, float speedX,
+                                float speedY, float radius, float timeLimit,
+                                CollisionResponse response) {
+    response.reset();
+    CollisionResponse candidate = new CollisionResponse();
+    for (int k = 0; k < field.getNumSegments(); k++) {
+      CollisionPhysics.pointIntersectsLineSegment(x, y, speedX, speedY, radius,
+          field.getSegmentX1(k), field.getSegmentY1(k),
+          field.getSegmentX2(k), field.getSegmentY2(k), timeLimit, candidate, scratch);
+      if (candidate.t < response.t) {
+        response.copy(candidate);
+      }
+    }
+    for (int k = 0; k < field.getNumPegs(); k++) {
+      CollisionPhysics.pointIntersectsPoint(x, y, speedX, speedY, radius,
+          field.getPegX(k), field.getPegY(k), field.getPegRadius(k),
+          timeLimit, candidate, scratch);
+      if (candidate.t < response.t) {
+        response.copy(candidate);
+      }
+    }
+  }
+
+  private float coordinate(float extent) {
+    return (2 * random.nextFloat() - 1) * extent;
+  }
+}
@@ -0,0 +1,138 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reentrancy of the collision physics: several threads predicting at once,
+ * each through its own ParallelNarrowPhase and through the working copies
+ * of its own thread (CollisionScratch), must get the serial results.
+ */
+class ParallelNarrowPhaseTest {
+  private static final int NUM_BALLS = 2000;
+  private static final int NUM_PAIRS = 40000;
+  private static final int NUM_THREADS = 8;
+  private static final int ROUNDS = 20;
+  private static final float TIME_LIMIT = 50f;
+  private static final int NUM_SIDES = 32;  // Of the polygon around the balls
+
+  private final float[] x = new float[NUM_BALLS];
+  private final float[] y = new float[NUM_BALLS];
+  private final float[] speedX = new float[NUM_BALLS];
+  private final float[] speedY = new float[NUM_BALLS];
+  private final float[] radius = new float[NUM_BALLS];
+  private final PairList pairs = new PairList();
+  private final int[] polygonXs = new int[NUM_SIDES];
+  private final int[] polygonYs = new int[NUM_SIDES];
+
+  ParallelNarrowPhaseTest() {
+    Random random = new Random(8);
+    for (int i = 0; i < NUM_BALLS; i++) {
+      x[i] = 500 * random.nextFloat() - 250;
+      y[i] = 500 * random.nextFloat() - 250;
+      speedX[i] = 10 * random.nextFloat() - 5;
+      speedY[i] = 10 * random.nextFloat() - 5;
+      radius[i] = 2 + 10 * random.nextFloat();
+    }
+    for (int side = 0; side < NUM_SIDES; side++) {
+      polygonXs[side] = (int) Math.round(300 * Math.cos(2 * Math.PI * side / NUM_SIDES));
+      polygonYs[side] = (int) Math.round(300 * Math.sin(2 * Math.PI * side / NUM_SIDES));
+    }
+    for (int k = 0; k < NUM_PAIRS; k++) {
+      int i = random.nextInt(NUM_BALLS - 1);
+      pairs.add(i, i + 1 + random.nextInt(NUM_BALLS - 1 - i));
+    }
+  }
+
+  @Test
+  void concurrentPredictionsMatchSerial() throws Exception {
+    float[] expectedTimes = new float[NUM_PAIRS];
+    for (int k = 0; k < NUM_PAIRS; k++) {
+      int i = pairs.first(k);
+      int j = pairs.second(k);
+      expectedTimes[k] = CollisionPhysics.pointIntersectsMovingPointTime(
+          x[i], y[i], speedX[i], speedY[i], radius[i],
+          x[j], y[j], speedX[j], speedY[j], radius[j], TIME_LIMIT);
+    }
+    float[] expectedResponses = responses();
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> results = new ArrayList<>();
+      for (int n = 0; n < NUM_THREADS; n++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          ParallelNarrowPhase narrowPhase = new ParallelNarrowPhase();
+          float[] times = new float[NUM_PAIRS];
+          for (int round = 0; round < ROUNDS; round++) {
+            narrowPhase.predictTimes(x, y, speedX, speedY, radius, pairs, TIME_LIMIT, times);
+            assertArrayEquals(expectedTimes, times, 0f);
+            assertArrayEquals(expectedResponses, responses(), 0f);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get(2, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Return the time and new speeds of each ball against the next one and
+   * against a polygon, computed with the working copies of the calling
+   * thread.
+   */
+  private float[] responses() {
+    CollisionResponse response = new CollisionResponse();
+    CollisionResponse another = new CollisionResponse();
+    float[] results = new float[6 * (NUM_BALLS - 1)];
+    for (int i = 0; i < NUM_BALLS - 1; i++) {
+      int j = i + 1;
+      CollisionPhysics.pointIntersectsMovingPoint(
+          x[i], y[i], speedX[i], speedY[i], radius[i],
+          x[j], y[j], speedX[j], speedY[j], radius[j], TIME_LIMIT, response, another);
+      results[6 * i] = response.t;
+      results[6 * i + 1] = response.newSpeedX;
+      results[6 * i + 2] = another.newSpeedY;
+      CollisionPhysics.pointIntersectsPolygon(x[i], y[i], speedX[i], speedY[i], radius[i],
+          polygonXs, polygonYs, polygonXs.length, TIME_LIMIT, response);
+      results[6 * i + 3] = response.t;
+      results[6 * i + 4] = response.newSpeedX;
+      results[6 * i + 5] = response.newSpeedY;
+    }
+    return results;
+  }
+
+  @Test
+  void partitionsMatchOnePartition() {
+    ForkJoinPool onePartition = new ForkJoinPool(1);
+    ForkJoinPool manyPartitions = new ForkJoinPool(4);
+    try {
+      float[] expected = new float[NUM_PAIRS];
+      new ParallelNarrowPhase(onePartition)
+          .predictTimes(x, y, speedX, speedY, radius, pairs, TIME_LIMIT, expected);
+      float[] times = new float[NUM_PAIRS];
+      new ParallelNarrowPhase(manyPartitions)
+          .predictTimes(x, y, speedX, speedY, radius, pairs, TIME_LIMIT, times);
+      assertArrayEquals(expected, times, 0f);
+    } finally {
+      onePartition.shutdown();
+      manyPartitions.shutdown();
+    }
+  }
+}
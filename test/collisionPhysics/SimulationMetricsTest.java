@@ -0,0 +1,40 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The JMX registration of the metrics: a name is freed by unregister(), so
+ * that a re-created world can take it again.
+ */
+class SimulationMetricsTest {
+  @Test
+  void unregisterFreesTheName() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("collisionphysics:type=SimulationMetrics,name="
+        + ObjectName.quote("SimulationMetricsTest"));
+
+    SimulationMetrics first = new SimulationMetrics();
+    first.register("SimulationMetricsTest");
+    assertTrue(server.isRegistered(name));
+    assertThrows(IllegalStateException.class, () -> first.register("SimulationMetricsTest"));
+    assertThrows(IllegalStateException.class,
+        () -> new SimulationMetrics().register("SimulationMetricsTest"));
+
+    first.unregister();
+    assertFalse(server.isRegistered(name));
+    first.unregister();  // No-op once unregistered
+
+    SimulationMetrics second = new SimulationMetrics();
+    second.register("SimulationMetricsTest");
+    assertTrue(server.isRegistered(name));
+    second.unregister();
+    assertFalse(server.isRegistered(name));
+  }
+}
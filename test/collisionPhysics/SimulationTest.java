@@ -0,0 +1,165 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Determinism of the simulation: every broad-phase, with or without the
+ * multi-core prediction, must give the same trajectories as the brute-force
+ * one, bit for bit, in the sub-step loop and in the event-driven engine.
+ */
+class SimulationTest {
+  private static final int STEPS = 100;
+
+  @Test
+  void subStepLoopMatchesBruteForce() {
+    assertAllMatchBruteForce(300, 300, false, false);
+    assertAllMatchBruteForce(800, 400, false, false);
+  }
+
+  @Test
+  void subStepLoopMatchesBruteForceOnTies() {
+    assertAllMatchBruteForce(300, 300, true, false);
+  }
+
+  /**
+   * Fast balls in a packed container: many balls change paths several times
+   * a step, and are predicted again against the swept boxes.
+   */
+  @Test
+  void changedPathsMatchBruteForce() {
+    assertAllMatchBruteForce(800, 330, false, false, 4);
+    assertAllMatchBruteForce(800, 330, true, false, 4);
+  }
+
+  @Test
+  void eventDrivenMatchesBruteForce() {
+    assertAllMatchBruteForce(300, 300, false, true);
+    assertAllMatchBruteForce(300, 300, true, true);
+  }
+
+  /**
+   * An event-driven step that runs out of events ends per the policy: the
+   * balls stop at the last event, or finish it with the container only.
+   * Either way, they stay in the container.
+   */
+  @Test
+  void eventBudgetEndsTheStep() {
+    for (Simulation.OverBudgetPolicy policy : Simulation.OverBudgetPolicy.values()) {
+      Simulation simulation = scene(300, 300, 7, false);
+      simulation.setEventDriven(true);
+      simulation.setSubStepBudget(Simulation.DEFAULT_SUB_STEP_BUDGET, policy);
+      simulation.setEventBudget(3);
+      BallStore balls = simulation.getBalls();
+      for (int s = 0; s < STEPS; s++) {
+        simulation.step(1f);
+        SimulationMetrics metrics = simulation.getMetrics();
+        if (policy == Simulation.OverBudgetPolicy.STOP) {
+          assertTrue(metrics.getLastCollisions() <= 2 * 3, "Collisions of step " + s);
+        }
+        for (int i = 0; i < balls.size(); i++) {
+          assertTrue(Math.hypot(balls.x[i], balls.y[i]) + balls.radius[i] < 300 + 1e-3,
+              "Ball " + i + " out of the container at step " + s + ", " + policy);
+        }
+      }
+      assertTrue(simulation.getMetrics().getOverBudgetSteps() > 0, policy.toString());
+    }
+  }
+
+  /**
+   * Run the given scene with each broad-phase, and compare the final
+   * states with that of the brute-force broad-phase.
+   */
+  private static void assertAllMatchBruteForce(int n, float containerRadius, boolean ties,
+                                               boolean eventDriven) {
+    assertAllMatchBruteForce(n, containerRadius, ties, eventDriven, 1);
+  }
+
+  private static void assertAllMatchBruteForce(int n, float containerRadius, boolean ties,
+                                               boolean eventDriven, float speedScale) {
+    long expected = run(n, containerRadius, ties, eventDriven, speedScale,
+        simulation -> simulation.setBroadPhase(new BruteForceBroadPhase()));
+    String scene = n + " balls, ties " + ties + ", event-driven " + eventDriven
+        + ", speed x" + speedScale;
+    assertEquals(expected, run(n, containerRadius, ties, eventDriven, speedScale,
+        simulation -> { }),
+        "Spatial hash, " + scene);
+    assertEquals(expected, run(n, containerRadius, ties, eventDriven, speedScale,
+        simulation -> simulation.setBroadPhase(new SweepAndPruneBroadPhase())),
+        "Sweep and prune, " + scene);
+    assertEquals(expected, run(n, containerRadius, ties, eventDriven, speedScale,
+        simulation -> simulation.setBroadPhase(new AabbTreeBroadPhase())),
+        "AABB tree, " + scene);
+    assertEquals(expected, run(n, containerRadius, ties, eventDriven, speedScale,
+        simulation -> simulation.setParallel(true)),
+        "Parallel, " + scene);
+  }
+
+  private static long run(int n, float containerRadius, boolean ties, boolean eventDriven,
+                          float speedScale, Consumer<Simulation> setup) {
+    Simulation simulation = scene(n, containerRadius, 7, ties);
+    BallStore balls = simulation.getBalls();
+    for (int i = 0; i < balls.size(); i++) {
+      balls.speedX[i] *= speedScale;
+      balls.speedY[i] *= speedScale;
+      simulation.ballChanged(i);
+    }
+    simulation.setEventDriven(eventDriven);
+    setup.accept(simulation);
+    for (int s = 0; s < STEPS; s++) {
+      simulation.step(1f);
+    }
+    return hash(simulation);
+  }
+
+  /**
+   * Return up to n balls on a lattice filling a container of the given
+   * radius, with random radii, speeds and directions. With ties, the
+   * speeds are rounded and the radii equal, which provokes collisions at
+   * equal times.
+   */
+  static Simulation scene(int n, float containerRadius, long seed, boolean ties) {
+    Simulation simulation = new Simulation(n, 0, 0, containerRadius);
+    Random random = new Random(seed);
+    float cell = 24;
+    int side = (int) (2 * (containerRadius - 12) / cell);
+    float origin = -side * cell / 2;
+    for (int c = 0; simulation.getBalls().size() < n && c < side * side; c++) {
+      float radius = 4 + random.nextFloat() * 8;
+      float x = origin + (c % side + 0.5f) * cell;
+      float y = origin + (c / side + 0.5f) * cell;
+      if (Math.hypot(x, y) + radius < containerRadius) {
+        simulation.addBall(x, y, radius, random.nextFloat() * 5, random.nextFloat() * 360, 0);
+      }
+    }
+    if (ties) {
+      BallStore balls = simulation.getBalls();
+      for (int i = 0; i < balls.size(); i++) {
+        balls.speedX[i] = Math.round(balls.speedX[i]);
+        balls.speedY[i] = Math.round(balls.speedY[i]);
+        balls.radius[i] = 8;
+        simulation.ballChanged(i);
+      }
+    }
+    return simulation;
+  }
+
+  /**
+   * Return a hash of the positions and speeds of all the balls.
+   */
+  static long hash(Simulation simulation) {
+    BallStore balls = simulation.getBalls();
+    long hash = 0;
+    for (int i = 0; i < balls.size(); i++) {
+      hash = hash * 31 + Float.floatToIntBits(balls.x[i]);
+      hash = hash * 31 + Float.floatToIntBits(balls.y[i]);
+      hash = hash * 31 + Float.floatToIntBits(balls.speedX[i]);
+      hash = hash * 31 + Float.floatToIntBits(balls.speedY[i]);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,43 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The frames of a SnapshotBuffer carry the wall time of their own tick, so
+ * the reader interpolates each frame from its own stamp.
+ */
+class SnapshotBufferTest {
+  private static final long PERIOD = 1000;
+
+  @Test
+  void framesCarryTheirTickTime() {
+    Simulation simulation = new Simulation(4, 0, 0, 100);
+    simulation.addBall(0, 0, 10, 2, 30, 0);
+    SnapshotBuffer frames = new SnapshotBuffer(simulation);
+    assertEquals(1f, frames.read().getInterpolationAlpha(0));  // Not stamped
+
+    // Several ticks published before the reader looks: the latest one wins,
+    // with its own stamp
+    for (int tick = 1; tick <= 3; tick++) {
+      simulation.step(1f);
+      frames.publish(simulation, tick * PERIOD, PERIOD);
+    }
+    Simulation.Snapshot frame = frames.read();
+    assertEquals(3, frame.stepCount);
+    assertEquals(3 * PERIOD, frame.tickNanos);
+    assertEquals(0f, frame.getInterpolationAlpha(3 * PERIOD));
+    assertEquals(0.25f, frame.getInterpolationAlpha(3 * PERIOD + PERIOD / 4));
+    assertEquals(1f, frame.getInterpolationAlpha(5 * PERIOD));
+    assertEquals(0f, frame.getInterpolationAlpha(2 * PERIOD));
+
+    // A newer frame does not change the stamp of the frame being read
+    simulation.step(1f);
+    frames.publish(simulation, 4 * PERIOD, PERIOD);
+    assertEquals(3 * PERIOD, frame.tickNanos);
+    frame = frames.read();
+    assertEquals(4, frame.stepCount);
+    assertEquals(4 * PERIOD, frame.tickNanos);
+  }
+}
@@ -0,0 +1,101 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The SIMD kernels against their scalar references: the results must be
+ * bit-identical, including the balls left over by the last block.
+ */
+class VectorKernelsTest {
+  private static final float CENTER_X = 300, CENTER_Y = 250, OUTER_RADIUS = 240;
+
+  @Test
+  void circleOuterTimesMatchesScalar() {
+    Random random = new Random(6);
+    for (int count : new int[] {0, 1, 3, 8, 17, 1000}) {
+      float[] x = new float[count];
+      float[] y = new float[count];
+      float[] speedX = new float[count];
+      float[] speedY = new float[count];
+      float[] radius = new float[count];
+      for (int i = 0; i < count; i++) {
+        radius[i] = 1 + 20 * random.nextFloat();
+        double angle = 2 * Math.PI * random.nextDouble();
+        float distance = (OUTER_RADIUS - radius[i]) * (float) Math.sqrt(random.nextDouble());
+        x[i] = CENTER_X + distance * (float) Math.cos(angle);
+        y[i] = CENTER_Y + distance * (float) Math.sin(angle);
+        // Some balls stand still, some graze or touch the wall
+        if (i % 7 != 0) {
+          speedX[i] = 20 * random.nextFloat() - 10;
+          speedY[i] = 20 * random.nextFloat() - 10;
+        }
+      }
+      for (float timeLimit : new float[] {0.5f, 1f, Float.MAX_VALUE}) {
+        float[] times = new float[count];
+        float tMin = VectorKernels.circleOuterTimes(x, y, speedX, speedY, radius, count,
+            CENTER_X, CENTER_Y, OUTER_RADIUS, timeLimit, times);
+        float expectedMin = Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+          float t = CollisionPhysics.pointIntersectsCircleOuterDetection(
+              x[i], y[i], speedX[i], speedY[i], radius[i], CENTER_X, CENTER_Y, OUTER_RADIUS);
+          float expected = (t > 0 && t <= timeLimit) ? t : Float.MAX_VALUE;
+          assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(times[i]),
+              "ball " + i + " of " + count + ": " + expected + " vs " + times[i]);
+          expectedMin = Math.min(expectedMin, expected);
+        }
+        assertEquals(expectedMin, tMin);
+      }
+    }
+  }
+
+  @Test
+  void movingPointTimesMatchesScalar() {
+    Random random = new Random(8);
+    int numBalls = 400;
+    float[] x = new float[numBalls];
+    float[] y = new float[numBalls];
+    float[] speedX = new float[numBalls];
+    float[] speedY = new float[numBalls];
+    float[] radius = new float[numBalls];
+    for (int i = 0; i < numBalls; i++) {
+      x[i] = 200 * random.nextFloat();
+      y[i] = 200 * random.nextFloat();
+      radius[i] = 1 + 10 * random.nextFloat();
+      // Some balls stand still, some move along with ball 0
+      if (i % 5 == 1) {
+        speedX[i] = speedX[0];
+        speedY[i] = speedY[0];
+      } else if (i % 7 != 0) {
+        speedX[i] = 20 * random.nextFloat() - 10;
+        speedY[i] = 20 * random.nextFloat() - 10;
+      }
+    }
+    for (int count : new int[] {0, 1, 3, 8, 17, numBalls - 1}) {
+      // Others in shuffled order, skipping ball 0
+      int[] others = new int[numBalls];
+      for (int k = 0; k < count; k++) {
+        others[k] = 1 + random.nextInt(numBalls - 1);
+      }
+      for (float timeLimit : new float[] {0.5f, 1f, Float.MAX_VALUE}) {
+        float[] times = new float[count];
+        float tMin = VectorKernels.movingPointTimes(x, y, speedX, speedY, radius, 0, others,
+            count, timeLimit, times);
+        float expectedMin = Float.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+          int j = others[k];
+          float t = CollisionPhysics.pointIntersectsMovingPointDetection(
+              x[0], y[0], speedX[0], speedY[0], radius[0],
+              x[j], y[j], speedX[j], speedY[j], radius[j]);
+          float expected = (t > 0 && t <= timeLimit) ? t : Float.MAX_VALUE;
+          assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(times[k]),
+              "ball " + j + " of " + count + ": " + expected + " vs " + times[k]);
+          expectedMin = Math.min(expectedMin, expected);
+        }
+        assertEquals(expectedMin, tMin);
+      }
+    }
+  }
+}
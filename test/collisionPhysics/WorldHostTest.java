@@ -0,0 +1,52 @@
+package collisionphysics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A failing world must not take its worker down with it: it is cancelled,
+ * and the other worlds keep ticking on the same worker.
+ */
+class WorldHostTest {
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  @Test
+  void failingWorldIsCancelledAndOthersKeepTicking() throws InterruptedException {
+    try (WorldHost host = new WorldHost(1, 10, 4, TimeUnit.SECONDS.toNanos(1))) {
+      IllegalStateException boom = new IllegalStateException("boom");
+      WorldHost.HostedWorld failing = host.host(world(), 200, world -> {
+        if (world.getSimulation().getStepCount() == 3) {
+          throw boom;
+        }
+      });
+      WorldHost.HostedWorld healthy = host.host(world(), 200, null);
+
+      long deadline = System.nanoTime() + TIMEOUT_NANOS;
+      while (failing.getFailure() == null && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertSame(boom, failing.getFailure());
+      assertTrue(failing.isCancelled());
+      assertEquals(1, host.getNumWorlds());
+
+      long ticks = healthy.getTicks();
+      while (healthy.getTicks() < ticks + 10 && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertTrue(healthy.getTicks() >= ticks + 10, "healthy world stopped ticking");
+      assertNull(healthy.getFailure());
+      assertEquals(2, failing.getTicks());  // The failed third tick is not counted
+    }
+  }
+
+  private static Simulation world() {
+    Simulation simulation = new Simulation(4, 0, 0, 100);
+    simulation.addBall(0, 0, 10, 2, 30, 0);
+    return simulation;
+  }
+}